@@ -0,0 +1,110 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.model.CryptoSymbol;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Парсване и търсене на символа за едно Binance trade съобщение: streaming парсерът с
+ * TradeSymbolIndex срещу JsonNode дървото с линейно търсене (crypto.live.fast-ingest=false).
+ * Пуска се с -prof gc; сравнява се gc.alloc.rate.norm (байтове на съобщение).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TradeIngestBenchmark {
+
+    private static final String[] PAIRS = {
+            "BTCUSDT", "ETHUSDT", "BNBUSDT", "SOLUSDT", "XRPUSDT", "ADAUSDT", "DOGEUSDT", "DOTUSDT",
+            "AVAXUSDT", "LINKUSDT", "LTCUSDT", "TRXUSDT", "ATOMUSDT", "NEARUSDT", "UNIUSDT", "XLMUSDT"
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<CryptoSymbol> symbols;
+    private TradeSymbolIndex index;
+    private TradeMessageParser parser;
+    private String[] frames;
+    private int next;
+
+    @Setup
+    public void setup() {
+        symbols = new ArrayList<>();
+        for (String pair : PAIRS) {
+            CryptoSymbol cs = new CryptoSymbol();
+            cs.setSymbol(pair.substring(0, pair.length() - 4));
+            cs.setBinancePair(pair);
+            cs.setCoingeckoId(pair.toLowerCase());
+            symbols.add(cs);
+        }
+        index = TradeSymbolIndex.build(symbols);
+        parser = new TradeMessageParser(mapper.getFactory());
+
+        frames = new String[1024];
+        for (int i = 0; i < frames.length; i++) {
+            String pair = PAIRS[i % PAIRS.length];
+            long time = 1_718_000_000_000L + i;
+            frames[i] = "{\"stream\":\"" + pair.toLowerCase() + "@trade\",\"data\":{\"e\":\"trade\",\"E\":" + time
+                    + ",\"s\":\"" + pair + "\",\"t\":" + (3_600_000_000L + i) + ",\"p\":\"" + (67000 + i % 7) + ".12000000\""
+                    + ",\"q\":\"0.00" + (100 + i % 50) + "000\",\"b\":1,\"a\":2,\"T\":" + time + ",\"m\":true,\"M\":true}}";
+        }
+    }
+
+    private String nextFrame() {
+        String json = frames[next];
+        next = (next + 1) & (frames.length - 1);
+        return json;
+    }
+
+    @Benchmark
+    public void streamingParserWithIndex(Blackhole bh) throws IOException {
+        if (!parser.parse(nextFrame())) return;
+        int slot = index.slotOf(parser.pair, 0, parser.pairLength);
+        if (slot < 0) return;
+        bh.consume(index.symbolAt(slot));
+        bh.consume(TradeMessageParser.toDouble(parser.price, parser.priceLength));
+        bh.consume(TradeMessageParser.toDouble(parser.quantity, parser.quantityLength));
+        bh.consume(index.shouldPublish(slot, parser.price, 0, parser.priceLength, System.nanoTime(),
+                TimeUnit.SECONDS.toNanos(5)));
+        bh.consume(parser.eventTime);
+    }
+
+    @Benchmark
+    public void jsonTreeWithLinearLookup(Blackhole bh) throws IOException {
+        JsonNode root = mapper.readTree(nextFrame());
+        JsonNode data = root.get("data");
+        JsonNode n = data != null && data.isObject() ? data : root;
+        if (!"trade".equals(n.path("e").asText(null))) return;
+        String pair = n.path("s").asText(null);
+        String price = n.path("p").asText(null);
+        if (pair == null || price == null) return;
+        CryptoSymbol cs = symbols.stream()
+                .filter(s -> s.getBinancePair().equalsIgnoreCase(pair))
+                .findFirst()
+                .orElse(null);
+        if (cs == null) return;
+        bh.consume(cs);
+        bh.consume(new BigDecimal(price).doubleValue());
+        bh.consume(n.path("q").asDouble(0d));
+        bh.consume(n.path("E").asLong(0L));
+    }
+}
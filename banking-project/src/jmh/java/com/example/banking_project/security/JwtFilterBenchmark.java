@@ -0,0 +1,92 @@
+package com.example.banking_project.security;
+
+import com.example.banking_project.user.service.UserService;
+import com.github.benmanes.caffeine.cache.Cache;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Пътят на JwtAuthenticationFilter за една заявка с Bearer токен: с кеша на проверените
+ * claims (повторен токен) срещу пълна проверка на подписа при всяка заявка. Principal-ът
+ * и в двата случая идва от PrincipalCache, така че разликата е само в JWT проверката.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private JwtAuthenticationFilter filter;
+    private Cache<?, ?> verifiedClaims;
+    private String authorization;
+    private final FilterChain chain = (req, res) -> { };
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        UserDetails user = new UserDetailsImpl(UUID.randomUUID(), "ana@example.com", "secret",
+                List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("PROFILE_COMPLETED")));
+        UserService userService = mock(UserService.class);
+        when(userService.loadUserByUsername("ana@example.com")).thenReturn(user);
+
+        JwtService jwtService = new JwtService(10_000);
+        filter = new JwtAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtService", jwtService);
+        ReflectionTestUtils.setField(filter, "principalCache", new PrincipalCache(userService, 300_000, 10_000));
+        verifiedClaims = (Cache<?, ?>) ReflectionTestUtils.getField(jwtService, "verifiedClaims");
+
+        String token = jwtService.generateToken(Map.of(
+                "userId", UUID.randomUUID().toString(),
+                "role", "USER",
+                "profileCompleted", true), user);
+        authorization = "Bearer " + token;
+    }
+
+    @Benchmark
+    public void cachedClaims(Blackhole bh) throws Exception {
+        bh.consume(filterOnce());
+    }
+
+    @Benchmark
+    public void fullVerification(Blackhole bh) throws Exception {
+        verifiedClaims.invalidateAll();
+        bh.consume(filterOnce());
+    }
+
+    private Object filterOnce() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/dashboard");
+        request.addHeader("Authorization", authorization);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+            return request.getAttribute("userId");
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
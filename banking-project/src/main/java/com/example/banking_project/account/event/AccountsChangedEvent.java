@@ -0,0 +1,6 @@
+package com.example.banking_project.account.event;
+
+import java.util.UUID;
+
+/** Сметка на потребителя е създадена, изтрита или балансът й е зададен директно (без ledger ред). */
+public record AccountsChangedEvent(UUID userId) {}
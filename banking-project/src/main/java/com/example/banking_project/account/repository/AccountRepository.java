@@ -1,12 +1,16 @@
 package com.example.banking_project.account.repository;
 
 import com.example.banking_project.account.model.Account;
+import com.example.banking_project.account.view.AccountBalanceView;
+import com.example.banking_project.account.view.AccountLockView;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -48,4 +52,47 @@ public interface AccountRepository extends JpaRepository<Account, UUID> {
     // в модела няма createdOn – сортираме стабилно по id (или смени към другo поле при нужда)
     @Query("select a from Account a order by a.id asc")
     List<Account> findAllByOrderByCreatedOnAsc();
+
+    // ===== Атомарни промени на баланса (UPDATE ... RETURNING, без read-modify-write) =====
+
+    // Празен резултат = няма такъв IBAN или няма достатъчна наличност
+    @Transactional
+    @Query(value = """
+        UPDATE accounts
+        SET balance = balance - :amount,
+            version = version + 1
+        WHERE iban = :iban
+          AND balance >= :amount
+        RETURNING balance
+        """, nativeQuery = true)
+    Optional<BigDecimal> debitIfSufficient(@Param("iban") String iban, @Param("amount") BigDecimal amount);
+
+    @Transactional
+    @Query(value = """
+        UPDATE accounts
+        SET balance = balance + :amount,
+            version = version + 1
+        WHERE iban = :iban
+        RETURNING balance
+        """, nativeQuery = true)
+    Optional<BigDecimal> credit(@Param("iban") String iban, @Param("amount") BigDecimal amount);
+
+    // Заключва всички сметки на партидата наведнъж, подредени по IBAN като при единичния превод
+    @Query(value = """
+        SELECT id, iban, user_id AS "userId", currency_code AS "currencyCode", balance
+        FROM accounts
+        WHERE iban IN (:ibans)
+        ORDER BY iban
+        FOR UPDATE
+        """, nativeQuery = true)
+    List<AccountLockView> lockAllByIbanIn(@Param("ibans") Collection<String> ibans);
+
+    // Балансите с версиите им за няколко потребителя наведнъж (dashboard read model)
+    @Query(value = """
+        SELECT id, iban, user_id AS "userId", currency_code AS "currencyCode", balance, version
+        FROM accounts
+        WHERE user_id IN (:userIds)
+        ORDER BY iban
+        """, nativeQuery = true)
+    List<AccountBalanceView> findBalancesByUserIdIn(@Param("userIds") Collection<UUID> userIds);
 }
@@ -2,7 +2,6 @@ package com.example.banking_project.account.service;
 
 import com.example.banking_project.account.model.Account;
 import com.example.banking_project.account.repository.AccountRepository;
-import com.example.banking_project.exception.BusinessRuleViolationException;
 import com.example.banking_project.transaction.model.TransactionType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
@@ -15,22 +14,15 @@ import java.math.BigDecimal;
 public class AccountBalanceServiceImpl implements AccountBalanceService{
 
     private final AccountRepository accountRepository;
+    private final BalanceMutationEngine balanceMutationEngine;
 
     @Override
     public void updateBalance(String iban, BigDecimal amount, TransactionType type) {
-        Account account = accountRepository.findAccountByIban(iban)
-                .orElseThrow(() -> new ResourceNotFoundException("Account not found"));
-
-        if (type == TransactionType.WITHDRAWAL || type == TransactionType.WITHDRAWAL) {
-            if (account.getBalance().compareTo(amount) < 0) {
-                throw new BusinessRuleViolationException("Insufficient balance.");
-            }
-            account.setBalance(account.getBalance().subtract(amount));
+        if (type == TransactionType.WITHDRAWAL) {
+            balanceMutationEngine.debit(iban, amount);
         } else if (type == TransactionType.DEPOSIT) {
-            account.setBalance(account.getBalance().add(amount));
+            balanceMutationEngine.credit(iban, amount);
         }
-
-        accountRepository.save(account);
     }
 
     @Override
@@ -1,15 +1,19 @@
 package com.example.banking_project.account.service;
 
+import com.example.banking_project.account.event.AccountsChangedEvent;
 import com.example.banking_project.account.model.Account;
 import com.example.banking_project.account.model.AccountType;
 import com.example.banking_project.account.repository.AccountRepository;
 import com.example.banking_project.account.validation.AccountValidationService;
+import com.example.banking_project.cryptocurrency.service.FxService;
+import com.example.banking_project.exception.BusinessRuleViolationException;
 import com.example.banking_project.transaction.model.TransactionType;
 import com.example.banking_project.transaction.service.TransactionService;
 import com.example.banking_project.user.model.User;
 import com.example.banking_project.web.dto.*;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
 import org.springframework.stereotype.Service;
 
@@ -27,6 +31,9 @@ public class AccountServiceImpl implements AccountService {
     private final AccountRepository accountRepository;
     private final AccountValidationService accountValidationService;
     private final TransactionService transactionService;
+    private final BalanceMutationEngine balanceMutationEngine;
+    private final FxService fxService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Override
     public Account create(CreateAccountRequest request, UUID userId) {
@@ -49,7 +56,9 @@ public class AccountServiceImpl implements AccountService {
                 .user(User.builder().id(userId).build())
                 .build();
 
-        return accountRepository.save(account);
+        Account saved = accountRepository.save(account);
+        eventPublisher.publishEvent(new AccountsChangedEvent(userId));
+        return saved;
     }
 
     @Override
@@ -74,37 +83,52 @@ public class AccountServiceImpl implements AccountService {
         Account account = accountRepository.findById(accountId)
                 .orElseThrow(() -> new ResourceNotFoundException("Account not found"));
         account.setBalance(newBalance);
-        return accountRepository.save(account);
+        Account saved = accountRepository.save(account);
+        eventPublisher.publishEvent(new AccountsChangedEvent(account.getUser().getId()));
+        return saved;
     }
 
     @Override
     public void deleteAccount(UUID accountId) {
         accountValidationService.validateAccountExistsById(accountId);
+        UUID userId = accountRepository.findById(accountId).map(a -> a.getUser().getId()).orElse(null);
         accountRepository.deleteById(accountId);
+        if (userId != null) {
+            eventPublisher.publishEvent(new AccountsChangedEvent(userId));
+        }
     }
 
     @Transactional
     @Override
     public TransferResponse transfer(TransferRequest request) {
-        accountValidationService.validateAccountExistsByIban(request.getSenderIban());
-        accountValidationService.validateAccountExistsByIban(request.getReceiverIban());
-
         Account sender = accountRepository.findAccountByIban(request.getSenderIban())
                 .orElseThrow(() -> new ResourceNotFoundException("Sender account not found"));
 
         Account receiver = accountRepository.findAccountByIban(request.getReceiverIban())
                 .orElseThrow(() -> new ResourceNotFoundException("Receiver account not found"));
 
-        accountValidationService.validateTransferRequest(sender.getId(), receiver.getId(), request.getAmount());
+        if (request.getAmount() == null || request.getAmount().signum() <= 0) {
+            throw new BusinessRuleViolationException("Transfer amount must be positive.");
+        }
+
+        // сумата е във валутата на заявката (по подразбиране - на подателя); всяка сметка се движи в своята
+        String currency = request.getCurrency() != null && !request.getCurrency().isBlank()
+                ? request.getCurrency().trim().toUpperCase()
+                : currencyOf(sender);
+        BigDecimal debitAmount = fxService.convert(request.getAmount(), currency, currencyOf(sender));
+        BigDecimal creditAmount = fxService.convert(request.getAmount(), currency, currencyOf(receiver));
+        if (debitAmount.signum() <= 0 || creditAmount.signum() <= 0) {
+            throw new BusinessRuleViolationException("Transfer amount is too small after currency conversion.");
+        }
 
-        updateBalance(sender.getId(), sender.getBalance().subtract(request.getAmount()));
-        updateBalance(receiver.getId(), receiver.getBalance().add(request.getAmount()));
+        // наличността се проверява атомарно от самия UPDATE
+        balanceMutationEngine.transfer(sender.getIban(), receiver.getIban(), debitAmount, creditAmount);
 
         TransactionTransferRequest transactionRequestSender = buildTransactionRequest(
-                request, sender, sender.getUser().getId(), false, true);
+                request, sender, debitAmount, sender.getUser().getId(), false, true);
 
         TransactionTransferRequest transactionRequestReceiver = buildTransactionRequest(
-                request, receiver, receiver.getUser().getId(), true, false);
+                request, receiver, creditAmount, receiver.getUser().getId(), true, false);
 
         TransactionTransferResponse transactionReceiver =
                 transactionService.createTransactionTransfer(transactionRequestReceiver);
@@ -125,14 +149,15 @@ public class AccountServiceImpl implements AccountService {
 
     private TransactionTransferRequest buildTransactionRequest(TransferRequest transferRequest,
                                                                Account account,
+                                                               BigDecimal amount,
                                                                UUID userId,
                                                                Boolean isIncome,
                                                                Boolean isExpense) {
         return TransactionTransferRequest.builder()
                 .account(account)
                 .transactionType(TransactionType.TRANSFER)
-                .amount(transferRequest.getAmount())
-                .currency(Currency.getInstance(transferRequest.getCurrency()))
+                .amount(amount)
+                .currency(Currency.getInstance(currencyOf(account)))
                 .description(transferRequest.getDescription())
                 .isExpense(isExpense)
                 .isIncome(isIncome)
@@ -140,6 +165,10 @@ public class AccountServiceImpl implements AccountService {
                 .build();
     }
 
+    private static String currencyOf(Account account) {
+        return account.getCurrencyCode() != null ? account.getCurrencyCode() : "BGN";
+    }
+
     @Override
     public List<Account> getAccountsByUserId(UUID userId) {
         return accountRepository.findAllAccountsByUserId(userId);
@@ -179,6 +208,7 @@ public class AccountServiceImpl implements AccountService {
                 .build();
 
         accountRepository.save(creditAccount);
+        eventPublisher.publishEvent(new AccountsChangedEvent(userId));
     }
 
     private String createIban() {
@@ -194,24 +224,15 @@ public class AccountServiceImpl implements AccountService {
     @Transactional
     @Override
     public Account debitByIban(String iban, BigDecimal amount) {
-        Account acc = accountRepository.findAccountByIban(iban)
-                .orElseThrow(() -> new ResourceNotFoundException("Account not found"));
-        if (amount.signum() <= 0) throw new IllegalArgumentException("Amount must be positive");
-        if (acc.getBalance().compareTo(amount) < 0) {
-            throw new IllegalArgumentException("Insufficient funds");
-        }
-        acc.setBalance(acc.getBalance().subtract(amount));
-        return accountRepository.save(acc); // @Version в Account пази от race conditions
+        balanceMutationEngine.debit(iban, amount);
+        return getAccountByIban(iban);
     }
 
     @Transactional
     @Override
     public Account creditByIban(String iban, BigDecimal amount) {
-        Account acc = accountRepository.findAccountByIban(iban)
-                .orElseThrow(() -> new ResourceNotFoundException("Account not found"));
-        if (amount.signum() <= 0) throw new IllegalArgumentException("Amount must be positive");
-        acc.setBalance(acc.getBalance().add(amount));
-        return accountRepository.save(acc);
+        balanceMutationEngine.credit(iban, amount);
+        return getAccountByIban(iban);
     }
 
     @Override
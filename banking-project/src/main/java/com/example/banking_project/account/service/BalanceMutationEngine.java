@@ -0,0 +1,72 @@
+package com.example.banking_project.account.service;
+
+import com.example.banking_project.account.repository.AccountRepository;
+import com.example.banking_project.exception.BusinessRuleViolationException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+
+/**
+ * Единствената точка, през която се променя баланс на сметка.
+ * Всяка промяна е един условен UPDATE в базата, така че паралелни дебити
+ * не губят обновявания и не удрят optimistic lock на Account.version.
+ */
+@Component
+@RequiredArgsConstructor
+public class BalanceMutationEngine {
+
+    private final AccountRepository accountRepository;
+
+    @Transactional
+    public BigDecimal debit(String iban, BigDecimal amount) {
+        requirePositive(amount);
+        return accountRepository.debitIfSufficient(iban, amount)
+                .orElseThrow(() -> accountRepository.existsByIban(iban)
+                        ? new BusinessRuleViolationException("Insufficient funds.")
+                        : new ResourceNotFoundException("Account with IBAN " + iban + " not found."));
+    }
+
+    @Transactional
+    public BigDecimal credit(String iban, BigDecimal amount) {
+        requirePositive(amount);
+        return accountRepository.credit(iban, amount)
+                .orElseThrow(() -> new ResourceNotFoundException("Account with IBAN " + iban + " not found."));
+    }
+
+    /**
+     * Двата реда се заключват винаги в един и същ ред (по IBAN), за да няма deadlock
+     * при насрещни преводи A->B и B->A.
+     */
+    @Transactional
+    public TransferBalances transfer(String senderIban, String receiverIban, BigDecimal amount) {
+        return transfer(senderIban, receiverIban, amount, amount);
+    }
+
+    /** Превод между сметки в различни валути: дебит и кредит в съответната валута на сметката. */
+    @Transactional
+    public TransferBalances transfer(String senderIban, String receiverIban,
+                                     BigDecimal debitAmount, BigDecimal creditAmount) {
+        if (senderIban.equals(receiverIban)) {
+            throw new BusinessRuleViolationException("The sender and receiver accounts must be different.");
+        }
+        if (senderIban.compareTo(receiverIban) < 0) {
+            BigDecimal senderBalance = debit(senderIban, debitAmount);
+            BigDecimal receiverBalance = credit(receiverIban, creditAmount);
+            return new TransferBalances(senderBalance, receiverBalance);
+        }
+        BigDecimal receiverBalance = credit(receiverIban, creditAmount);
+        BigDecimal senderBalance = debit(senderIban, debitAmount);
+        return new TransferBalances(senderBalance, receiverBalance);
+    }
+
+    private void requirePositive(BigDecimal amount) {
+        if (amount == null || amount.signum() <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+    }
+
+    public record TransferBalances(BigDecimal senderBalance, BigDecimal receiverBalance) {}
+}
@@ -0,0 +1,294 @@
+package com.example.banking_project.account.service;
+
+import com.example.banking_project.account.model.Account;
+import com.example.banking_project.account.repository.AccountRepository;
+import com.example.banking_project.account.view.AccountLockView;
+import com.example.banking_project.cryptocurrency.service.FxService;
+import com.example.banking_project.exception.BusinessRuleViolationException;
+import com.example.banking_project.transaction.model.Transaction;
+import com.example.banking_project.transaction.model.TransactionStatus;
+import com.example.banking_project.transaction.model.TransactionType;
+import com.example.banking_project.transaction.service.LedgerWriter;
+import com.example.banking_project.user.repository.UserRepository;
+import com.example.banking_project.web.dto.BulkTransferItemResult;
+import com.example.banking_project.web.dto.BulkTransferRequest;
+import com.example.banking_project.web.dto.BulkTransferResponse;
+import com.example.banking_project.web.dto.TransferRequest;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Масови преводи (заплати, пакетни плащания).
+ *
+ * Партидата се валидира в паметта, после се обработва на части (bulk.transfer.chunk-size),
+ * всяка в своя транзакция: всички сметки на частта се заключват с една заявка (по IBAN),
+ * наличностите се проверяват последователно в паметта, нетната промяна се прилага с по един
+ * UPDATE на сметка, а ledger редовете се записват с JDBC batch. Отхвърлен ред не спира
+ * останалите; всеки ред получава собствен резултат.
+ *
+ * Потребител може да нарежда само от свои сметки; ADMIN (оператор на заплати) - от всяка.
+ */
+@Slf4j
+@Service
+public class BulkTransferService {
+
+    private static final String SUCCEEDED = TransactionStatus.SUCCEEDED.name();
+    private static final String FAILED = TransactionStatus.FAILED.name();
+    private static final String DEFAULT_DESCRIPTION = "Bulk transfer";
+
+    private final AccountRepository accountRepository;
+    private final UserRepository userRepository;
+    private final LedgerWriter ledgerWriter;
+    private final FxService fxService;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int maxItems;
+
+    public BulkTransferService(AccountRepository accountRepository,
+                               UserRepository userRepository,
+                               LedgerWriter ledgerWriter,
+                               FxService fxService,
+                               JdbcTemplate jdbcTemplate,
+                               EntityManager entityManager,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${bulk.transfer.chunk-size:2000}") int chunkSize,
+                               @Value("${bulk.transfer.max-items:100000}") int maxItems) {
+        this.accountRepository = accountRepository;
+        this.userRepository = userRepository;
+        this.ledgerWriter = ledgerWriter;
+        this.fxService = fxService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxItems = maxItems;
+    }
+
+    public BulkTransferResponse transfer(BulkTransferRequest request, UUID callerId) {
+        List<TransferRequest> items = request.getTransfers();
+        if (items == null || items.isEmpty()) {
+            throw new BusinessRuleViolationException("The batch contains no transfers.");
+        }
+        if (items.size() > maxItems) {
+            throw new BusinessRuleViolationException("The batch exceeds the limit of " + maxItems + " transfers.");
+        }
+
+        // ADMIN нарежда от всяка сметка, останалите - само от своите
+        boolean anySender = isAdmin();
+        BulkTransferItemResult[] results = new BulkTransferItemResult[items.size()];
+        List<Integer> accepted = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            String reason = validate(items.get(i));
+            if (reason != null) {
+                results[i] = failed(i, items.get(i), reason);
+            } else {
+                accepted.add(i);
+            }
+        }
+
+        for (int from = 0; from < accepted.size(); from += chunkSize) {
+            List<Integer> chunk = accepted.subList(from, Math.min(from + chunkSize, accepted.size()));
+            try {
+                List<BulkTransferItemResult> applied = transactionTemplate.execute(status ->
+                        applyChunk(items, chunk, request.getDescription(), callerId, anySender));
+                applied.forEach(r -> results[r.getIndex()] = r);
+            } catch (RuntimeException e) {
+                // частта е върната изцяло - никой от редовете й не е изпълнен
+                log.error("Bulk transfer chunk of {} items failed: {}", chunk.size(), e.getMessage(), e);
+                chunk.forEach(i -> results[i] = failed(i, items.get(i), "Transfer could not be processed."));
+            } finally {
+                entityManager.clear();
+            }
+        }
+
+        int succeeded = (int) Arrays.stream(results).filter(r -> SUCCEEDED.equals(r.getStatus())).count();
+        return BulkTransferResponse.builder()
+                .total(results.length)
+                .succeeded(succeeded)
+                .failed(results.length - succeeded)
+                .items(Arrays.asList(results))
+                .build();
+    }
+
+    private List<BulkTransferItemResult> applyChunk(List<TransferRequest> items, List<Integer> chunk,
+                                                    String defaultDescription, UUID callerId, boolean anySender) {
+        TreeSet<String> ibans = new TreeSet<>();
+        for (int i : chunk) {
+            ibans.add(items.get(i).getSenderIban().trim());
+            ibans.add(items.get(i).getReceiverIban().trim());
+        }
+        // TreeMap: UPDATE-ите после вървят в същия ред, в който са заключени редовете
+        Map<String, LockedAccount> accounts = new TreeMap<>();
+        for (AccountLockView view : accountRepository.lockAllByIbanIn(ibans)) {
+            accounts.put(view.getIban(), new LockedAccount(view));
+        }
+
+        LocalDate today = LocalDate.now();
+        List<BulkTransferItemResult> out = new ArrayList<>(chunk.size());
+        List<Transaction> ledger = new ArrayList<>(chunk.size() * 2);
+        for (int i : chunk) {
+            TransferRequest item = items.get(i);
+            LockedAccount sender = accounts.get(item.getSenderIban().trim());
+            LockedAccount receiver = accounts.get(item.getReceiverIban().trim());
+            if (sender == null) {
+                out.add(failed(i, item, "Sender account not found"));
+                continue;
+            }
+            if (!anySender && (callerId == null || !callerId.equals(sender.userId))) {
+                out.add(failed(i, item, "Sender account does not belong to the current user."));
+                continue;
+            }
+            if (receiver == null) {
+                out.add(failed(i, item, "Receiver account not found"));
+                continue;
+            }
+
+            String currency = item.getCurrency() != null && !item.getCurrency().isBlank()
+                    ? item.getCurrency().trim().toUpperCase()
+                    : sender.currency;
+            BigDecimal debitAmount;
+            BigDecimal creditAmount;
+            try {
+                debitAmount = fxService.convert(item.getAmount(), currency, sender.currency);
+                creditAmount = fxService.convert(item.getAmount(), currency, receiver.currency);
+            } catch (IllegalArgumentException e) {
+                out.add(failed(i, item, e.getMessage()));
+                continue;
+            }
+            if (debitAmount.signum() <= 0 || creditAmount.signum() <= 0) {
+                out.add(failed(i, item, "Transfer amount is too small after currency conversion."));
+                continue;
+            }
+            // редовете се прилагат по реда в партидата, както при последователни преводи
+            if (sender.balance.compareTo(debitAmount) < 0) {
+                out.add(failed(i, item, "Insufficient funds."));
+                continue;
+            }
+            sender.apply(debitAmount.negate());
+            receiver.apply(creditAmount);
+
+            String description = item.getDescription() != null ? item.getDescription()
+                    : defaultDescription != null ? defaultDescription : DEFAULT_DESCRIPTION;
+            ledger.add(ledgerEntry(sender, debitAmount, description, today, false));
+            ledger.add(ledgerEntry(receiver, creditAmount, description, today, true));
+            out.add(BulkTransferItemResult.builder()
+                    .index(i)
+                    .senderIban(sender.iban)
+                    .receiverIban(receiver.iban)
+                    .status(SUCCEEDED)
+                    .debitAmount(debitAmount)
+                    .debitCurrency(sender.currency)
+                    .creditAmount(creditAmount)
+                    .creditCurrency(receiver.currency)
+                    .build());
+        }
+
+        List<Object[]> updates = new ArrayList<>(accounts.size());
+        for (LockedAccount account : accounts.values()) {
+            if (account.delta.signum() != 0) {
+                updates.add(new Object[]{account.delta, account.id});
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    UPDATE accounts
+                    SET balance = balance + ?,
+                        version = version + 1
+                    WHERE id = ?
+                    """, updates);
+        }
+        if (!ledger.isEmpty()) {
+            ledgerWriter.writeAll(ledger);
+            entityManager.flush();
+        }
+        return out;
+    }
+
+    private static boolean isAdmin() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null && auth.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN"));
+    }
+
+    // проверките, които не изискват база; null = редът е валиден
+    private static String validate(TransferRequest item) {
+        if (item == null) return "Empty transfer.";
+        if (item.getSenderIban() == null || item.getSenderIban().isBlank()) return "Sender IBAN is required.";
+        if (item.getReceiverIban() == null || item.getReceiverIban().isBlank()) return "Receiver IBAN is required.";
+        if (item.getSenderIban().trim().equals(item.getReceiverIban().trim())) {
+            return "The sender and receiver accounts must be different.";
+        }
+        if (item.getAmount() == null || item.getAmount().signum() <= 0) return "Transfer amount must be positive.";
+        return null;
+    }
+
+    // сметката и потребителят са само референции - при запис трябват единствено id-тата им
+    private Transaction ledgerEntry(LockedAccount account, BigDecimal amount, String description,
+                                    LocalDate createdOn, boolean income) {
+        return Transaction.builder()
+                .amount(amount)
+                .createdOn(createdOn)
+                .currency(Currency.getInstance(account.currency))
+                .description(description)
+                .transactionStatus(TransactionStatus.SUCCEEDED)
+                .transactionType(TransactionType.TRANSFER)
+                .account(entityManager.getReference(Account.class, account.id))
+                .user(userRepository.getReferenceById(account.userId))
+                .isIncome(income)
+                .isExpense(!income)
+                .build();
+    }
+
+    private static BulkTransferItemResult failed(int index, TransferRequest item, String reason) {
+        return BulkTransferItemResult.builder()
+                .index(index)
+                .senderIban(item != null ? item.getSenderIban() : null)
+                .receiverIban(item != null ? item.getReceiverIban() : null)
+                .status(FAILED)
+                .reason(reason)
+                .build();
+    }
+
+    /** Заключена сметка: наличността в хода на частта и натрупаната нетна промяна. */
+    private static final class LockedAccount {
+        final UUID id;
+        final String iban;
+        final UUID userId;
+        final String currency;
+        BigDecimal balance;
+        BigDecimal delta = BigDecimal.ZERO;
+
+        LockedAccount(AccountLockView view) {
+            this.id = view.getId();
+            this.iban = view.getIban();
+            this.userId = view.getUserId();
+            this.currency = view.getCurrencyCode() != null ? view.getCurrencyCode() : "BGN";
+            this.balance = view.getBalance() != null ? view.getBalance() : BigDecimal.ZERO;
+        }
+
+        void apply(BigDecimal amount) {
+            balance = balance.add(amount);
+            delta = delta.add(amount);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.banking_project.account.view;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public interface AccountLockView {
+    UUID getId();
+    String getIban();
+    UUID getUserId();
+    String getCurrencyCode();
+    BigDecimal getBalance();
+}
@@ -3,6 +3,7 @@ package com.example.banking_project.cache;
 import com.example.banking_project.cryptocurrency.service.PriceEntry;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
@@ -22,11 +23,12 @@ public class CacheConfig {
         return mgr;
     }
 
+    // Записите живеят до max-stale; свежестта (TTL) се проверява в CryptoPriceService
     @Bean
-    public Cache<String, PriceEntry> cryptoPriceCache() {
+    public Cache<String, PriceEntry> cryptoPriceCache(@Value("${crypto.price.max-stale-ms:120000}") long maxStaleMs) {
         return Caffeine.newBuilder()
                 .maximumSize(1_000)
-                .expireAfterWrite(Duration.ofSeconds(30))
+                .expireAfterWrite(Duration.ofMillis(maxStaleMs))
                 .recordStats()
                 .build();
     }
@@ -1,19 +1,17 @@
 package com.example.banking_project.cryptocurrency.configuration;
 
 import com.example.banking_project.web.dto.crypto.CryptoHistoryDto;
+import com.example.banking_project.web.dto.crypto.CryptoHistoryPointDto;
 import com.example.banking_project.web.dto.crypto.CryptoPriceDto;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.stream.Collectors;
 
-@ConditionalOnProperty(name = "crypto.source", havingValue = "binance")
 @Component
 public class BinanceClient implements MarketDataClient {
 
@@ -53,27 +51,79 @@ public class BinanceClient implements MarketDataClient {
         return (fromId != null) ? fromId : (s.endsWith("USDT") ? s : s + "USDT");
     }
 
+    // една заявка за всички двойки (symbols=[...]); непознати id-та се пропускат, а не стават BTCUSDT
     public Mono<List<CryptoPriceDto>> simplePrice(String idsCsv, String vsCurrenciesCsv) {
-        List<String> ids = Arrays.stream(idsCsv.split(","))
-                .map(String::trim).filter(s -> !s.isBlank()).toList();
+        if (!supportsVs(vsCurrenciesCsv)) {
+            return Mono.error(new IllegalArgumentException("Binance prices are quoted only in usd, got: " + vsCurrenciesCsv));
+        }
+        Map<String, String> pairToId = new LinkedHashMap<>();
+        Arrays.stream(idsCsv.split(","))
+                .map(String::trim).filter(s -> !s.isBlank())
+                .forEach(id -> {
+                    String pair = ID_TO_PAIR.get(id.toLowerCase(Locale.ROOT));
+                    if (pair != null) pairToId.put(pair, id);
+                });
+        if (pairToId.isEmpty()) {
+            return Mono.just(List.of());
+        }
 
-        return Flux.fromIterable(ids)
-                .flatMap(id -> client.get()
-                        .uri(uriBuilder -> uriBuilder.path("/api/v3/ticker/price")
-                                .queryParam("symbol", ID_TO_PAIR.getOrDefault(id.toLowerCase(), "BTCUSDT"))
-                                .build())
-                        .retrieve()
-                        .bodyToMono(Map.class)
-                        .map(m -> {
-                            String priceStr = String.valueOf(m.get("price"));
-                            BigDecimal usd = new BigDecimal(priceStr); // USDT ~= USD
-                            return new CryptoPriceDto(id, Map.of("usd", usd));
-                        }))
-                .collectList();
+        String symbols = pairToId.keySet().stream()
+                .map(p -> "\"" + p + "\"")
+                .collect(Collectors.joining(",", "[", "]"));
+        return client.get()
+                .uri(uriBuilder -> uriBuilder.path("/api/v3/ticker/price")
+                        .queryParam("symbols", "{symbols}")
+                        .build(symbols))
+                .retrieve()
+                .bodyToMono(List.class)
+                .map(raw -> {
+                    List<CryptoPriceDto> out = new ArrayList<>(pairToId.size());
+                    for (Object o : raw) {
+                        Map<?, ?> m = (Map<?, ?>) o;
+                        String id = pairToId.get(String.valueOf(m.get("symbol")));
+                        if (id == null) continue;
+                        BigDecimal usd = new BigDecimal(String.valueOf(m.get("price"))); // USDT ~= USD
+                        out.add(new CryptoPriceDto(id, Map.of("usd", usd)));
+                    }
+                    out.sort(Comparator.comparing(CryptoPriceDto::id));
+                    return out;
+                });
     }
 
+    /** Binance котира само срещу USDT, затова отговаря само за usd. */
+    public static boolean supportsVs(String vsCurrenciesCsv) {
+        return Arrays.stream(vsCurrenciesCsv.split(","))
+                .map(String::trim).filter(s -> !s.isBlank())
+                .allMatch(v -> v.equalsIgnoreCase("usd") || v.equalsIgnoreCase("usdt"));
+    }
+
+    // klines по USDT двойката; интервалът се избира така, че да стигне една заявка (limit 1000)
     public Mono<CryptoHistoryDto> history(String id, String vsCurrency, String days) {
-        return Mono.error(new UnsupportedOperationException(
-                "Binance history not implemented; consider /api/v3/klines"));
+        String vs = vsCurrency.toLowerCase(Locale.ROOT);
+        if (!supportsVs(vs)) {
+            return Mono.error(new IllegalArgumentException("Binance history supports only usd, got: " + vsCurrency));
+        }
+        double d = "max".equals(days) ? 1000 : Double.parseDouble(days);
+        String interval = d <= 1 ? "5m" : d <= 30 ? "1h" : "1d";
+        long startTime = System.currentTimeMillis() - (long) (d * 86_400_000L);
+
+        return client.get()
+                .uri(uriBuilder -> uriBuilder.path("/api/v3/klines")
+                        .queryParam("symbol", toUsdtPair(id))
+                        .queryParam("interval", interval)
+                        .queryParam("startTime", startTime)
+                        .queryParam("limit", 1000)
+                        .build())
+                .retrieve()
+                .bodyToMono(List.class)
+                .map(raw -> {
+                    List<List<Object>> klines = (List<List<Object>>) raw;
+                    List<CryptoHistoryPointDto> points = new ArrayList<>(klines.size());
+                    for (List<Object> k : klines) {
+                        long openTime = ((Number) k.get(0)).longValue();
+                        points.add(new CryptoHistoryPointDto(openTime, new BigDecimal(String.valueOf(k.get(4)))));
+                    }
+                    return new CryptoHistoryDto(id, vs, points);
+                });
     }
 }
@@ -1,33 +1,83 @@
 package com.example.banking_project.cryptocurrency.configuration;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.WebSocket;
 import java.nio.charset.StandardCharsets;
 import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.Flow;
-import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+/**
+ * Връзка към Binance combined stream.
+ *
+ * Завършените съобщения (текстови или бинарни кадри) влизат в ограничена опашка и се
+ * обработват от една нишка. При пълна опашка се изхвърля най-старото съобщение - за цени
+ * важи последното, а WebSocket нишката никога не блокира. Handler-ът се задава веднъж
+ * и преживява reconnect-ите; HttpClient-ът също е един за целия живот на приложението.
+ */
 @Component
 public class BinanceWebSocketClient {
     private static final Logger log = LoggerFactory.getLogger(BinanceWebSocketClient.class);
 
-    private final SubmissionPublisher<String> publisher = new SubmissionPublisher<>();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
     private final AtomicReference<WebSocket> webSocketRef = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
     private volatile long lastMessageAt = 0L;
 
+    @Value("${crypto.live.ingest.capacity:4096}")
+    private int capacity;
+
+    private BlockingQueue<Message> queue;
+    private Thread worker;
+    private volatile boolean running;
+    private volatile MessageHandler handler;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        running = true;
+        worker = new Thread(this::runLoop, "binance-ws-ingest");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        WebSocket ws = webSocketRef.getAndSet(null);
+        if (ws != null) ws.abort();
+        worker.interrupt();
+    }
+
+    /** Един handler за всички връзки; повторно извикване го подменя, а не добавя нов. */
+    public void setHandler(MessageHandler handler) {
+        this.handler = handler;
+    }
+
     /** Стар метод – държа го за обратна съвместимост (единичен поток). */
     public synchronized void connect() {
-        connectForStreams(java.util.List.of("btcusdt@trade"));
+        connectForStreams(List.of("btcusdt@trade"));
     }
 
     /** Нов метод: приема колекция от stream-и (напр. btcusdt@trade, ethusdt@trade, …) */
@@ -38,11 +88,19 @@ public class BinanceWebSocketClient {
                     .collect(Collectors.joining("/"));
             String url = "wss://stream.binance.com:9443/stream?streams=" + streamsPart;
 
+            // старата връзка се затваря, иначе два listener-а пълнят опашката с едни и същи сделки
+            long gen = generation.incrementAndGet();
+            WebSocket previous = webSocketRef.getAndSet(null);
+            if (previous != null) previous.abort();
+
             log.info("Connecting to Binance WS ({} streams)...", streams.size());
-            HttpClient.newHttpClient()
-                    .newWebSocketBuilder()
-                    .buildAsync(URI.create(url), new Listener())
+            httpClient.newWebSocketBuilder()
+                    .buildAsync(URI.create(url), new Listener(gen))
                     .thenAccept(ws -> {
+                        if (generation.get() != gen) {
+                            ws.abort();
+                            return;
+                        }
                         webSocketRef.set(ws);
                         lastMessageAt = System.currentTimeMillis();
                         log.info("Binance WS connected.");
@@ -63,20 +121,67 @@ public class BinanceWebSocketClient {
     }
 
     public synchronized void reconnect() {
-        try {
-            WebSocket ws = webSocketRef.getAndSet(null);
-            if (ws != null) { try { ws.abort(); } catch (Exception ignore) {} }
-        } catch (Exception ignore) {}
+        generation.incrementAndGet();
+        WebSocket ws = webSocketRef.getAndSet(null);
+        if (ws != null) { try { ws.abort(); } catch (Exception ignore) {} }
         // Няма запазен списък с потоци тук — оставяме сервиса да извика отново connectForStreams(...)
         log.warn("WS aborted. You should call connectForStreams(...) again from the service.");
     }
 
-    public Flow.Publisher<String> getPublisher() {
-        return publisher;
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long receivedCount() {
+        return received.get();
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    private void enqueue(Message message) {
+        received.incrementAndGet();
+        // drop-oldest: единственият producer е WebSocket нишката, така че след poll() има място
+        while (!queue.offer(message)) {
+            if (queue.poll() != null) dropped.incrementAndGet();
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            try {
+                Message m = queue.take();
+                MessageHandler h = handler;
+                if (h != null) h.onMessage(m.payload(), m.receivedNanos());
+            } catch (InterruptedException e) {
+                if (!running) break;
+            } catch (RuntimeException e) {
+                log.warn("WS message handler error: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface MessageHandler {
+        void onMessage(String payload, long receivedNanos);
     }
 
+    private record Message(String payload, long receivedNanos) {}
+
     private final class Listener implements WebSocket.Listener {
+        private final long gen;
+        // кадрите на едно съобщение идват последователно, така че буферите са на връзка
         private final StringBuilder textBuffer = new StringBuilder();
+        private final ByteArrayOutputStream binaryBuffer = new ByteArrayOutputStream();
+
+        Listener(long gen) {
+            this.gen = gen;
+        }
 
         @Override public void onOpen(WebSocket webSocket) {
             webSocket.request(1);
@@ -86,12 +191,16 @@ public class BinanceWebSocketClient {
         @Override
         public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
             try {
+                if (generation.get() != gen) return null;
                 lastMessageAt = System.currentTimeMillis();
-                textBuffer.append(data);
-                if (last) {
-                    String full = textBuffer.toString();
-                    textBuffer.setLength(0);
-                    publisher.submit(full); // публикуваме само завършен JSON
+                if (last && textBuffer.isEmpty()) {
+                    enqueue(new Message(data.toString(), System.nanoTime()));
+                } else {
+                    textBuffer.append(data);
+                    if (last) {
+                        enqueue(new Message(textBuffer.toString(), System.nanoTime()));
+                        textBuffer.setLength(0);
+                    }
                 }
             } catch (Exception e) {
                 log.warn("WS onText error: {}", e.getMessage(), e);
@@ -102,8 +211,25 @@ public class BinanceWebSocketClient {
             return null;
         }
 
-        @Override public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
-            webSocket.request(1);
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            try {
+                if (generation.get() != gen) return null;
+                lastMessageAt = System.currentTimeMillis();
+                byte[] chunk = new byte[data.remaining()];
+                data.get(chunk);
+                binaryBuffer.write(chunk, 0, chunk.length);
+                if (last) {
+                    // декодира се целият payload, за да не се разкъса многобайтов UTF-8 символ
+                    enqueue(new Message(binaryBuffer.toString(StandardCharsets.UTF_8), System.nanoTime()));
+                    binaryBuffer.reset();
+                }
+            } catch (Exception e) {
+                log.warn("WS onBinary error: {}", e.getMessage(), e);
+                binaryBuffer.reset();
+            } finally {
+                webSocket.request(1);
+            }
             return null;
         }
 
@@ -4,7 +4,6 @@ import com.example.banking_project.web.dto.crypto.CryptoHistoryDto;
 import com.example.banking_project.web.dto.crypto.CryptoHistoryPointDto;
 import com.example.banking_project.web.dto.crypto.CryptoPriceDto;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
@@ -12,7 +11,6 @@ import reactor.core.publisher.Mono;
 import java.math.BigDecimal;
 import java.util.*;
 
-@ConditionalOnProperty(name = "crypto.source", havingValue = "coingecko")
 @Component
 public class CoinGeckoClient implements MarketDataClient {
 
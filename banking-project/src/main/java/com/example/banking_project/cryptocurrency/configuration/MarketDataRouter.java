@@ -0,0 +1,188 @@
+package com.example.banking_project.cryptocurrency.configuration;
+
+import com.example.banking_project.web.dto.crypto.CryptoHistoryDto;
+import com.example.banking_project.web.dto.crypto.CryptoPriceDto;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * MarketDataClient, който държи и двата доставчика активни.
+ *
+ * Предпочитаният (crypto.source) се пита пръв. Ако не отговори до hedge-percentile от
+ * собствената си латентност (или върне грешка), се пуска втора заявка към другия и се взима
+ * първият успешен отговор - така опашката на латентността зависи от по-бързия доставчик.
+ * Всеки доставчик има свой circuit breaker (marketData-coingecko / marketData-binance):
+ * отворен breaker означава, че доставчикът се прескача изцяло.
+ */
+@Slf4j
+@Primary
+@Component
+public class MarketDataRouter implements MarketDataClient {
+
+    private final Provider coinGecko;
+    private final Provider binance;
+    private final boolean preferBinance;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayMs;
+    private final long hedgeDefaultDelayMs;
+
+    public MarketDataRouter(CoinGeckoClient coinGeckoClient,
+                            BinanceClient binanceClient,
+                            CircuitBreakerRegistry circuitBreakerRegistry,
+                            @Value("${crypto.source:coingecko}") String source,
+                            @Value("${crypto.market.hedge-percentile:0.95}") double hedgePercentile,
+                            @Value("${crypto.market.hedge-min-delay-ms:50}") long hedgeMinDelayMs,
+                            @Value("${crypto.market.hedge-default-delay-ms:300}") long hedgeDefaultDelayMs) {
+        this.coinGecko = new Provider("coingecko", coinGeckoClient,
+                circuitBreakerRegistry.circuitBreaker("marketData-coingecko"));
+        this.binance = new Provider("binance", binanceClient,
+                circuitBreakerRegistry.circuitBreaker("marketData-binance"));
+        this.preferBinance = "binance".equalsIgnoreCase(source);
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelayMs = hedgeMinDelayMs;
+        this.hedgeDefaultDelayMs = hedgeDefaultDelayMs;
+    }
+
+    @Override
+    public Mono<List<CryptoPriceDto>> simplePrice(String idsCsv, String vsCurrenciesCsv) {
+        List<Provider> order = order(BinanceClient.supportsVs(vsCurrenciesCsv));
+        Function<Provider, Mono<PriceAnswer>> ask = p ->
+                call(p, c -> c.simplePrice(idsCsv, vsCurrenciesCsv)).map(prices -> new PriceAnswer(p, prices));
+        Mono<PriceAnswer> result = order.size() == 1
+                ? ask.apply(order.get(0))
+                : hedged(order.get(0), order.get(1), ask);
+
+        // Binance не познава всички id-та - липсващите се допълват от CoinGecko
+        return result.flatMap(answer -> {
+            Set<String> missing = missingIds(idsCsv, answer.prices());
+            if (missing.isEmpty() || answer.from() != binance) return Mono.just(answer.prices());
+            return call(coinGecko, c -> c.simplePrice(String.join(",", missing), vsCurrenciesCsv))
+                    .map(extra -> merge(answer.prices(), extra))
+                    .onErrorResume(e -> {
+                        log.warn("Cannot fill {} missing prices from coingecko: {}", missing.size(), e.getMessage());
+                        return Mono.just(answer.prices());
+                    });
+        });
+    }
+
+    @Override
+    public Mono<CryptoHistoryDto> history(String id, String vsCurrency, String days) {
+        List<Provider> order = order(BinanceClient.supportsVs(vsCurrency));
+        Mono<CryptoHistoryDto> first = call(order.get(0), c -> c.history(id, vsCurrency, days));
+        if (order.size() == 1) return first;
+        // историята е тежка заявка и се кешира - само failover, без hedge
+        return first.onErrorResume(e -> {
+            log.warn("History from {} failed ({}), trying {}", order.get(0).name, e.getMessage(), order.get(1).name);
+            return call(order.get(1), c -> c.history(id, vsCurrency, days));
+        });
+    }
+
+    private <T> Mono<T> hedged(Provider primary, Provider secondary, Function<Provider, Mono<T>> ask) {
+        return Mono.defer(() -> {
+            Duration delay = Duration.ofMillis(primary.hedgeDelayMs(hedgePercentile, hedgeMinDelayMs, hedgeDefaultDelayMs));
+            Sinks.Empty<Void> primaryFailed = Sinks.empty();
+            Mono<T> first = ask.apply(primary)
+                    .doOnError(e -> primaryFailed.tryEmitEmpty());
+            Mono<T> hedge = Mono.firstWithSignal(Mono.delay(delay).then(), primaryFailed.asMono())
+                    .then(Mono.defer(() -> ask.apply(secondary)));
+            // губещата заявка се отказва (cancel), а breaker-ът й освобождава разрешението
+            return Mono.firstWithValue(first, hedge);
+        });
+    }
+
+    private <T> Mono<T> call(Provider p, Function<MarketDataClient, Mono<T>> request) {
+        return Mono.defer(() -> {
+            if (!p.breaker.tryAcquirePermission()) {
+                return Mono.error(CallNotPermittedException.createCallNotPermittedException(p.breaker));
+            }
+            long start = System.nanoTime();
+            return request.apply(p.client)
+                    .doOnSuccess(v -> {
+                        long took = System.nanoTime() - start;
+                        p.breaker.onSuccess(took, TimeUnit.NANOSECONDS);
+                        p.record(took);
+                    })
+                    .doOnError(e -> p.breaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e))
+                    .doOnCancel(p.breaker::releasePermission);
+        });
+    }
+
+    // предпочитаният първи; доставчик с отворен breaker отива накрая, за да не чакаме hedge
+    private List<Provider> order(boolean binanceSupported) {
+        if (!binanceSupported) return List.of(coinGecko);
+        Provider first = preferBinance ? binance : coinGecko;
+        Provider second = preferBinance ? coinGecko : binance;
+        if (first.breaker.getState() == CircuitBreaker.State.OPEN
+                && second.breaker.getState() != CircuitBreaker.State.OPEN) {
+            return List.of(second, first);
+        }
+        return List.of(first, second);
+    }
+
+    private static Set<String> missingIds(String idsCsv, List<CryptoPriceDto> prices) {
+        Set<String> missing = new HashSet<>();
+        Arrays.stream(idsCsv.split(",")).map(String::trim).filter(s -> !s.isBlank()).forEach(missing::add);
+        prices.forEach(p -> missing.remove(p.id()));
+        return missing;
+    }
+
+    private static List<CryptoPriceDto> merge(List<CryptoPriceDto> a, List<CryptoPriceDto> b) {
+        List<CryptoPriceDto> out = new ArrayList<>(a.size() + b.size());
+        out.addAll(a);
+        out.addAll(b);
+        out.sort(Comparator.comparing(CryptoPriceDto::id));
+        return out;
+    }
+
+    private record PriceAnswer(Provider from, List<CryptoPriceDto> prices) {}
+
+    /** Доставчик + breaker + последните латентности (ms) за percentile-а на hedge-а. */
+    private static final class Provider {
+        private static final int WINDOW = 128;
+        private static final int MIN_SAMPLES = 20;
+
+        final String name;
+        final MarketDataClient client;
+        final CircuitBreaker breaker;
+        private final long[] latenciesMs = new long[WINDOW];
+        private int samples;
+        private int next;
+
+        Provider(String name, MarketDataClient client, CircuitBreaker breaker) {
+            this.name = name;
+            this.client = client;
+            this.breaker = breaker;
+        }
+
+        synchronized void record(long nanos) {
+            latenciesMs[next] = TimeUnit.NANOSECONDS.toMillis(nanos);
+            next = (next + 1) % WINDOW;
+            if (samples < WINDOW) samples++;
+        }
+
+        synchronized long hedgeDelayMs(double percentile, long minMs, long defaultMs) {
+            if (samples < MIN_SAMPLES) return defaultMs;
+            long[] sorted = Arrays.copyOf(latenciesMs, samples);
+            Arrays.sort(sorted);
+            int idx = (int) Math.min(samples - 1, Math.ceil(percentile * samples) - 1);
+            return Math.max(minMs, sorted[Math.max(0, idx)]);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.banking_project.cryptocurrency.model;
+
+public enum CandleInterval {
+    SECOND_1("1s", 1_000L),
+    MINUTE_1("1m", 60_000L),
+    HOUR_1("1h", 3_600_000L);
+
+    private final String code;
+    private final long millis;
+
+    CandleInterval(String code, long millis) {
+        this.code = code;
+        this.millis = millis;
+    }
+
+    public String getCode() { return code; }
+
+    public long getMillis() { return millis; }
+
+    /** Началото на бара, в който попада timestamp-ът. */
+    public long bucket(long epochMs) {
+        return epochMs - Math.floorMod(epochMs, millis);
+    }
+}
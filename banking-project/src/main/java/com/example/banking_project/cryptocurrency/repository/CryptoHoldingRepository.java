@@ -1,7 +1,10 @@
 package com.example.banking_project.cryptocurrency.repository;
 
 import com.example.banking_project.cryptocurrency.model.CryptoHolding;
+import com.example.banking_project.cryptocurrency.view.HoldingPositionView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -19,5 +22,20 @@ public interface CryptoHoldingRepository extends JpaRepository<CryptoHolding, UU
 
     List<CryptoHolding> findAllByUserId(UUID userId);
 
+    // iban-ът на сметката идва от същата заявка, без да се зареждат Account/User entity-тата
+    @Query(value = """
+        SELECT h.account_id AS accountId,
+               a.iban       AS iban,
+               h.asset      AS asset,
+               h.quantity   AS quantity,
+               h.avg_price  AS avgPrice
+        FROM crypto_holding h
+        JOIN accounts a ON a.id = h.account_id
+        WHERE h.user_id = :userId
+          AND h.quantity > 0
+        ORDER BY h.asset, h.account_id
+        """, nativeQuery = true)
+    List<HoldingPositionView> findPositionsByUserId(@Param("userId") UUID userId);
+
     Optional<CryptoHolding> findByIbanAndAsset(String iban, String asset);
 }
@@ -0,0 +1,132 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.model.CandleInterval;
+import com.example.banking_project.cryptocurrency.service.CandleStore.Candle;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Събира сделките от Binance потока в 1s/1m/1h OHLCV бари по символ.
+ *
+ * Текущият бар на всеки интервал е в паметта; записва се в CandleStore, когато дойде
+ * сделка от следващия бар или когато времето му изтече (за символи без сделки).
+ */
+@Component
+@RequiredArgsConstructor
+public class CandleAggregator {
+
+    private static final CandleInterval[] INTERVALS = CandleInterval.values();
+
+    private final CandleStore store;
+
+    private final Map<String, SymbolBars> bySymbol = new ConcurrentHashMap<>();
+
+    @Value("${crypto.candles.enabled:true}")
+    private boolean enabled;
+
+    // закъснели сделки (по време на борсата) още влизат в бара толкова време след края му
+    @Value("${crypto.candles.close-grace-ms:500}")
+    private long closeGraceMs;
+
+    /** Вика се от ingest нишката за всяка сделка, преди филтъра за непроменена цена. */
+    public void onTrade(String symbolId, double price, double quantity, long tradeTime) {
+        if (!enabled || !(price > 0) || tradeTime <= 0) return;
+        bySymbol.computeIfAbsent(symbolId, SymbolBars::new).add(price, quantity, tradeTime);
+    }
+
+    /** Текущият (още незатворен) бар, за да е и последната точка на графиката актуална. */
+    public Optional<Candle> current(String symbolId, CandleInterval interval) {
+        SymbolBars bars = bySymbol.get(symbolId);
+        return bars == null ? Optional.empty() : Optional.ofNullable(bars.snapshot(interval));
+    }
+
+    @Scheduled(fixedDelayString = "${crypto.candles.flush-ms:1000}")
+    public void closeElapsed() {
+        long cutoff = System.currentTimeMillis() - closeGraceMs;
+        bySymbol.values().forEach(b -> b.closeEndedBefore(cutoff));
+    }
+
+    // частичните бари също се записват; след рестарт в същия бар store-ът ги слива
+    @PreDestroy
+    public void flush() {
+        bySymbol.values().forEach(b -> b.closeEndedBefore(Long.MAX_VALUE));
+    }
+
+    private final class SymbolBars {
+        private final String symbolId;
+        private final OpenBar[] open = new OpenBar[INTERVALS.length];
+
+        SymbolBars(String symbolId) {
+            this.symbolId = symbolId;
+        }
+
+        synchronized void add(double price, double quantity, long tradeTime) {
+            for (int i = 0; i < INTERVALS.length; i++) {
+                CandleInterval interval = INTERVALS[i];
+                long bucket = interval.bucket(tradeTime);
+                OpenBar bar = open[i];
+                if (bar != null && bucket > bar.openTime) {
+                    store.append(symbolId, interval, bar.toCandle());
+                    bar = null;
+                }
+                if (bar == null) {
+                    open[i] = new OpenBar(bucket, price, quantity);
+                } else if (bucket == bar.openTime) {
+                    bar.add(price, quantity);
+                }
+                // сделка за вече затворен бар се пропуска
+            }
+        }
+
+        synchronized void closeEndedBefore(long cutoff) {
+            for (int i = 0; i < INTERVALS.length; i++) {
+                OpenBar bar = open[i];
+                if (bar != null && bar.openTime + INTERVALS[i].getMillis() <= cutoff) {
+                    store.append(symbolId, INTERVALS[i], bar.toCandle());
+                    open[i] = null;
+                }
+            }
+        }
+
+        synchronized Candle snapshot(CandleInterval interval) {
+            OpenBar bar = open[interval.ordinal()];
+            return bar == null ? null : bar.toCandle();
+        }
+    }
+
+    private static final class OpenBar {
+        final long openTime;
+        final double open;
+        double high;
+        double low;
+        double close;
+        double volume;
+
+        OpenBar(long openTime, double price, double quantity) {
+            this.openTime = openTime;
+            this.open = price;
+            this.high = price;
+            this.low = price;
+            this.close = price;
+            this.volume = quantity;
+        }
+
+        void add(double price, double quantity) {
+            if (price > high) high = price;
+            if (price < low) low = price;
+            close = price;
+            volume += quantity;
+        }
+
+        Candle toCandle() {
+            return new Candle(openTime, open, high, low, close, volume);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.model.CandleInterval;
+import com.example.banking_project.cryptocurrency.service.CandleStore.Candle;
+import com.example.banking_project.web.dto.crypto.CryptoHistoryDto;
+import com.example.banking_project.web.dto.crypto.CryptoHistoryPointDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * История на цените за графиките: от локалните свещи (CandleStore), а отдалеченият
+ * източник (CryptoService) се пита само за началото на периода, което локално липсва -
+ * преди първия бар или преди последното прекъсване на потока.
+ *
+ * Локално се обслужват usd (USDT двойките) и bgn (по курса от FxService).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CandleHistoryService {
+
+    private static final long DAY_MS = Duration.ofDays(1).toMillis();
+
+    private final CandleStore store;
+    private final CandleAggregator aggregator;
+    private final CryptoService cryptoService;
+    private final FxService fxService;
+
+    @Value("${crypto.candles.enabled:true}")
+    private boolean enabled;
+
+    // по-голяма дупка между два бара значи, че потокът не е слушан и там се пита отдалечено
+    @Value("${crypto.candles.max-gap-ms:300000}")
+    private long maxGapMs;
+
+    public Mono<CryptoHistoryDto> getHistory(String id, String vsCurrency, String days) {
+        BigDecimal rate = rateFor(vsCurrency);
+        Double span = parseDays(days);
+        if (!enabled || rate == null || span == null) {
+            return cryptoService.getHistory(id, vsCurrency, days);
+        }
+
+        long now = System.currentTimeMillis();
+        long from = span.isInfinite() ? 0L : now - (long) (span * DAY_MS);
+        Resolution res = Resolution.of(span);
+
+        List<Candle> bars = store.read(id, res.interval(), from, now);
+        aggregator.current(id, res.interval()).ifPresent(c -> {
+            if (bars.isEmpty() || bars.get(bars.size() - 1).openTime() < c.openTime()) bars.add(c);
+        });
+
+        long coveredFrom = coveredFrom(bars, res.interval(), now);
+        List<CryptoHistoryPointDto> local = toPoints(bars, coveredFrom, res.stepMs(), rate);
+        if (coveredFrom <= from + res.interval().getMillis()) {
+            return Mono.just(new CryptoHistoryDto(id, vsCurrency, local));
+        }
+
+        return cryptoService.getHistory(id, vsCurrency, days)
+                .map(remote -> {
+                    List<CryptoHistoryPointDto> merged = new ArrayList<>(remote.points().size() + local.size());
+                    for (CryptoHistoryPointDto p : remote.points()) {
+                        if (p.timestamp() < coveredFrom) merged.add(p);
+                    }
+                    merged.addAll(local);
+                    return new CryptoHistoryDto(id, vsCurrency, merged);
+                })
+                .onErrorResume(e -> {
+                    if (local.isEmpty()) return Mono.error(e);
+                    log.warn("Remote history for {} failed ({}), serving local candles only", id, e.getMessage());
+                    return Mono.just(new CryptoHistoryDto(id, vsCurrency, local));
+                });
+    }
+
+    /** Началото на непрекъснатата серия бари, която стига до сега; Long.MAX_VALUE, ако няма такава. */
+    private long coveredFrom(List<Candle> bars, CandleInterval interval, long now) {
+        if (bars.isEmpty()) return Long.MAX_VALUE;
+        long allowed = interval.getMillis() + maxGapMs;
+        long next = now;
+        for (int i = bars.size() - 1; i >= 0; i--) {
+            long open = bars.get(i).openTime();
+            if (next - open > allowed) {
+                return i == bars.size() - 1 ? Long.MAX_VALUE : next;
+            }
+            next = open;
+        }
+        return next;
+    }
+
+    // последната цена на затваряне във всяка стъпка, от coveredFrom нататък
+    private static List<CryptoHistoryPointDto> toPoints(List<Candle> bars, long coveredFrom, long stepMs,
+                                                        BigDecimal rate) {
+        List<CryptoHistoryPointDto> out = new ArrayList<>();
+        long bucket = Long.MIN_VALUE;
+        double close = 0;
+        for (Candle c : bars) {
+            if (c.openTime() < coveredFrom) continue;
+            long b = c.openTime() - Math.floorMod(c.openTime(), stepMs);
+            if (b != bucket && bucket != Long.MIN_VALUE) {
+                out.add(point(bucket, close, rate));
+            }
+            bucket = b;
+            close = c.close();
+        }
+        if (bucket != Long.MIN_VALUE) {
+            out.add(point(bucket, close, rate));
+        }
+        return out;
+    }
+
+    private static CryptoHistoryPointDto point(long ts, double close, BigDecimal rate) {
+        BigDecimal price = BigDecimal.valueOf(close);
+        if (rate.compareTo(BigDecimal.ONE) != 0) {
+            price = price.multiply(rate).setScale(8, RoundingMode.HALF_UP).stripTrailingZeros();
+        }
+        return new CryptoHistoryPointDto(ts, price);
+    }
+
+    private BigDecimal rateFor(String vsCurrency) {
+        return switch (vsCurrency) {
+            case "usd", "usdt" -> BigDecimal.ONE;
+            case "bgn" -> fxService.getUsdToBgnRate();
+            default -> null;
+        };
+    }
+
+    private static Double parseDays(String days) {
+        if ("max".equals(days)) return Double.POSITIVE_INFINITY;
+        try {
+            double d = Double.parseDouble(days);
+            return d > 0 ? d : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Интервал на четене и стъпка на точките, близки до гранулярността на CoinGecko. */
+    private record Resolution(CandleInterval interval, long stepMs) {
+        static Resolution of(double days) {
+            if (days <= 1.0 / 24) return new Resolution(CandleInterval.SECOND_1, 10_000L);
+            if (days <= 1) return new Resolution(CandleInterval.MINUTE_1, 300_000L);
+            if (days <= 90) return new Resolution(CandleInterval.HOUR_1, 3_600_000L);
+            return new Resolution(CandleInterval.HOUR_1, DAY_MS);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.model.CandleInterval;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Локално OHLCV хранилище: append-only, memory-mapped файлове по символ и интервал.
+ *
+ * Всеки файл (сегмент) държи до SEGMENT_BARS бара с фиксиран размер на запис, подредени
+ * по openTime - четенето е двоично търсене и последователно обхождане без парсване.
+ * Сегментите са по време (1s - ден, 1m - 60 дни, 1h - ~10 години), така че старите
+ * секундни бари се трият цели файлове, без да се пренаписва нищо.
+ */
+@Slf4j
+@Component
+public class CandleStore {
+
+    private static final int MAGIC = 0x4F484C43; // "OHLC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int COUNT_OFFSET = 16;
+    private static final int RECORD_BYTES = 48;
+    static final int SEGMENT_BARS = 86_400;
+    private static final long SEGMENT_BYTES = HEADER_BYTES + (long) SEGMENT_BARS * RECORD_BYTES;
+
+    private static final Pattern SYMBOL_ID = Pattern.compile("[a-z0-9][a-z0-9-]{0,63}");
+
+    private final Path dir;
+    private final long secondRetentionMs;
+    private final Cache<Path, Segment> segments;
+
+    public CandleStore(@Value("${crypto.candles.dir:${java.io.tmpdir}/banking-candles}") String dir,
+                       @Value("${crypto.candles.second-retention-days:3}") int secondRetentionDays,
+                       @Value("${crypto.candles.open-segments:256}") int openSegments) {
+        this.dir = Path.of(dir);
+        this.secondRetentionMs = Duration.ofDays(secondRetentionDays).toMillis();
+        // GC-ът освобождава mapping-а на изхвърлен сегмент; при нужда той просто се отваря пак
+        this.segments = Caffeine.newBuilder()
+                .maximumSize(openSegments)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        segments.asMap().values().forEach(Segment::force);
+    }
+
+    /**
+     * Добавя затворен бар. Бар със същия openTime като последния се слива с него
+     * (например частичен бар, записан при спиране); по-стар бар се игнорира.
+     */
+    public void append(String symbolId, CandleInterval interval, Candle candle) {
+        if (!SYMBOL_ID.matcher(symbolId).matches()) return;
+        Segment segment = segment(symbolId, interval, segmentIndex(interval, candle.openTime()), true);
+        if (segment != null) {
+            segment.append(candle);
+        }
+    }
+
+    /** Барите с openTime в [fromMs, toMs], подредени по време. */
+    public List<Candle> read(String symbolId, CandleInterval interval, long fromMs, long toMs) {
+        List<Candle> out = new ArrayList<>();
+        if (fromMs > toMs || !SYMBOL_ID.matcher(symbolId).matches()) return out;
+
+        long first = segmentIndex(interval, Math.max(fromMs, 0L));
+        long last = segmentIndex(interval, toMs);
+        Path symbolDir = dir.resolve(symbolId).resolve(interval.getCode());
+        if (!Files.isDirectory(symbolDir)) return out;
+        for (long idx = first; idx <= last; idx++) {
+            Segment segment = segment(symbolId, interval, idx, false);
+            if (segment != null) {
+                segment.read(fromMs, toMs, out);
+            }
+        }
+        return out;
+    }
+
+    @Scheduled(cron = "${crypto.candles.retention-cron:0 15 3 * * *}")
+    public void purgeExpiredSeconds() {
+        if (!Files.isDirectory(dir)) return;
+        long cutoff = System.currentTimeMillis() - secondRetentionMs;
+        long segmentMs = CandleInterval.SECOND_1.getMillis() * SEGMENT_BARS;
+        try (Stream<Path> files = Files.walk(dir, 3)) {
+            files.filter(f -> f.getParent() != null
+                            && f.getParent().getFileName().toString().equals(CandleInterval.SECOND_1.getCode())
+                            && f.getFileName().toString().endsWith(".ohlcv"))
+                    .forEach(f -> {
+                        long idx = Long.parseLong(f.getFileName().toString().replace(".ohlcv", ""));
+                        if ((idx + 1) * segmentMs < cutoff) {
+                            segments.invalidate(f);
+                            try {
+                                Files.deleteIfExists(f);
+                            } catch (IOException e) {
+                                log.warn("Cannot delete candle segment {}: {}", f, e.getMessage());
+                            }
+                        }
+                    });
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Candle retention failed: {}", e.getMessage());
+        }
+    }
+
+    private static long segmentIndex(CandleInterval interval, long openTime) {
+        return Math.floorDiv(openTime, interval.getMillis() * SEGMENT_BARS);
+    }
+
+    private Segment segment(String symbolId, CandleInterval interval, long idx, boolean create) {
+        Path path = dir.resolve(symbolId).resolve(interval.getCode()).resolve(idx + ".ohlcv");
+        Segment cached = segments.getIfPresent(path);
+        if (cached != null) return cached;
+        if (!create && !Files.exists(path)) return null;
+        try {
+            return segments.get(path, p -> Segment.open(p, interval));
+        } catch (UncheckedIOException e) {
+            log.warn("Cannot open candle segment {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    public record Candle(long openTime, double open, double high, double low, double close, double volume) {
+        Candle merge(Candle later) {
+            return new Candle(openTime, open, Math.max(high, later.high), Math.min(low, later.low),
+                    later.close, volume + later.volume);
+        }
+    }
+
+    /** Един файл: header (magic, version, интервал, брой) + записи по RECORD_BYTES. */
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buf;
+        private volatile int count;
+
+        private Segment(Path path, MappedByteBuffer buf, int count) {
+            this.path = path;
+            this.buf = buf;
+            this.count = count;
+        }
+
+        static Segment open(Path path, CandleInterval interval) {
+            try {
+                Files.createDirectories(path.getParent());
+                try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    // файлът е sparse - дискът се заема едва при запис
+                    MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+                    int magic = buf.getInt(0);
+                    if (magic == 0) {
+                        buf.putInt(4, VERSION);
+                        buf.putLong(8, interval.getMillis());
+                        buf.putInt(COUNT_OFFSET, 0);
+                        buf.putInt(0, MAGIC);
+                        return new Segment(path, buf, 0);
+                    }
+                    int count = buf.getInt(COUNT_OFFSET);
+                    if (magic != MAGIC || buf.getLong(8) != interval.getMillis()
+                            || count < 0 || count > SEGMENT_BARS) {
+                        throw new IOException("not a " + interval.getCode() + " candle segment");
+                    }
+                    return new Segment(path, buf, count);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized void append(Candle c) {
+            int n = count;
+            if (n > 0) {
+                long lastOpen = openTimeAt(n - 1);
+                if (c.openTime() < lastOpen) return;
+                if (c.openTime() == lastOpen) {
+                    write(n - 1, at(n - 1).merge(c));
+                    return;
+                }
+            }
+            if (n >= SEGMENT_BARS) {
+                log.warn("Candle segment {} is full", path);
+                return;
+            }
+            write(n, c);
+            // броят се записва след самия запис, за да не се чете недописан бар
+            buf.putInt(COUNT_OFFSET, n + 1);
+            count = n + 1;
+        }
+
+        void read(long fromMs, long toMs, List<Candle> out) {
+            int n = count;
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (openTimeAt(mid) < fromMs) lo = mid + 1; else hi = mid;
+            }
+            for (int i = lo; i < n; i++) {
+                if (openTimeAt(i) > toMs) break;
+                out.add(at(i));
+            }
+        }
+
+        void force() {
+            buf.force();
+        }
+
+        private long openTimeAt(int i) {
+            return buf.getLong(HEADER_BYTES + i * RECORD_BYTES);
+        }
+
+        private Candle at(int i) {
+            int off = HEADER_BYTES + i * RECORD_BYTES;
+            return new Candle(buf.getLong(off), buf.getDouble(off + 8), buf.getDouble(off + 16),
+                    buf.getDouble(off + 24), buf.getDouble(off + 32), buf.getDouble(off + 40));
+        }
+
+        private void write(int i, Candle c) {
+            int off = HEADER_BYTES + i * RECORD_BYTES;
+            buf.putLong(off, c.openTime());
+            buf.putDouble(off + 8, c.open());
+            buf.putDouble(off + 16, c.high());
+            buf.putDouble(off + 24, c.low());
+            buf.putDouble(off + 32, c.close());
+            buf.putDouble(off + 40, c.volume());
+        }
+    }
+}
@@ -1,40 +1,94 @@
 package com.example.banking_project.cryptocurrency.service;
 
 import com.github.benmanes.caffeine.cache.Cache;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Instant;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * USD цени по символ с кеш, който се пълни от WebSocket-а (updatePrice) и при нужда от REST.
+ *
+ * - single-flight: паралелни заявки за един символ чакат една и съща REST заявка;
+ * - refresh-ahead: малко преди изтичане на TTL цената се опреснява асинхронно;
+ * - stale-while-revalidate: до max-stale-ms се връща старата цена, докато тече опресняване.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class CryptoPriceService {
 
-    private static final long TTL_MS = 30_000L;
-
     private final Cache<String, PriceEntry> cryptoPriceCache;
     private final SymbolPriceImpl symbolPriceClient;
 
+    private final long ttlMs;
+    private final long refreshAheadMs;
+    private final long maxStaleMs;
+    private final long fetchTimeoutMs;
+
+    private final Map<String, CompletableFuture<BigDecimal>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService refreshExecutor;
+
+    public CryptoPriceService(Cache<String, PriceEntry> cryptoPriceCache,
+                              SymbolPriceImpl symbolPriceClient,
+                              @Value("${crypto.price.ttl-ms:30000}") long ttlMs,
+                              @Value("${crypto.price.refresh-ahead-ms:5000}") long refreshAheadMs,
+                              @Value("${crypto.price.max-stale-ms:120000}") long maxStaleMs,
+                              @Value("${crypto.price.fetch-timeout-ms:10000}") long fetchTimeoutMs,
+                              @Value("${crypto.price.refresh-threads:4}") int refreshThreads) {
+        this.cryptoPriceCache = cryptoPriceCache;
+        this.symbolPriceClient = symbolPriceClient;
+        this.ttlMs = ttlMs;
+        this.refreshAheadMs = refreshAheadMs;
+        this.maxStaleMs = maxStaleMs;
+        this.fetchTimeoutMs = fetchTimeoutMs;
+        AtomicInteger n = new AtomicInteger();
+        this.refreshExecutor = Executors.newFixedThreadPool(refreshThreads, r -> {
+            Thread t = new Thread(r, "price-refresh-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
     public BigDecimal getLiveUsdPrice(String symbol) {
         String sym = symbol.toUpperCase(Locale.ROOT);
 
         PriceEntry hit = cryptoPriceCache.getIfPresent(sym);
-        if (hit != null && hit.isFresh(TTL_MS)) {
-            return hit.usd();
+        if (hit != null) {
+            long age = hit.ageMs();
+            if (age < ttlMs) {
+                if (age >= ttlMs - refreshAheadMs) {
+                    fetchShared(sym); // refresh-ahead, не чакаме
+                }
+                return hit.usd();
+            }
+            if (age < maxStaleMs) {
+                fetchShared(sym); // stale-while-revalidate
+                return hit.usd();
+            }
         }
 
-        Optional<BigDecimal> fetched = symbolPriceClient.getUsdPrice(sym);
-        BigDecimal price = fetched.orElseThrow(() ->
-                new IllegalStateException("No live price for: " + sym));
-
-        updatePrice(sym, price, "REST");
-        return price;
+        return await(sym, fetchShared(sym));
     }
 
     public void updatePrice(String symbol, BigDecimal priceUsd, String source) {
@@ -47,7 +101,69 @@ public class CryptoPriceService {
         log.debug("[PRICE] {} = {} USD (src={})", symbol.toUpperCase(Locale.ROOT), scaled, source);
     }
 
+    // Асинхронно зареждане на цена, без да блокира извикващия; грешката само се логва
+    public void prefetch(String symbol) {
+        String sym = symbol.toUpperCase(Locale.ROOT);
+        fetchShared(sym).whenComplete((price, e) -> {
+            if (e != null) log.debug("Prefetch failed for {}: {}", sym, e.getMessage());
+        });
+    }
+
     public Optional<PriceEntry> peek(String symbol) {
         return Optional.ofNullable(cryptoPriceCache.getIfPresent(symbol.toUpperCase(Locale.ROOT)));
     }
+
+    // Една REST заявка на символ, независимо колко нишки я искат едновременно
+    private CompletableFuture<BigDecimal> fetchShared(String sym) {
+        CompletableFuture<BigDecimal> existing = inFlight.get(sym);
+        if (existing != null) return existing;
+
+        CompletableFuture<BigDecimal> mine = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(sym, mine);
+        if (existing != null) return existing;
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    mine.complete(fetchAndStore(sym));
+                } catch (Throwable t) {
+                    mine.completeExceptionally(t);
+                } finally {
+                    inFlight.remove(sym, mine);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(sym, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine;
+    }
+
+    private BigDecimal fetchAndStore(String sym) {
+        Instant started = Instant.now();
+        BigDecimal price = symbolPriceClient.getUsdPrice(sym)
+                .orElseThrow(() -> new IllegalStateException("No live price for: " + sym));
+
+        // ако междувременно е дошла по-нова цена от WS, не я презаписваме с REST
+        PriceEntry current = cryptoPriceCache.getIfPresent(sym);
+        if (current != null && current.ts() != null && current.ts().isAfter(started)) {
+            return current.usd();
+        }
+        updatePrice(sym, price, "REST");
+        return price;
+    }
+
+    private BigDecimal await(String sym, CompletableFuture<BigDecimal> future) {
+        try {
+            return future.get(fetchTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("No live price for: " + sym, e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("No live price for: " + sym + " (timeout)");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("No live price for: " + sym, e);
+        }
+    }
 }
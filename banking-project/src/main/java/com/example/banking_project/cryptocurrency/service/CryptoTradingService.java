@@ -2,15 +2,9 @@ package com.example.banking_project.cryptocurrency.service;
 
 import com.example.banking_project.account.model.Account;
 import com.example.banking_project.account.service.AccountService;
-import com.example.banking_project.cryptocurrency.model.CryptoHolding;
 import com.example.banking_project.cryptocurrency.model.CryptoOrder;
-import com.example.banking_project.cryptocurrency.model.OrderSide;
-import com.example.banking_project.cryptocurrency.repository.CryptoHoldingRepository;
+import com.example.banking_project.cryptocurrency.model.OrderStatus;
 import com.example.banking_project.cryptocurrency.repository.CryptoOrderRepository;
-import com.example.banking_project.transaction.model.TransactionType;
-import com.example.banking_project.transaction.service.TransactionService;
-import com.example.banking_project.user.service.UserService;
-import com.example.banking_project.web.dto.TransactionRequest;
 import com.example.banking_project.web.dto.crypto.HoldingView;
 import com.example.banking_project.web.dto.crypto.PlaceOrderRequest;
 import com.example.banking_project.web.dto.crypto.PlaceOrderResponse;
@@ -24,9 +18,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -34,15 +26,12 @@ import java.util.stream.Collectors;
 public class CryptoTradingService {
 
     private final AccountService accountsService;
-    private final TransactionService transactionService;
     private final CryptoPriceService priceService;
-    private final CryptoHoldingRepository holdingRepository;
     private final CryptoOrderRepository orderRepository;
-    private final CryptoService cryptoService;
     private final FxService fxService;
-    private final UserService userService;
+    private final PortfolioValuationService portfolioValuationService;
+    private final OrderExecutionPipeline orderPipeline;
 
-    @Transactional
     public PlaceOrderResponse placeOrder(PlaceOrderRequest req, UUID userId) {
         Account account = accountsService.getAccountByIban(req.iban());
         String symbol = req.symbol();
@@ -50,91 +39,26 @@ public class CryptoTradingService {
         BigDecimal unitUsd = Optional.ofNullable(priceService.getLiveUsdPrice(symbol))
                 .orElseThrow(() -> new IllegalStateException("Няма live USD цена за " + symbol));
 
-        BigDecimal usdToBgn = fxService.getUsdToBgnRate();
-
-        BigDecimal unitBgn = unitUsd.multiply(usdToBgn).setScale(6, RoundingMode.HALF_UP);
-
-        BigDecimal totalCostBgn = unitBgn.multiply(req.quantity()).setScale(2, RoundingMode.HALF_UP);
-
-        if (req.side() == OrderSide.BUY) {
-            BigDecimal balance = account.getBalance();
-
-            if (balance == null || balance.compareTo(totalCostBgn) < 0) {
-                throw new IllegalArgumentException("Недостатъчна наличност по избраната сметка.");
-            }
-
-            String desc = "Crypto BUY " + symbol + " x " + req.quantity() + " @ " + unitUsd + " USD";
-            transactionService.createTransaction(TransactionRequest.builder()
-                    .account(account)
-                    .transactionType(TransactionType.WITHDRAWAL)
-                    .currency(Currency.getInstance("BGN"))
-                    .iban(account.getIban())
-                    .amount(totalCostBgn)
-                    .description(desc)
-                    .userId(req.userId())
-                    .build());
-
-            CryptoHolding holding = holdingRepository.findByAccount_IdAndAsset(account.getId(), symbol)
-                    .orElseGet(() -> {
-                        CryptoHolding h = new CryptoHolding();
-                        h.setAccount(account);
-                        h.setIban(account.getIban());
-                        h.setAsset(symbol);
-                        h.setQuantity(BigDecimal.ZERO);
-                        h.setAvgPrice(BigDecimal.ZERO);
-                        h.setFiatCurrency(account.getCurrencyCode() != null ? account.getCurrencyCode() : "BGN");
-                        h.setUpdatedAt(OffsetDateTime.now());
-                        return h;
-                    });
-
-            BigDecimal oldQty = holding.getQuantity();
-            BigDecimal oldAvg = holding.getAvgPrice();
-            BigDecimal newQty = oldQty.add(req.quantity());
-
-            BigDecimal newAvg = (oldQty.multiply(oldAvg).add(req.quantity().multiply(unitBgn)))
-                    .divide(newQty, 8, RoundingMode.HALF_UP);
-
-            holding.setQuantity(newQty);
-            holding.setAvgPrice(newAvg);
-            holding.setFiatCurrency(account.getCurrencyCode() != null ? account.getCurrencyCode() : "BGN");
-            holding.setIban(account.getIban());
-            holding.setUpdatedAt(OffsetDateTime.now());
-            holding.setUser(userService.findUserById(userId));
-            holdingRepository.save(holding);
-
-        } else if (req.side() == OrderSide.SELL) {
-
-            CryptoHolding holding = holdingRepository.findByAccount_IdAndAsset(account.getId(), symbol)
-                    .orElseThrow(() -> new IllegalArgumentException(
-                            "Няма наличност от " + symbol + " за продажба."));
-
-            BigDecimal totalProceedsBgn = unitBgn.multiply(req.quantity()).setScale(2, RoundingMode.HALF_UP);
-
-            String desc = "Crypto SELL " + symbol + " x " + req.quantity() + " @ " + unitUsd + " USD";
-            transactionService.createTransaction(TransactionRequest.builder()
-                    .account(account)
-                    .transactionType(TransactionType.DEPOSIT)
-                    .currency(Currency.getInstance("BGN"))
-                    .iban(account.getIban())
-                    .amount(totalProceedsBgn)
-                    .description(desc)
-                    .userId(userId)
-                    .build());
-
-            BigDecimal oldQty = holding.getQuantity();
-            BigDecimal newQty = oldQty.subtract(req.quantity());
-            holding.setQuantity(newQty);
-
-            if (newQty.signum() == 0) {
-                holding.setAvgPrice(BigDecimal.ZERO);
-            }
-            holding.setIban(account.getIban());
-            holding.setFiatCurrency(account.getCurrencyCode() != null ? account.getCurrencyCode() : "BGN");
-            holding.setUpdatedAt(OffsetDateTime.now());
-            holding.setUser(userService.findUserById(userId));
-            holdingRepository.save(holding);
-
-            totalCostBgn = totalProceedsBgn;
+        // сметката се дебитира/кредитира в своята валута; себестойността на holding-а остава в BGN
+        String fiatCurrency = account.getCurrencyCode() != null ? account.getCurrencyCode() : "BGN";
+        BigDecimal unitFiat = fxService.convert(unitUsd, "USD", fiatCurrency, 6);
+        BigDecimal unitBgn = fxService.convert(unitUsd, "USD", "BGN", 6);
+
+        // балансът, holding-ът и crypto_order се променят в lane-а на сметката
+        OrderExecutionPipeline.OrderResult result = orderPipeline.execute(new OrderExecutionPipeline.OrderCommand(
+                userId,
+                account.getId(),
+                account.getIban(),
+                fiatCurrency,
+                symbol,
+                req.side(),
+                req.quantity(),
+                unitUsd,
+                unitFiat,
+                unitBgn));
+
+        if (result.status() == OrderStatus.REJECTED) {
+            throw new IllegalArgumentException(result.reason());
         }
 
         return new PlaceOrderResponse(
@@ -144,47 +68,15 @@ public class CryptoTradingService {
                 req.quantity(),
                 unitUsd.setScale(6, RoundingMode.HALF_UP),
                 unitBgn,
-                totalCostBgn,
-                null
+                unitBgn.multiply(req.quantity()).setScale(2, RoundingMode.HALF_UP),
+                result.transactionId() != null ? result.transactionId().toString() : null,
+                fiatCurrency,
+                result.amount()
         );
     }
 
     public List<HoldingView> getPortfolioByUser(UUID userId, String vsCurrency) {
-        var holdings = holdingRepository.findAllByUserId(userId);
-
-        if (holdings.isEmpty()) {
-            log.info("No crypto holdings for user {}", userId);
-            return List.of();
-        }
-
-        String idsCsv = holdings.stream()
-                .map(h -> h.getAsset().toLowerCase(Locale.ROOT))
-                .distinct()
-                .collect(Collectors.joining(","));
-
-        Map<String, BigDecimal> market = new HashMap<>();
-        cryptoService.getSimplePrices(idsCsv, vsCurrency.toLowerCase(Locale.ROOT))
-                .blockOptional().orElse(List.of())
-                .forEach(p -> market.put(p.id(), p.prices().get(vsCurrency.toLowerCase(Locale.ROOT))));
-
-        return holdings.stream().map(h -> {
-            String symbol = h.getAsset().toLowerCase(Locale.ROOT);
-            BigDecimal mp = market.getOrDefault(symbol, BigDecimal.ZERO).setScale(8, RoundingMode.HALF_UP);
-            BigDecimal qty = h.getQuantity().setScale(8, RoundingMode.HALF_UP);
-            BigDecimal mv = mp.multiply(qty).setScale(2, RoundingMode.HALF_UP);
-            BigDecimal pnl = mp.subtract(h.getAvgPrice()).multiply(qty).setScale(2, RoundingMode.HALF_UP);
-
-            return new HoldingView(
-                    h.getAccount().getId(),
-                    h.getAccount().getIban(),
-                    h.getAsset(),
-                    qty,
-                    h.getAvgPrice(),
-                    mp,
-                    mv,
-                    pnl
-            );
-        }).toList();
+        return portfolioValuationService.getPortfolio(userId, vsCurrency);
     }
 
     @Transactional(readOnly = true)
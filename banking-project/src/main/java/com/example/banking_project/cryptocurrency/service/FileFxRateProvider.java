@@ -0,0 +1,52 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Курсове от properties файл (CODE=BGN за една единица), по подразбиране classpath:fx-rates.properties.
+ * Старото fx.usd_bgn_rate, ако е зададено, още има предимство за USD.
+ */
+@Component
+public class FileFxRateProvider implements FxRateProvider {
+
+    private final ResourceLoader resourceLoader;
+    private final String location;
+    private final String legacyUsdRate;
+
+    public FileFxRateProvider(ResourceLoader resourceLoader,
+                              @Value("${fx.rates.location:classpath:fx-rates.properties}") String location,
+                              @Value("${fx.usd_bgn_rate:}") String legacyUsdRate) {
+        this.resourceLoader = resourceLoader;
+        this.location = location;
+        this.legacyUsdRate = legacyUsdRate;
+    }
+
+    @Override
+    public Map<String, BigDecimal> loadBgnRates() {
+        Resource resource = resourceLoader.getResource(location);
+        Properties props = new Properties();
+        try (InputStream in = resource.getInputStream()) {
+            props.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read FX rates from " + location, e);
+        }
+
+        Map<String, BigDecimal> rates = new HashMap<>();
+        props.forEach((k, v) -> rates.put(k.toString().trim(), new BigDecimal(v.toString().trim())));
+        if (!legacyUsdRate.isBlank()) {
+            rates.put("USD", new BigDecimal(legacyUsdRate.trim()));
+        }
+        return rates;
+    }
+}
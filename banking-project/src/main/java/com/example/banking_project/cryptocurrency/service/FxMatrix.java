@@ -0,0 +1,118 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Неизменима N×N матрица с кръстосани курсове. Строи се наведнъж при refresh и се
+ * подменя атомарно (FxService държи volatile референция), така че четенето е без
+ * заключване: ISO кодът се превръща в индекс чрез таблица по трите букви, а курсът
+ * е елемент на масив.
+ */
+public final class FxMatrix {
+
+    static final FxMatrix EMPTY = new FxMatrix(new String[0], new BigDecimal[0][0], new int[0], null);
+
+    private static final int RATE_SCALE = 12;
+
+    private final String[] codes;
+    private final BigDecimal[][] rates;
+    private final int[] fractionDigits;
+    // (c0 * 26 + c1) * 26 + c2 -> индекс + 1; 0 значи непозната валута
+    private final short[] slotByCode = new short[26 * 26 * 26];
+    private final Instant asOf;
+
+    private FxMatrix(String[] codes, BigDecimal[][] rates, int[] fractionDigits, Instant asOf) {
+        this.codes = codes;
+        this.rates = rates;
+        this.fractionDigits = fractionDigits;
+        this.asOf = asOf;
+        for (int i = 0; i < codes.length; i++) {
+            slotByCode[key(codes[i])] = (short) (i + 1);
+        }
+    }
+
+    /** bgnPerUnit: колко BGN струва една единица от всяка валута (BGN се добавя, ако липсва). */
+    static FxMatrix build(Map<String, BigDecimal> bgnPerUnit, Instant asOf) {
+        Map<String, BigDecimal> sorted = new TreeMap<>();
+        bgnPerUnit.forEach((code, rate) -> {
+            String c = code.trim().toUpperCase();
+            if (key(c) < 0) {
+                throw new IllegalArgumentException("Invalid currency code: " + code);
+            }
+            if (rate == null || rate.signum() <= 0) {
+                throw new IllegalArgumentException("Invalid rate for " + c + ": " + rate);
+            }
+            sorted.put(c, rate);
+        });
+        sorted.putIfAbsent("BGN", BigDecimal.ONE);
+
+        List<String> list = new ArrayList<>(sorted.keySet());
+        int n = list.size();
+        String[] codes = list.toArray(new String[0]);
+        BigDecimal[][] rates = new BigDecimal[n][n];
+        int[] digits = new int[n];
+        for (int i = 0; i < n; i++) {
+            BigDecimal from = sorted.get(codes[i]);
+            for (int j = 0; j < n; j++) {
+                rates[i][j] = i == j
+                        ? BigDecimal.ONE
+                        : from.divide(sorted.get(codes[j]), RATE_SCALE, RoundingMode.HALF_EVEN);
+            }
+            digits[i] = fractionDigits(codes[i]);
+        }
+        return new FxMatrix(codes, rates, digits, asOf);
+    }
+
+    /** Индекс на валутата или -1. */
+    public int indexOf(String code) {
+        int k = key(code);
+        return k < 0 ? -1 : slotByCode[k] - 1;
+    }
+
+    public BigDecimal rate(int from, int to) {
+        return rates[from][to];
+    }
+
+    public int fractionDigits(int index) {
+        return fractionDigits[index];
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    public String codeAt(int index) {
+        return codes[index];
+    }
+
+    public Instant getAsOf() {
+        return asOf;
+    }
+
+    private static int key(String code) {
+        if (code == null || code.length() != 3) return -1;
+        int k = 0;
+        for (int i = 0; i < 3; i++) {
+            int c = code.charAt(i) & ~0x20; // главна буква
+            if (c < 'A' || c > 'Z') return -1;
+            k = k * 26 + (c - 'A');
+        }
+        return k;
+    }
+
+    private static int fractionDigits(String code) {
+        try {
+            int d = Currency.getInstance(code).getDefaultFractionDigits();
+            return d < 0 ? 2 : d;
+        } catch (IllegalArgumentException e) {
+            return 2;
+        }
+    }
+}
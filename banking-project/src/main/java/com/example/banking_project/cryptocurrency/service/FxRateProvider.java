@@ -0,0 +1,9 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/** Източник на курсовете за FxService: колко BGN струва една единица от всяка валута. */
+public interface FxRateProvider {
+    Map<String, BigDecimal> loadBgnRates();
+}
@@ -1,23 +1,93 @@
 package com.example.banking_project.cryptocurrency.service;
 
-import org.springframework.beans.factory.annotation.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
 
+/**
+ * Валутни курсове и конвертиране.
+ *
+ * Курсовете идват от FxRateProvider и при всяко опресняване се строи нова FxMatrix, която
+ * се публикува с една volatile запис. Конвертирането чете текущата матрица без заключване;
+ * ако опресняването се провали, остава предишната.
+ */
+@Slf4j
 @Service
 public class FxService  {
 
-    @Value("${fx.usd_bgn_rate:1.80}")
-    private BigDecimal usdToBgn;
+    private final FxRateProvider rateProvider;
+
+    private volatile FxMatrix matrix = FxMatrix.EMPTY;
+
+    public FxService(FxRateProvider rateProvider) {
+        this.rateProvider = rateProvider;
+        // зарежда се веднага, за да има курсове още при @PostConstruct на останалите бийнове
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${fx.refresh-ms:3600000}", initialDelayString = "${fx.refresh-ms:3600000}")
+    public void refresh() {
+        try {
+            FxMatrix fresh = FxMatrix.build(rateProvider.loadBgnRates(), Instant.now());
+            matrix = fresh;
+            log.info("Loaded FX rates for {} currencies", fresh.size());
+        } catch (RuntimeException e) {
+            log.warn("FX rate refresh failed, keeping {} previous rates: {}", matrix.size(), e.getMessage());
+        }
+    }
+
+    /** Сумата в target валута, закръглена до дробните знаци на валутата. Еднаква валута - без промяна. */
+    public BigDecimal convert(BigDecimal amount, String from, String to) {
+        if (amount == null || sameCurrency(from, to)) return amount;
+        FxMatrix m = matrix;
+        int j = index(m, to);
+        return amount.multiply(m.rate(index(m, from), j)).setScale(m.fractionDigits(j), RoundingMode.HALF_UP);
+    }
+
+    /** Конвертиране на единична цена с по-голяма точност (scale знака). */
+    public BigDecimal convert(BigDecimal amount, String from, String to, int scale) {
+        if (amount == null) return null;
+        if (sameCurrency(from, to)) return amount.setScale(scale, RoundingMode.HALF_UP);
+        FxMatrix m = matrix;
+        return amount.multiply(m.rate(index(m, from), index(m, to))).setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    public BigDecimal rate(String from, String to) {
+        if (sameCurrency(from, to)) return BigDecimal.ONE;
+        FxMatrix m = matrix;
+        return m.rate(index(m, from), index(m, to));
+    }
+
+    public boolean isSupported(String code) {
+        return matrix.indexOf(code) >= 0;
+    }
+
+    public FxMatrix snapshot() {
+        return matrix;
+    }
 
     public BigDecimal usdToBgn(BigDecimal usd) {
         if (usd == null) return BigDecimal.ZERO;
-        return usd.multiply(usdToBgn).setScale(2, RoundingMode.HALF_UP);
+        return convert(usd, "USD", "BGN", 2);
     }
 
     public BigDecimal getUsdToBgnRate() {
-        return usdToBgn;
+        return rate("USD", "BGN");
+    }
+
+    private static boolean sameCurrency(String from, String to) {
+        return from != null && from.equalsIgnoreCase(to);
+    }
+
+    private static int index(FxMatrix m, String code) {
+        int i = m.indexOf(code);
+        if (i < 0) {
+            throw new IllegalArgumentException("Unsupported currency: " + code);
+        }
+        return i;
     }
 }
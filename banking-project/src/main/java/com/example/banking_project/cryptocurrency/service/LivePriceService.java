@@ -7,21 +7,20 @@ import com.example.banking_project.web.dto.crypto.Ticker;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.PostConstruct;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class LivePriceService {
 
@@ -29,14 +28,44 @@ public class LivePriceService {
     private final ObjectMapper mapper;
     private final CryptoSymbolRepository symbolRepo;
     private final CryptoPriceService priceService;
+    private final PriceBus priceBus;
+    private final CandleAggregator candles;
 
-    private final Sinks.Many<Ticker> sink = Sinks.many().replay().latest();
+    // непроменена цена пак се публикува на толкова време, за да не остарява кешът
+    private static final long UNCHANGED_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(5);
 
     private volatile List<CryptoSymbol> symbols = List.of();
     private volatile long symbolsHash = 0L;
+    private volatile TradeSymbolIndex symbolIndex = TradeSymbolIndex.EMPTY;
+
+    private final TradeMessageParser parser;
+    private final AtomicLong processed = new AtomicLong();
+    private final LatencyWindow endToEndLatencyMs = new LatencyWindow();
+    private final LatencyWindow queueLatencyMs = new LatencyWindow();
+    private long lastLoggedDropped;
+
+    @Value("${crypto.live.fast-ingest:true}")
+    private boolean fastIngest;
+
+    public LivePriceService(BinanceWebSocketClient ws,
+                            ObjectMapper mapper,
+                            CryptoSymbolRepository symbolRepo,
+                            CryptoPriceService priceService,
+                            PriceBus priceBus,
+                            CandleAggregator candles) {
+        this.ws = ws;
+        this.mapper = mapper;
+        this.symbolRepo = symbolRepo;
+        this.priceService = priceService;
+        this.priceBus = priceBus;
+        this.candles = candles;
+        this.parser = new TradeMessageParser(mapper.getFactory());
+    }
 
     @PostConstruct
     public void init() {
+        // един handler за целия живот на приложението, reconnect-ът само подменя връзката
+        ws.setHandler(this::onMessage);
         reloadSymbolsIfChanged();
         connect();
     }
@@ -51,10 +80,6 @@ public class LivePriceService {
         }
     }
 
-    public Flux<Ticker> streamPrices() {
-        return sink.asFlux();
-    }
-
 
     private void connect() {
         if (symbols.isEmpty()) return;
@@ -64,55 +89,127 @@ public class LivePriceService {
                 .toList();
 
         ws.connectForStreams(streams);
+    }
 
-        ws.getPublisher().subscribe(new Flow.Subscriber<String>() {
-            private Flow.Subscription sub;
-
-            @Override public void onSubscribe(Flow.Subscription subscription) {
-                this.sub = subscription; subscription.request(1);
+    // вика се само от ingest нишката на клиента
+    private void onMessage(String json, long receivedNanos) {
+        try {
+            long eventTime = fastIngest ? handleTradeFast(json) : handleTradeTree(json);
+            if (eventTime >= 0) {
+                recordLatency(eventTime, receivedNanos);
             }
+        } catch (Exception ex) {
+            log.warn("Failed to parse WS message: {}", ex.getMessage());
+            log.debug("Payload: {}", json, ex);
+        }
+    }
 
-            @Override public void onNext(String json) {
-                try {
-                    JsonNode root = mapper.readTree(json);
-                    JsonNode data = root.get("data");
-                    if (data != null && data.isObject()) {
-                        handleTrade(data);
-                    } else {
-                        handleTrade(root);
-                    }
-                } catch (Exception ex) {
-                    log.warn("Failed to parse WS message: {}", ex.getMessage());
-                    log.debug("Payload: {}", json, ex);
-                } finally {
-                    sub.request(1);
-                }
-            }
+    // hot path: streaming парсер + индекс по двойка, без JsonNode и без String за символа
+    private long handleTradeFast(String json) throws IOException {
+        if (!parser.parse(json)) return -1;
+        TradeSymbolIndex index = symbolIndex;
+        int slot = index.slotOf(parser.pair, 0, parser.pairLength);
+        if (slot < 0) return -1;
+        CryptoSymbol cs = index.symbolAt(slot);
+        // всяка сделка влиза в свещите (обем), дори цената да не се е променила
+        candles.onTrade(cs.getCoingeckoId(),
+                TradeMessageParser.toDouble(parser.price, parser.priceLength),
+                TradeMessageParser.toDouble(parser.quantity, parser.quantityLength),
+                parser.tradeTime > 0 ? parser.tradeTime : parser.eventTime);
+        if (!index.shouldPublish(slot, parser.price, 0, parser.priceLength,
+                System.nanoTime(), UNCHANGED_REFRESH_NANOS)) {
+            return -1;
+        }
+        BigDecimal price = new BigDecimal(parser.price, 0, parser.priceLength);
+        priceBus.publish(new Ticker(cs.getCoingeckoId(), price));
+        priceService.updatePrice(cs.getSymbol(), price, "WS");
+        return parser.eventTime;
+    }
 
-            private void handleTrade(JsonNode n) {
-                if (!"trade".equals(opt(n,"e"))) return;
-                String pair = opt(n,"s");
-                String priceStr = opt(n,"p");
-                if (pair == null || priceStr == null) return;
-
-                symbols.stream()
-                        .filter(cs -> cs.getBinancePair().equalsIgnoreCase(pair))
-                        .findFirst()
-                        .ifPresent(cs -> {
-                            BigDecimal price = new BigDecimal(priceStr);
-                            sink.tryEmitNext(new Ticker(cs.getCoingeckoId(), price));
-                            priceService.updatePrice(cs.getSymbol(), price, "WS");
-                        });
-            }
+    private long handleTradeTree(String json) throws IOException {
+        JsonNode root = mapper.readTree(json);
+        JsonNode data = root.get("data");
+        JsonNode n = data != null && data.isObject() ? data : root;
+
+        if (!"trade".equals(opt(n,"e"))) return -1;
+        String pair = opt(n,"s");
+        String priceStr = opt(n,"p");
+        if (pair == null || priceStr == null) return -1;
+
+        CryptoSymbol cs = symbols.stream()
+                .filter(s -> s.getBinancePair().equalsIgnoreCase(pair))
+                .findFirst()
+                .orElse(null);
+        if (cs == null) return -1;
+        BigDecimal price = new BigDecimal(priceStr);
+        long tradeTime = n.path("T").asLong(n.path("E").asLong(0L));
+        candles.onTrade(cs.getCoingeckoId(), price.doubleValue(), n.path("q").asDouble(0d), tradeTime);
+        priceBus.publish(new Ticker(cs.getCoingeckoId(), price));
+        priceService.updatePrice(cs.getSymbol(), price, "WS");
+        return n.path("E").asLong(0L);
+    }
 
-            @Override public void onError(Throwable t) {
-                log.error("WS subscriber error: {}", t.getMessage(), t);
-            }
+    // ===== Метрики =====
 
-            @Override public void onComplete() {
-                log.warn("WS subscriber completed.");
-            }
-        });
+    private void recordLatency(long eventTime, long receivedNanos) {
+        processed.incrementAndGet();
+        long queueMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedNanos);
+        queueLatencyMs.record(queueMs);
+        if (eventTime > 0) {
+            // часовниците на борсата и на сървъра не са синхронизирани - отрицателно се брои за 0
+            endToEndLatencyMs.record(Math.max(0L, System.currentTimeMillis() - eventTime));
+        }
+    }
+
+    public IngestStats ingestStats() {
+        return new IngestStats(ws.queueDepth(), ws.capacity(), ws.receivedCount(), ws.droppedCount(),
+                processed.get(), endToEndLatencyMs.snapshot(), queueLatencyMs.snapshot());
+    }
+
+    @Scheduled(fixedDelayString = "${crypto.live.ingest.stats-ms:60000}")
+    public void logIngestStats() {
+        IngestStats stats = ingestStats();
+        long droppedNow = stats.dropped() - lastLoggedDropped;
+        lastLoggedDropped = stats.dropped();
+        LatencyStats e2e = endToEndLatencyMs.reset();
+        LatencyStats queue = queueLatencyMs.reset();
+        if (droppedNow > 0) {
+            log.warn("WS ingest dropped {} messages (depth {}/{}), e2e avg {} ms max {} ms, queue max {} ms",
+                    droppedNow, stats.queueDepth(), stats.capacity(), e2e.avgMs(), e2e.maxMs(), queue.maxMs());
+        } else if (e2e.count() > 0) {
+            log.debug("WS ingest: {} updates, depth {}/{}, e2e avg {} ms max {} ms, queue max {} ms",
+                    e2e.count(), stats.queueDepth(), stats.capacity(), e2e.avgMs(), e2e.maxMs(), queue.maxMs());
+        }
+    }
+
+    public record IngestStats(int queueDepth, int capacity, long received, long dropped, long processed,
+                              LatencyStats endToEndLatency, LatencyStats queueLatency) {}
+
+    /** Латентност за текущия прозорец (между две логвания на статистиката). */
+    public record LatencyStats(long count, long avgMs, long maxMs) {}
+
+    private static final class LatencyWindow {
+        private long count;
+        private long sumMs;
+        private long maxMs;
+
+        synchronized void record(long ms) {
+            count++;
+            sumMs += ms;
+            if (ms > maxMs) maxMs = ms;
+        }
+
+        synchronized LatencyStats snapshot() {
+            return new LatencyStats(count, count == 0 ? 0 : sumMs / count, maxMs);
+        }
+
+        synchronized LatencyStats reset() {
+            LatencyStats s = snapshot();
+            count = 0;
+            sumMs = 0;
+            maxMs = 0;
+            return s;
+        }
     }
 
     private boolean reloadSymbolsIfChanged() {
@@ -126,6 +223,7 @@ public class LivePriceService {
         if (hash != symbolsHash) {
             this.symbols = fresh;
             this.symbolsHash = hash;
+            this.symbolIndex = TradeSymbolIndex.build(fresh);
             log.info("Loaded {} symbols: {}", fresh.size(),
                     fresh.stream().map(CryptoSymbol::getSymbol).collect(Collectors.joining(",")));
             return true;
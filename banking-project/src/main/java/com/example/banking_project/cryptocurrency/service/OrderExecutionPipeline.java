@@ -0,0 +1,327 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.account.repository.AccountRepository;
+import com.example.banking_project.cryptocurrency.model.CryptoHolding;
+import com.example.banking_project.cryptocurrency.model.CryptoOrder;
+import com.example.banking_project.cryptocurrency.model.OrderSide;
+import com.example.banking_project.cryptocurrency.model.OrderStatus;
+import com.example.banking_project.cryptocurrency.repository.CryptoHoldingRepository;
+import com.example.banking_project.cryptocurrency.repository.CryptoOrderRepository;
+import com.example.banking_project.exception.BusinessRuleViolationException;
+import com.example.banking_project.transaction.model.Transaction;
+import com.example.banking_project.transaction.model.TransactionStatus;
+import com.example.banking_project.transaction.model.TransactionType;
+import com.example.banking_project.transaction.service.LedgerWriter;
+import com.example.banking_project.user.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Изпълнение на крипто поръчки, сериализирано по сметка.
+ *
+ * Сметките се разпределят по IBAN в lanes (по една нишка и опашка на lane), така че
+ * поръчките по една сметка се изпълняват една след друга - без състезание за баланса
+ * и за CryptoHolding.version - а различните сметки вървят паралелно на различни ядра.
+ * Всеки lane взима наведнъж всичко натрупано в опашката (до batchSize) и го изпълнява
+ * в една транзакция. Отказаните поръчки (недостатъчна наличност) също се записват в
+ * crypto_order със статус REJECTED и не връщат назад останалите от партидата.
+ */
+@Slf4j
+@Component
+public class OrderExecutionPipeline {
+
+    private final AccountRepository accountRepository;
+    private final UserRepository userRepository;
+    private final CryptoHoldingRepository holdingRepository;
+    private final CryptoOrderRepository orderRepository;
+    private final LedgerWriter ledgerWriter;
+    private final PortfolioValuationService portfolioValuationService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+    private final long timeoutMs;
+    private final Lane[] lanes;
+    private volatile boolean running = true;
+
+    public OrderExecutionPipeline(AccountRepository accountRepository,
+                                  UserRepository userRepository,
+                                  CryptoHoldingRepository holdingRepository,
+                                  CryptoOrderRepository orderRepository,
+                                  LedgerWriter ledgerWriter,
+                                  PortfolioValuationService portfolioValuationService,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${crypto.orders.lanes:0}") int lanes,
+                                  @Value("${crypto.orders.batch-size:50}") int batchSize,
+                                  @Value("${crypto.orders.queue-capacity:1000}") int queueCapacity,
+                                  @Value("${crypto.orders.timeout-ms:10000}") long timeoutMs) {
+        this.accountRepository = accountRepository;
+        this.userRepository = userRepository;
+        this.holdingRepository = holdingRepository;
+        this.orderRepository = orderRepository;
+        this.ledgerWriter = ledgerWriter;
+        this.portfolioValuationService = portfolioValuationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.timeoutMs = timeoutMs;
+
+        int count = lanes > 0 ? lanes : Runtime.getRuntime().availableProcessors();
+        this.lanes = new Lane[count];
+        for (int i = 0; i < count; i++) {
+            this.lanes[i] = new Lane(i, queueCapacity);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Lane lane : lanes) {
+            lane.thread.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        for (Lane lane : lanes) {
+            lane.thread.interrupt();
+        }
+    }
+
+    /** Изпраща поръчката към lane-а на сметката и чака резултата (след commit). */
+    public OrderResult execute(OrderCommand command) {
+        PendingOrder pending = new PendingOrder(command, new CompletableFuture<>());
+        Lane lane = lanes[Math.floorMod(command.iban().hashCode(), lanes.length)];
+        if (!lane.queue.offer(pending)) {
+            throw new BusinessRuleViolationException("Too many orders in progress, try again later.");
+        }
+        try {
+            return pending.result().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            // поръчката може още да се изпълни - резултатът ще е в crypto_order
+            throw new IllegalStateException("Order execution timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Order execution interrupted", e);
+        }
+    }
+
+    private void runLane(Lane lane) {
+        List<PendingOrder> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(lane.queue.take());
+                lane.queue.drainTo(batch, batchSize - 1);
+                executeBatch(batch);
+            } catch (InterruptedException e) {
+                if (!running) break;
+            } catch (RuntimeException e) {
+                log.error("Order lane {} error: {}", lane.index, e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+        List<PendingOrder> rest = new ArrayList<>();
+        lane.queue.drainTo(rest);
+        rest.forEach(p -> p.result().completeExceptionally(new IllegalStateException("Order pipeline stopped")));
+    }
+
+    private void executeBatch(List<PendingOrder> batch) {
+        // стабилно сортиране по IBAN: редът в една сметка се запазва, а редовете на
+        // accounts се заключват в същия ред като при преводите (без deadlock)
+        List<PendingOrder> sorted = new ArrayList<>(batch);
+        sorted.sort(Comparator.comparing(p -> p.command().iban()));
+        try {
+            List<OrderResult> results = transactionTemplate.execute(status -> apply(sorted));
+            complete(sorted, results);
+        } catch (RuntimeException batchError) {
+            if (sorted.size() == 1) {
+                sorted.get(0).result().completeExceptionally(batchError);
+                return;
+            }
+            log.warn("Order batch of {} failed ({}), retrying one by one", sorted.size(), batchError.getMessage());
+            for (PendingOrder p : sorted) {
+                try {
+                    List<OrderResult> single = transactionTemplate.execute(status -> apply(List.of(p)));
+                    complete(List.of(p), single);
+                } catch (RuntimeException orderError) {
+                    p.result().completeExceptionally(orderError);
+                }
+            }
+        }
+    }
+
+    private void complete(List<PendingOrder> orders, List<OrderResult> results) {
+        Set<UUID> users = new HashSet<>();
+        for (int i = 0; i < orders.size(); i++) {
+            users.add(orders.get(i).command().userId());
+            orders.get(i).result().complete(results.get(i));
+        }
+        users.forEach(portfolioValuationService::evict);
+    }
+
+    private List<OrderResult> apply(List<PendingOrder> orders) {
+        List<CryptoOrder> rows = new ArrayList<>(orders.size());
+        List<Transaction> ledger = new ArrayList<>();
+        List<Transaction> ledgerByOrder = new ArrayList<>(orders.size());
+        List<String> reasons = new ArrayList<>(orders.size());
+
+        for (PendingOrder p : orders) {
+            OrderCommand cmd = p.command();
+            BigDecimal amount = cmd.unitFiat().multiply(cmd.quantity()).setScale(2, RoundingMode.HALF_UP);
+            String reason = cmd.side() == OrderSide.BUY ? buy(cmd, amount) : sell(cmd, amount);
+
+            Transaction tx = null;
+            if (reason == null) {
+                tx = ledgerRow(cmd, amount);
+                ledger.add(tx);
+            }
+            rows.add(orderRow(cmd, amount, reason == null ? OrderStatus.FILLED : OrderStatus.REJECTED));
+            ledgerByOrder.add(tx);
+            reasons.add(reason);
+        }
+
+        if (!ledger.isEmpty()) {
+            ledgerWriter.writeAll(ledger);
+        }
+        orderRepository.saveAll(rows);
+
+        List<OrderResult> results = new ArrayList<>(orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            Transaction tx = ledgerByOrder.get(i);
+            results.add(new OrderResult(rows.get(i).getId(), rows.get(i).getStatus(), reasons.get(i),
+                    tx != null ? tx.getId() : null, rows.get(i).getGrossAmount()));
+        }
+        return results;
+    }
+
+    // връща причина за отказ или null
+    private String buy(OrderCommand cmd, BigDecimal amount) {
+        if (accountRepository.debitIfSufficient(cmd.iban(), amount).isEmpty()) {
+            return "Недостатъчна наличност по избраната сметка.";
+        }
+        CryptoHolding holding = holdingRepository.findByAccount_IdAndAsset(cmd.accountId(), cmd.symbol())
+                .orElseGet(() -> {
+                    CryptoHolding h = new CryptoHolding();
+                    h.setAccount(accountRepository.getReferenceById(cmd.accountId()));
+                    h.setAsset(cmd.symbol());
+                    h.setQuantity(BigDecimal.ZERO);
+                    h.setAvgPrice(BigDecimal.ZERO);
+                    return h;
+                });
+
+        BigDecimal oldQty = holding.getQuantity();
+        BigDecimal newQty = oldQty.add(cmd.quantity());
+        holding.setAvgPrice(oldQty.multiply(holding.getAvgPrice()).add(cmd.quantity().multiply(cmd.unitBgn()))
+                .divide(newQty, 8, RoundingMode.HALF_UP));
+        holding.setQuantity(newQty);
+        saveHolding(holding, cmd);
+        return null;
+    }
+
+    private String sell(OrderCommand cmd, BigDecimal amount) {
+        CryptoHolding holding = holdingRepository.findByAccount_IdAndAsset(cmd.accountId(), cmd.symbol())
+                .orElse(null);
+        if (holding == null || holding.getQuantity().compareTo(cmd.quantity()) < 0) {
+            return "Няма наличност от " + cmd.symbol() + " за продажба.";
+        }
+        accountRepository.credit(cmd.iban(), amount);
+
+        BigDecimal newQty = holding.getQuantity().subtract(cmd.quantity());
+        holding.setQuantity(newQty);
+        if (newQty.signum() == 0) {
+            holding.setAvgPrice(BigDecimal.ZERO);
+        }
+        saveHolding(holding, cmd);
+        return null;
+    }
+
+    private void saveHolding(CryptoHolding holding, OrderCommand cmd) {
+        holding.setIban(cmd.iban());
+        holding.setFiatCurrency(cmd.fiatCurrency());
+        holding.setUser(userRepository.getReferenceById(cmd.userId()));
+        holding.setUpdatedAt(OffsetDateTime.now());
+        holdingRepository.save(holding);
+    }
+
+    private Transaction ledgerRow(OrderCommand cmd, BigDecimal amount) {
+        boolean buy = cmd.side() == OrderSide.BUY;
+        return Transaction.builder()
+                .amount(amount)
+                .createdOn(LocalDate.now())
+                .currency(Currency.getInstance(cmd.fiatCurrency()))
+                .description("Crypto " + cmd.side() + " " + cmd.symbol() + " x " + cmd.quantity()
+                        + " @ " + cmd.unitUsd() + " USD")
+                .transactionStatus(TransactionStatus.SUCCEEDED)
+                .account(accountRepository.getReferenceById(cmd.accountId()))
+                .user(userRepository.getReferenceById(cmd.userId()))
+                .isIncome(!buy)
+                .isExpense(buy)
+                .transactionType(buy ? TransactionType.WITHDRAWAL : TransactionType.DEPOSIT)
+                .build();
+    }
+
+    private CryptoOrder orderRow(OrderCommand cmd, BigDecimal amount, OrderStatus status) {
+        CryptoOrder order = new CryptoOrder();
+        order.setUserId(cmd.userId());
+        order.setAccount(accountRepository.getReferenceById(cmd.accountId()));
+        order.setIban(cmd.iban());
+        order.setAsset(cmd.symbol());
+        order.setSide(cmd.side());
+        order.setQuantity(cmd.quantity());
+        order.setPrice(cmd.unitFiat().setScale(8, RoundingMode.HALF_UP));
+        order.setGrossAmount(amount);
+        order.setFeeAmount(BigDecimal.ZERO);
+        order.setNetAmount(amount);
+        order.setStatus(status);
+        order.setFiatCurrency(cmd.fiatCurrency());
+        order.setExecutedAt(Instant.now());
+        return order;
+    }
+
+    public record OrderCommand(UUID userId, UUID accountId, String iban, String fiatCurrency, String symbol,
+                               OrderSide side, BigDecimal quantity, BigDecimal unitUsd, BigDecimal unitFiat,
+                               BigDecimal unitBgn) {}
+
+    public record OrderResult(UUID orderId, OrderStatus status, String reason, UUID transactionId,
+                              BigDecimal amount) {}
+
+    private record PendingOrder(OrderCommand command, CompletableFuture<OrderResult> result) {}
+
+    private final class Lane {
+        final int index;
+        final BlockingQueue<PendingOrder> queue;
+        final Thread thread;
+
+        Lane(int index, int capacity) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(() -> runLane(this), "crypto-order-lane-" + index);
+            this.thread.setDaemon(true);
+        }
+    }
+}
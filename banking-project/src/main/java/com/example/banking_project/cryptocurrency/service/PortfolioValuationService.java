@@ -0,0 +1,182 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.repository.CryptoHoldingRepository;
+import com.example.banking_project.cryptocurrency.view.HoldingPositionView;
+import com.example.banking_project.web.dto.crypto.HoldingView;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Оценка на крипто портфейла на потребител по цените от cryptoPriceCache (пълни се от WebSocket-а).
+ *
+ * Позициите се зареждат веднъж (holdings + iban на сметката в една заявка) и се пазят, докато
+ * потребителят е активен; изтриват се при нова поръчка (evict). Оценката в USD е
+ * предварително изчислена и се преизчислява по tick, само ако някоя от цените ѝ се е променила.
+ * USD е валутата на цените, BGN се смята при четене по курса от FxService.
+ * Преоценката ползва само цените в паметта; липсваща цена се поръчва асинхронно при четене
+ * и влиза в оценката на следващия tick, щом пристигне.
+ */
+@Service
+public class PortfolioValuationService {
+
+    private final CryptoHoldingRepository holdingRepository;
+    private final CryptoPriceService priceService;
+    private final FxService fxService;
+    private final Cache<UUID, Portfolio> portfolios;
+
+    public PortfolioValuationService(CryptoHoldingRepository holdingRepository,
+                                     CryptoPriceService priceService,
+                                     FxService fxService,
+                                     @Value("${crypto.portfolio.idle-ms:600000}") long idleMs,
+                                     @Value("${crypto.portfolio.max-size:10000}") long maxSize) {
+        this.holdingRepository = holdingRepository;
+        this.priceService = priceService;
+        this.fxService = fxService;
+        long idleNanos = Duration.ofMillis(idleMs).toNanos();
+        // само четене удължава живота - преоценката по tick не държи неактивни портфейли в паметта
+        this.portfolios = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<UUID, Portfolio>() {
+                    @Override
+                    public long expireAfterCreate(UUID key, Portfolio value, long currentTime) {
+                        return idleNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UUID key, Portfolio value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID key, Portfolio value, long currentTime, long currentDuration) {
+                        return idleNanos;
+                    }
+                })
+                .build();
+    }
+
+    public List<HoldingView> getPortfolio(UUID userId, String vsCurrency) {
+        String vs = vsCurrency == null ? "usd" : vsCurrency.toLowerCase(Locale.ROOT);
+        if (!vs.equals("usd") && !vs.equals("bgn")) {
+            throw new IllegalArgumentException("Unsupported valuation currency: " + vsCurrency + " (usd, bgn)");
+        }
+
+        Portfolio portfolio = portfolios.get(userId, this::load);
+        if (portfolio.isStale(priceService)) {
+            Portfolio revalued = revalue(portfolio);
+            // само ако записът е още същият - иначе put би върнал позиции, изтрити от evict
+            portfolios.asMap().replace(userId, portfolio, revalued);
+            portfolio = revalued;
+        }
+        prefetchMissing(portfolio);
+        return vs.equals("usd") ? portfolio.views() : toBgn(portfolio.views());
+    }
+
+    public void evict(UUID userId) {
+        portfolios.invalidate(userId);
+        // паралелна заявка може да зареди старите позиции преди commit - трием и след него
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    portfolios.invalidate(userId);
+                }
+            });
+        }
+    }
+
+    /** Преизчислява оценките на активните портфейли, чиито цени са се променили. Без REST заявки. */
+    @Scheduled(fixedRateString = "${crypto.portfolio.refresh-ms:1000}")
+    public void refresh() {
+        portfolios.asMap().replaceAll((userId, p) -> p.isStale(priceService) ? revalue(p) : p);
+    }
+
+    private Portfolio load(UUID userId) {
+        List<Position> positions = holdingRepository.findPositionsByUserId(userId).stream()
+                .map(Position::of)
+                .toList();
+        return revalue(new Portfolio(positions, List.of(), Instant.EPOCH));
+    }
+
+    private Portfolio revalue(Portfolio p) {
+        BigDecimal usdToBgn = fxService.getUsdToBgnRate();
+        // цена, записана след този момент, прави оценката остаряла
+        Instant pricedAt = Instant.now();
+        List<HoldingView> views = new ArrayList<>(p.positions().size());
+        for (Position pos : p.positions()) {
+            PriceEntry price = priceOf(pos.asset());
+            BigDecimal mp = (price != null ? price.usd() : BigDecimal.ZERO).setScale(8, RoundingMode.HALF_UP);
+            // avgPrice се пази в BGN (виж placeOrder)
+            BigDecimal avgUsd = pos.avgPriceBgn().divide(usdToBgn, 8, RoundingMode.HALF_UP);
+            views.add(new HoldingView(
+                    pos.accountId(),
+                    pos.iban(),
+                    pos.asset(),
+                    pos.quantity(),
+                    avgUsd,
+                    mp,
+                    mp.multiply(pos.quantity()).setScale(2, RoundingMode.HALF_UP),
+                    mp.subtract(avgUsd).multiply(pos.quantity()).setScale(2, RoundingMode.HALF_UP)));
+        }
+        return new Portfolio(p.positions(), List.copyOf(views), pricedAt);
+    }
+
+    // само от кеша - refresh върви на scheduler нишката и не бива да чака доставчика
+    private PriceEntry priceOf(String asset) {
+        return priceService.peek(asset).orElse(null);
+    }
+
+    // символ, който още не е идвал по WebSocket - една REST заявка (single-flight), без да чакаме
+    private void prefetchMissing(Portfolio p) {
+        for (Position pos : p.positions()) {
+            if (priceService.peek(pos.asset()).isEmpty()) {
+                priceService.prefetch(pos.asset());
+            }
+        }
+    }
+
+    private List<HoldingView> toBgn(List<HoldingView> usd) {
+        BigDecimal rate = fxService.getUsdToBgnRate();
+        return usd.stream().map(v -> new HoldingView(
+                v.accountId(),
+                v.iban(),
+                v.asset(),
+                v.quantity(),
+                v.avgPrice().multiply(rate).setScale(8, RoundingMode.HALF_UP),
+                v.marketPrice().multiply(rate).setScale(8, RoundingMode.HALF_UP),
+                v.marketValue().multiply(rate).setScale(2, RoundingMode.HALF_UP),
+                v.unrealizedPnl().multiply(rate).setScale(2, RoundingMode.HALF_UP))).toList();
+    }
+
+    private record Position(UUID accountId, String iban, String asset, BigDecimal quantity, BigDecimal avgPriceBgn) {
+        static Position of(HoldingPositionView h) {
+            return new Position(h.getAccountId(), h.getIban(), h.getAsset(),
+                    h.getQuantity().setScale(8, RoundingMode.HALF_UP), h.getAvgPrice());
+        }
+    }
+
+    private record Portfolio(List<Position> positions, List<HoldingView> views, Instant pricedAt) {
+        boolean isStale(CryptoPriceService prices) {
+            for (Position pos : positions) {
+                PriceEntry e = prices.peek(pos.asset()).orElse(null);
+                if (e != null && e.ts() != null && e.ts().isAfter(pricedAt)) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.web.dto.crypto.Ticker;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Шина за live цени: пази само последната цена по символ и веднъж на tick
+ * (crypto.live.tick-ms) изпраща един кадър към всички абонати.
+ *
+ * JSON-ът на всеки тикер се сериализира веднъж на кадър, а не по веднъж за всеки клиент.
+ * Бавен клиент получава само последния кадър (onBackpressureLatest), а при пропуснат
+ * кадър получава отново всички символи, така че не остава със стари цени.
+ *
+ * Tick-ът е на собствена нишка, а не в общия @Scheduled pool - дълги задачи там
+ * (нощното погасяване, поддръжката на партициите) не спират live цените.
+ */
+@Slf4j
+@Component
+public class PriceBus {
+
+    private final ObjectMapper mapper;
+    private final long tickMs;
+    private final ScheduledExecutorService ticker;
+
+    private final Map<String, Ticker> latest = new ConcurrentHashMap<>();
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    private final Sinks.Many<Frame> sink = Sinks.many().multicast().directBestEffort();
+
+    private volatile Frame current;
+    private long seq;
+
+    public PriceBus(ObjectMapper mapper, @Value("${crypto.live.tick-ms:1000}") long tickMs) {
+        this.mapper = mapper;
+        this.tickMs = tickMs;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "price-bus-tick");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker.scheduleAtFixedRate(this::safeTick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    public void publish(Ticker ticker) {
+        latest.put(ticker.id(), ticker);
+        dirty.add(ticker.id());
+    }
+
+    // изключение в scheduleAtFixedRate спира всички следващи tick-ове
+    private void safeTick() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            log.warn("Price bus tick failed: {}", e.getMessage(), e);
+        }
+    }
+
+    void tick() {
+        if (dirty.isEmpty()) return;
+
+        Set<String> changed = new HashSet<>();
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            changed.add(it.next());
+            it.remove();
+        }
+
+        Frame prev = current;
+        Map<String, String> json = new TreeMap<>();
+        for (Map.Entry<String, Ticker> e : latest.entrySet()) {
+            String id = e.getKey();
+            String cached = prev != null && !changed.contains(id) ? prev.json().get(id) : null;
+            json.put(id, cached != null ? cached : toJson(e.getValue()));
+        }
+
+        Frame frame = new Frame(++seq, Map.copyOf(json), Set.copyOf(changed), toArray(json.values()));
+        current = frame;
+        sink.tryEmitNext(frame);
+    }
+
+    /** По едно SSE събитие на тикер; при първия кадър и след пропуснат кадър - всички символи. */
+    public Flux<String> tickerEvents(Set<String> ids) {
+        Set<String> filter = normalize(ids);
+        return Flux.defer(() -> {
+            long[] lastSeq = {-1};
+            return frames().concatMapIterable(f -> {
+                boolean gap = f.seq() != lastSeq[0] + 1;
+                lastSeq[0] = f.seq();
+                Collection<String> source = gap ? f.json().keySet() : f.changed();
+                List<String> out = new ArrayList<>(source.size());
+                for (String id : source) {
+                    String j = f.json().get(id);
+                    if (j != null && (filter == null || filter.contains(id))) out.add(j);
+                }
+                return out;
+            });
+        });
+    }
+
+    /** По едно SSE събитие на кадър: JSON масив с текущите цени на избраните символи. */
+    public Flux<String> snapshotEvents(Set<String> ids) {
+        Set<String> filter = normalize(ids);
+        if (filter == null) {
+            return frames().map(Frame::snapshotJson);
+        }
+        return frames().map(f -> {
+            List<String> selected = new ArrayList<>(filter.size());
+            for (String id : filter) {
+                String j = f.json().get(id);
+                if (j != null) selected.add(j);
+            }
+            return toArray(selected);
+        });
+    }
+
+    public Map<String, Ticker> snapshot() {
+        return new HashMap<>(latest);
+    }
+
+    private Flux<Frame> frames() {
+        return Flux.defer(() -> {
+            Frame now = current;
+            Flux<Frame> live = sink.asFlux().onBackpressureLatest();
+            return now == null ? live : live.startWith(now);
+        });
+    }
+
+    private String toJson(Ticker t) {
+        try {
+            return mapper.writeValueAsString(t);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize ticker " + t.id(), e);
+        }
+    }
+
+    private static String toArray(Collection<String> items) {
+        StringJoiner joiner = new StringJoiner(",", "[", "]");
+        items.forEach(joiner::add);
+        return joiner.toString();
+    }
+
+    private static Set<String> normalize(Set<String> ids) {
+        if (ids == null || ids.isEmpty()) return null;
+        Set<String> out = new HashSet<>();
+        for (String id : ids) {
+            if (id != null && !id.isBlank()) out.add(id.trim().toLowerCase());
+        }
+        return out.isEmpty() ? null : out;
+    }
+
+    public record Frame(long seq, Map<String, String> json, Set<String> changed, String snapshotJson) {}
+}
@@ -7,5 +7,9 @@ public record PriceEntry(BigDecimal usd, Instant ts, String source) {
     public boolean isFresh(long ttlMs) {
         return ts != null && (Instant.now().toEpochMilli() - ts.toEpochMilli()) < ttlMs;
     }
+
+    public long ageMs() {
+        return ts == null ? Long.MAX_VALUE : Instant.now().toEpochMilli() - ts.toEpochMilli();
+    }
 }
 
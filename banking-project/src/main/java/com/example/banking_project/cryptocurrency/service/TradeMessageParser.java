@@ -0,0 +1,120 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Streaming парсер за Binance trade съобщения (директни или в combined-stream обвивка
+ * {"stream":..., "data":{...}}). Вади само e, s, p и q в преизползваеми char буфери
+ * и E/T (времето на събитието и на сделката при борсата, ms), без да строи JsonNode дърво. Една инстанция не е thread-safe.
+ */
+public final class TradeMessageParser {
+
+    private static final char[] TRADE = "trade".toCharArray();
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    private final JsonFactory factory;
+
+    final char[] pair = new char[32];
+    int pairLength;
+    final char[] price = new char[64];
+    int priceLength;
+    final char[] quantity = new char[64];
+    int quantityLength;
+    long eventTime;
+    long tradeTime;
+    private boolean trade;
+
+    public TradeMessageParser(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    /** true, ако съобщението е trade и съдържа символ и цена. */
+    public boolean parse(String json) throws IOException {
+        trade = false;
+        pairLength = 0;
+        priceLength = 0;
+        quantityLength = 0;
+        eventTime = 0L;
+        tradeTime = 0L;
+        try (JsonParser p = factory.createParser(json)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return false;
+            readObject(p);
+        }
+        return trade && pairLength > 0 && priceLength > 0;
+    }
+
+    private void readObject(JsonParser p) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            JsonToken value = p.nextToken();
+            if (value == JsonToken.START_OBJECT) {
+                if ("data".equals(name)) readObject(p);
+                else p.skipChildren();
+                continue;
+            }
+            if (value == JsonToken.START_ARRAY) {
+                p.skipChildren();
+                continue;
+            }
+            if (value == JsonToken.VALUE_NUMBER_INT) {
+                if ("E".equals(name)) eventTime = p.getLongValue();
+                else if ("T".equals(name)) tradeTime = p.getLongValue();
+                continue;
+            }
+            if (value != JsonToken.VALUE_STRING) continue;
+
+            switch (name) {
+                case "e" -> trade = textEquals(p, TRADE);
+                case "s" -> pairLength = copyText(p, pair);
+                case "p" -> priceLength = copyText(p, price);
+                case "q" -> quantityLength = copyText(p, quantity);
+                default -> { }
+            }
+        }
+    }
+
+    /** Десетично число без експонента се парсва без String; всичко друго - през Double.parseDouble. */
+    static double toDouble(char[] buf, int len) {
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (int i = 0; i < len; i++) {
+            char c = buf[i];
+            if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            // до 15 цифри мантисата и степента на 10 са точни в double
+            if (c < '0' || c > '9' || ++digits > 15) {
+                return Double.parseDouble(new String(buf, 0, len));
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            if (scale >= 0) scale++;
+        }
+        return scale > 0 ? mantissa / POW10[scale] : mantissa;
+    }
+
+    private static int copyText(JsonParser p, char[] target) throws IOException {
+        int len = p.getTextLength();
+        if (len > target.length) return 0;
+        System.arraycopy(p.getTextCharacters(), p.getTextOffset(), target, 0, len);
+        return len;
+    }
+
+    private static boolean textEquals(JsonParser p, char[] expected) throws IOException {
+        int len = p.getTextLength();
+        if (len != expected.length) return false;
+        char[] buf = p.getTextCharacters();
+        int off = p.getTextOffset();
+        for (int i = 0; i < len; i++) {
+            if (buf[off + i] != expected[i]) return false;
+        }
+        return true;
+    }
+}
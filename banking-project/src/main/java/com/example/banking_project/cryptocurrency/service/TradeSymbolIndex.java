@@ -0,0 +1,101 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.model.CryptoSymbol;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Неизменим индекс binancePair -> CryptoSymbol с open addressing върху char-ове,
+ * за да се търси директно в буфера на парсера без String и без линейно обхождане.
+ * Пази и последната видяна цена по символ (като 64-битов hash), за да се изпускат
+ * тикове без промяна.
+ */
+public final class TradeSymbolIndex {
+
+    public static final TradeSymbolIndex EMPTY = build(List.of());
+
+    private final char[][] keys;
+    private final CryptoSymbol[] values;
+    private final int mask;
+
+    private final AtomicLongArray lastPriceHash;
+    private final AtomicLongArray lastPublishNanos;
+
+    private TradeSymbolIndex(int capacity) {
+        this.keys = new char[capacity][];
+        this.values = new CryptoSymbol[capacity];
+        this.mask = capacity - 1;
+        this.lastPriceHash = new AtomicLongArray(capacity);
+        this.lastPublishNanos = new AtomicLongArray(capacity);
+    }
+
+    public static TradeSymbolIndex build(List<CryptoSymbol> symbols) {
+        int capacity = 16;
+        while (capacity < symbols.size() * 2) capacity <<= 1;
+
+        TradeSymbolIndex index = new TradeSymbolIndex(capacity);
+        for (CryptoSymbol cs : symbols) {
+            char[] key = cs.getBinancePair().toCharArray();
+            for (int i = 0; i < key.length; i++) key[i] = upper(key[i]);
+            int slot = (int) hash(key, 0, key.length) & index.mask;
+            while (index.keys[slot] != null && !equalsIgnoreCase(index.keys[slot], key, 0, key.length)) {
+                slot = (slot + 1) & index.mask;
+            }
+            index.keys[slot] = key;
+            index.values[slot] = cs;
+        }
+        return index;
+    }
+
+    /** Слот за двойката или -1, ако символът не е активен. */
+    public int slotOf(char[] buf, int off, int len) {
+        int slot = (int) hash(buf, off, len) & mask;
+        while (keys[slot] != null) {
+            if (equalsIgnoreCase(keys[slot], buf, off, len)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public CryptoSymbol symbolAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * true, ако цената се е променила спрямо последно публикуваната
+     * или е минал refreshNanos от последната публикация (за да не остарява кешът).
+     */
+    public boolean shouldPublish(int slot, char[] price, int off, int len, long nowNanos, long refreshNanos) {
+        long h = hash(price, off, len);
+        long prev = lastPriceHash.get(slot);
+        if (prev == h && nowNanos - lastPublishNanos.get(slot) < refreshNanos) {
+            return false;
+        }
+        lastPriceHash.set(slot, h);
+        lastPublishNanos.set(slot, nowNanos);
+        return true;
+    }
+
+    // FNV-1a върху главни ASCII букви
+    private static long hash(char[] buf, int off, int len) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = off; i < off + len; i++) {
+            h ^= upper(buf[i]);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static boolean equalsIgnoreCase(char[] key, char[] buf, int off, int len) {
+        if (key.length != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (key[i] != upper(buf[off + i])) return false;
+        }
+        return true;
+    }
+
+    private static char upper(char c) {
+        return (c >= 'a' && c <= 'z') ? (char) (c - 32) : c;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.banking_project.cryptocurrency.view;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public interface HoldingPositionView {
+    UUID getAccountId();
+    String getIban();
+    String getAsset();
+    BigDecimal getQuantity();
+    BigDecimal getAvgPrice();
+}
@@ -0,0 +1,310 @@
+package com.example.banking_project.dashboard.service;
+
+import com.example.banking_project.account.event.AccountsChangedEvent;
+import com.example.banking_project.account.repository.AccountRepository;
+import com.example.banking_project.account.view.AccountBalanceView;
+import com.example.banking_project.cryptocurrency.service.FxMatrix;
+import com.example.banking_project.cryptocurrency.service.FxService;
+import com.example.banking_project.cryptocurrency.service.PortfolioValuationService;
+import com.example.banking_project.loan.event.LoansChangedEvent;
+import com.example.banking_project.loan.repository.LoanRepository;
+import com.example.banking_project.loan.view.LoanSummaryView;
+import com.example.banking_project.transaction.event.LedgerRowsWrittenEvent;
+import com.example.banking_project.transaction.model.Transaction;
+import com.example.banking_project.transaction.repository.TransactionRepository;
+import com.example.banking_project.transaction.view.TransactionTransferView;
+import com.example.banking_project.web.dto.crypto.HoldingView;
+import com.example.banking_project.web.dto.dashboard.DashboardAccountDto;
+import com.example.banking_project.web.dto.dashboard.DashboardLoansDto;
+import com.example.banking_project.web.dto.dashboard.DashboardResponse;
+import com.example.banking_project.web.dto.dashboard.DashboardTransactionDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Read model за таблото на потребителя: сметки и баланси, последни транзакции и кредити.
+ *
+ * Снимката се зарежда веднъж (три заявки) и след това се поддържа от събитията след commit:
+ * нови ledger редове се добавят към последните транзакции и опресняват балансите на
+ * потребителя, промени по кредити или сметки презареждат само своята част. Събития за
+ * потребители без снимка се пропускат. Крипто позициите идват от PortfolioValuationService,
+ * който поддържа собствена оценка по цените.
+ */
+@Slf4j
+@Service
+public class DashboardReadModel {
+
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final LoanRepository loanRepository;
+    private final PortfolioValuationService portfolioValuationService;
+    private final FxService fxService;
+    private final Cache<UUID, Snapshot> snapshots;
+    private final int recentSize;
+
+    // потребители, чиято снимка се чете от базата в момента - събитие за тях изхвърля резултата
+    private final Set<UUID> loading = ConcurrentHashMap.newKeySet();
+
+    public DashboardReadModel(AccountRepository accountRepository,
+                              TransactionRepository transactionRepository,
+                              LoanRepository loanRepository,
+                              PortfolioValuationService portfolioValuationService,
+                              FxService fxService,
+                              @Value("${dashboard.cache.max-size:10000}") long maxSize,
+                              @Value("${dashboard.cache.idle-ms:600000}") long idleMs,
+                              @Value("${dashboard.recent-transactions:10}") int recentSize) {
+        this.accountRepository = accountRepository;
+        this.transactionRepository = transactionRepository;
+        this.loanRepository = loanRepository;
+        this.portfolioValuationService = portfolioValuationService;
+        this.fxService = fxService;
+        this.recentSize = recentSize;
+        long idleNanos = Duration.ofMillis(idleMs).toNanos();
+        // само четене удължава живота - обновяванията от събития не държат неактивни табла в паметта
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<UUID, Snapshot>() {
+                    @Override
+                    public long expireAfterCreate(UUID key, Snapshot value, long currentTime) {
+                        return idleNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UUID key, Snapshot value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID key, Snapshot value, long currentTime, long currentDuration) {
+                        return idleNanos;
+                    }
+                })
+                .build();
+    }
+
+    public DashboardResponse getDashboard(UUID userId) {
+        Snapshot snapshot = snapshots.get(userId, this::load);
+        Snapshot repriced = priced(snapshot);
+        if (repriced != snapshot) {
+            // курсовете са се сменили - записва се, само ако междувременно не е дошло събитие
+            snapshots.asMap().replace(userId, snapshot, repriced);
+            snapshot = repriced;
+        }
+
+        BigDecimal holdingsUsd = portfolioValuationService.getPortfolio(userId, "usd").stream()
+                .map(HoldingView::marketValue)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        return new DashboardResponse(
+                userId,
+                snapshot.totals().accounts(),
+                snapshot.totals().totalBgn(),
+                holdingsUsd,
+                fxService.convert(holdingsUsd, "USD", "BGN"),
+                snapshot.recent(),
+                snapshot.loans(),
+                snapshot.updatedAt());
+    }
+
+    // ===== Събития (след commit) =====
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLedgerRows(LedgerRowsWrittenEvent event) {
+        Map<UUID, List<DashboardTransactionDto>> byUser = new HashMap<>();
+        for (Transaction tx : event.rows()) {
+            UUID userId = tx.getUser().getId();
+            if (loading.contains(userId)) {
+                snapshots.invalidate(userId);
+                continue;
+            }
+            if (!snapshots.asMap().containsKey(userId)) continue;
+            byUser.computeIfAbsent(userId, k -> new ArrayList<>()).add(toDto(tx));
+        }
+        if (byUser.isEmpty()) return;
+        try {
+            // балансите на всички засегнати потребители с една заявка; по-стар резултат не презаписва по-нов (version)
+            Map<UUID, List<AccountLine>> balances = accountRepository.findBalancesByUserIdIn(byUser.keySet()).stream()
+                    .collect(Collectors.groupingBy(AccountBalanceView::getUserId,
+                            Collectors.mapping(AccountLine::of, Collectors.toList())));
+            byUser.forEach((userId, rows) -> snapshots.asMap().computeIfPresent(userId, (k, s) -> priced(s
+                    .withBalances(balances.getOrDefault(userId, List.of()))
+                    .withTransactions(rows, recentSize))));
+        } catch (RuntimeException e) {
+            log.warn("Dashboard update for {} users failed, dropping their snapshots: {}", byUser.size(), e.getMessage());
+            snapshots.invalidateAll(byUser.keySet());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAccountsChanged(AccountsChangedEvent event) {
+        refresh(List.of(event.userId()), (userId, s) -> s.withAccounts(accountLines(userId)));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLoansChanged(LoansChangedEvent event) {
+        refresh(event.userIds(), (userId, s) -> s.withLoans(loans(userId)));
+    }
+
+    // заявката е под lock-а на записа, така че следващото събитие за същия потребител чете след нея
+    private void refresh(Iterable<UUID> userIds, BiFunction<UUID, Snapshot, Snapshot> update) {
+        for (UUID userId : userIds) {
+            try {
+                if (loading.contains(userId)) {
+                    snapshots.invalidate(userId);
+                    continue;
+                }
+                snapshots.asMap().computeIfPresent(userId, (k, s) -> priced(update.apply(k, s)));
+            } catch (RuntimeException e) {
+                log.warn("Dashboard refresh for user {} failed, dropping the snapshot: {}", userId, e.getMessage());
+                snapshots.invalidate(userId);
+            }
+        }
+    }
+
+    // ===== Зареждане =====
+
+    // computeIfPresent не чака зареждане в ход, а invalidate чака - затова loading
+    private Snapshot load(UUID userId) {
+        loading.add(userId);
+        try {
+            List<DashboardTransactionDto> recent = transactionRepository.getRecentTransactionsByUserId(userId, recentSize)
+                    .stream()
+                    .map(DashboardReadModel::toDto)
+                    .toList();
+            return priced(new Snapshot(accountLines(userId), recent, loans(userId), Instant.now(), null));
+        } finally {
+            loading.remove(userId);
+        }
+    }
+
+    // сметките и общата сума в BGN се смятат при промяна на балансите или на курсовете, не при всяко четене
+    private Snapshot priced(Snapshot s) {
+        FxMatrix fx = fxService.snapshot();
+        if (s.totals() != null && s.totals().fxAsOf().equals(fx.getAsOf())) return s;
+        BigDecimal totalBgn = BigDecimal.ZERO;
+        List<DashboardAccountDto> accounts = new ArrayList<>(s.accounts().size());
+        for (AccountLine line : s.accounts()) {
+            accounts.add(line.dto());
+            // сметка във валута без курс не влиза в общата сума
+            if (line.dto().balance() != null && fxService.isSupported(line.dto().currency())) {
+                totalBgn = totalBgn.add(fxService.convert(line.dto().balance(), line.dto().currency(), "BGN"));
+            }
+        }
+        return s.withTotals(new Totals(List.copyOf(accounts), totalBgn, fx.getAsOf()));
+    }
+
+    private List<AccountLine> accountLines(UUID userId) {
+        return accountRepository.findBalancesByUserIdIn(List.of(userId)).stream()
+                .map(AccountLine::of)
+                .toList();
+    }
+
+    private DashboardLoansDto loans(UUID userId) {
+        LoanSummaryView v = loanRepository.getLoanSummaryByUser(userId);
+        return new DashboardLoansDto(v.getActiveLoans(), v.getOverdueLoans(), v.getOutstanding(),
+                v.getMonthlyObligation(), v.getNextPaymentDate());
+    }
+
+    private static DashboardTransactionDto toDto(TransactionTransferView v) {
+        return new DashboardTransactionDto(v.getId(), v.getAccountId(), v.getAmount(), v.getCurrency(),
+                v.getTransactionType(), v.getTransactionStatus(), v.getDescription(), v.getCreatedOn(),
+                v.getIsIncome());
+    }
+
+    private static DashboardTransactionDto toDto(Transaction tx) {
+        return new DashboardTransactionDto(
+                tx.getId(),
+                tx.getAccount().getId(),
+                tx.getAmount(),
+                tx.getCurrency() != null ? tx.getCurrency().getCurrencyCode() : null,
+                tx.getTransactionType() != null ? tx.getTransactionType().name() : null,
+                tx.getTransactionStatus() != null ? tx.getTransactionStatus().name() : null,
+                tx.getDescription(),
+                tx.getCreatedOn(),
+                Boolean.TRUE.equals(tx.getIsIncome()));
+    }
+
+    private record AccountLine(DashboardAccountDto dto, long version) {
+        static AccountLine of(AccountBalanceView v) {
+            String currency = v.getCurrencyCode() != null ? v.getCurrencyCode() : "BGN";
+            return new AccountLine(new DashboardAccountDto(v.getId(), v.getIban(), currency, v.getBalance()),
+                    v.getVersion());
+        }
+    }
+
+    private record Totals(List<DashboardAccountDto> accounts, BigDecimal totalBgn, Instant fxAsOf) {}
+
+    /** Неизменима снимка; всяко събитие заменя записа с нова. totals == null - балансите са сменени. */
+    private record Snapshot(List<AccountLine> accounts,
+                            List<DashboardTransactionDto> recent,
+                            DashboardLoansDto loans,
+                            Instant updatedAt,
+                            Totals totals) {
+
+        // само познатите сметки, и само ако версията е по-нова
+        Snapshot withBalances(List<AccountLine> fresh) {
+            Map<UUID, AccountLine> byId = new HashMap<>();
+            fresh.forEach(l -> byId.put(l.dto().accountId(), l));
+            List<AccountLine> merged = new ArrayList<>(accounts.size());
+            for (AccountLine current : accounts) {
+                AccountLine f = byId.get(current.dto().accountId());
+                merged.add(f != null && f.version() > current.version() ? f : current);
+            }
+            return new Snapshot(List.copyOf(merged), recent, loans, Instant.now(), null);
+        }
+
+        // пълният списък (нови/изтрити сметки), без да връща назад вече видяна версия
+        Snapshot withAccounts(List<AccountLine> fresh) {
+            Map<UUID, AccountLine> byId = new HashMap<>();
+            accounts.forEach(l -> byId.put(l.dto().accountId(), l));
+            List<AccountLine> merged = new ArrayList<>(fresh.size());
+            for (AccountLine f : fresh) {
+                AccountLine current = byId.get(f.dto().accountId());
+                merged.add(current != null && current.version() > f.version() ? current : f);
+            }
+            return new Snapshot(List.copyOf(merged), recent, loans, Instant.now(), null);
+        }
+
+        // новите редове отпред (последният записан - най-отгоре); вече видените се пропускат
+        Snapshot withTransactions(List<DashboardTransactionDto> rows, int limit) {
+            Set<UUID> seen = new HashSet<>();
+            recent.forEach(t -> seen.add(t.id()));
+            List<DashboardTransactionDto> merged = new ArrayList<>(limit);
+            for (int i = rows.size() - 1; i >= 0 && merged.size() < limit; i--) {
+                if (seen.add(rows.get(i).id())) merged.add(rows.get(i));
+            }
+            for (DashboardTransactionDto t : recent) {
+                if (merged.size() >= limit) break;
+                merged.add(t);
+            }
+            return new Snapshot(accounts, List.copyOf(merged), loans, Instant.now(), totals);
+        }
+
+        Snapshot withLoans(DashboardLoansDto fresh) {
+            return new Snapshot(accounts, recent, fresh, Instant.now(), totals);
+        }
+
+        Snapshot withTotals(Totals priced) {
+            return new Snapshot(accounts, recent, loans, updatedAt, priced);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.banking_project.loan.event;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/** Нов кредит, платена или пропусната вноска за тези потребители. */
+public record LoansChangedEvent(Collection<UUID> userIds) {}
@@ -43,6 +43,10 @@ public class Loan {
     @Column(name = "missed_payments")
     private int missedPayments;
 
+    // датата на последното нощно събиране, което е обработило кредита (платен или пропуснат)
+    @Column(name = "last_collection_run")
+    private LocalDate lastCollectionRun;
+
     @Column(name = "monthly_payment", nullable = false, precision = 19, scale = 2)
     private BigDecimal monthlyPayment;
 
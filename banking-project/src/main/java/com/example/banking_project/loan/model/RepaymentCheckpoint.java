@@ -0,0 +1,59 @@
+package com.example.banking_project.loan.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Един диапазон от id-та на кредити в нощното събиране на вноски.
+ * По тези записи прекъснато изпълнение продължава от първия недовършен chunk.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(
+        name = "loan_repayment_checkpoints",
+        uniqueConstraints = {
+                @UniqueConstraint(columnNames = {"run_date", "chunk_index"})
+        }
+)
+public class RepaymentCheckpoint {
+
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Column(name = "run_date", nullable = false)
+    private LocalDate runDate;
+
+    @Column(name = "chunk_index", nullable = false)
+    private int chunkIndex;
+
+    @Column(name = "from_loan_id", nullable = false)
+    private UUID fromLoanId;
+
+    @Column(name = "to_loan_id", nullable = false)
+    private UUID toLoanId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private RepaymentChunkStatus status;
+
+    @Column(name = "processed")
+    private int processed;
+
+    @Column(name = "failed")
+    private int failed;
+
+    @Column(name = "duration_ms")
+    private long durationMs;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,6 @@
+package com.example.banking_project.loan.model;
+
+public enum RepaymentChunkStatus {
+    PENDING,
+    DONE;
+}
@@ -0,0 +1,8 @@
+package com.example.banking_project.loan.model;
+
+public enum ReportJobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED;
+}
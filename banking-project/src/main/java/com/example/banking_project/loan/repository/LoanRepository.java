@@ -3,16 +3,25 @@ package com.example.banking_project.loan.repository;
 import com.example.banking_project.loan.model.Loan;
 import com.example.banking_project.loan.model.LoanStatus;
 import com.example.banking_project.loan.view.CreditHistoryView;
+import com.example.banking_project.loan.view.LoanCollectionView;
+import com.example.banking_project.loan.view.LoanSummaryView;
 import com.example.banking_project.loan.view.LoanView;
+import com.example.banking_project.loan.view.PortfolioRiskRowView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface LoanRepository extends JpaRepository<Loan, UUID> {
@@ -70,6 +79,205 @@ public interface LoanRepository extends JpaRepository<Loan, UUID> {
         """, nativeQuery = true)
     List<LoanView> findDueLoanViews(@Param("date") LocalDate date);
 
+    // ===== Нощно събиране на вноски по диапазони от id =====
+
+    @Query(value = """
+        SELECT l.id
+        FROM loans l
+        WHERE l.loan_status = 'ACTIVE'
+          AND l.next_date_of_payment <= :date
+          AND (l.last_collection_run IS NULL OR l.last_collection_run < :date)
+        ORDER BY l.id
+        """, nativeQuery = true)
+    List<UUID> findDueLoanIds(@Param("date") LocalDate date);
+
+    @Query(value = """
+        SELECT
+          l.id                   AS id,
+          l.user_id              AS userId,
+          l.monthly_payment      AS monthlyPayment,
+          l.remaining_amount     AS remainingAmount,
+          l.next_date_of_payment AS nextDateOfPayment,
+          l.loan_status          AS loanStatus,
+          l.repayment_account_id AS repaymentAccountId,
+          a.iban                 AS repaymentIban,
+          a.currency_code        AS repaymentCurrencyCode
+        FROM loans l
+        LEFT JOIN accounts a ON a.id = l.repayment_account_id
+        WHERE l.loan_status = 'ACTIVE'
+          AND l.next_date_of_payment <= :date
+          AND (l.last_collection_run IS NULL OR l.last_collection_run < :date)
+          AND l.id BETWEEN :fromId AND :toId
+        ORDER BY l.id
+        """, nativeQuery = true)
+    List<LoanView> findDueLoanViewsInRange(@Param("date") LocalDate date,
+                                           @Param("fromId") UUID fromId,
+                                           @Param("toId") UUID toId);
+
+    // Плащане на вноска: при изплащане -> PAID_OFF, иначе падежът се мести с месец
+    @Modifying
+    @Query(value = """
+        UPDATE loans
+        SET remaining_amount     = GREATEST(remaining_amount - :paid, 0),
+            loan_status          = CASE WHEN remaining_amount - :paid <= 0 THEN 'PAID_OFF' ELSE loan_status END,
+            next_date_of_payment = CASE WHEN remaining_amount - :paid <= 0 THEN next_date_of_payment
+                                        ELSE CAST(next_date_of_payment + INTERVAL '1 month' AS date) END
+        WHERE id = :loanId
+        """, nativeQuery = true)
+    int applyInstallment(@Param("loanId") UUID loanId, @Param("paid") BigDecimal paid);
+
+    @Modifying
+    @Query(value = """
+        UPDATE loans
+        SET missed_payments      = missed_payments + 1,
+            next_date_of_payment = CAST(next_date_of_payment + INTERVAL '1 month' AS date)
+        WHERE id = :loanId
+        """, nativeQuery = true)
+    int recordMissedPayment(@Param("loanId") UUID loanId);
+
+    /*
+     * Отбелязва кредита като обработен от нощното събиране за runDate; 0 = вече е обработен.
+     * Вика се в транзакцията на дебита, така че прекъснат chunk не го таксува повторно.
+     */
+    @Modifying
+    @Query(value = """
+        UPDATE loans
+        SET last_collection_run = :runDate
+        WHERE id = :loanId
+          AND (last_collection_run IS NULL OR last_collection_run < :runDate)
+        """, nativeQuery = true)
+    int claimForCollectionRun(@Param("loanId") UUID loanId, @Param("runDate") LocalDate runDate);
+
+    /*
+     * Събиране на вноските за цял диапазон с една заявка:
+     *  - дебит на сметките, само докато натрупаната сума по сметката се покрива от баланса;
+     *  - събраните кредити се изплащат/преместват с месец, несъбраните получават missed payment.
+     *  - всички обработени кредити получават last_collection_run = :date и не влизат повторно в run-а.
+     * Връща по един ред на падежирал кредит; ledger редовете се записват от извикващия.
+     */
+    @Transactional
+    @Query(value = """
+        WITH due AS (
+            SELECT l.id, l.user_id, l.repayment_account_id AS account_id,
+                   LEAST(l.monthly_payment, l.remaining_amount) AS amount
+            FROM loans l
+            WHERE l.loan_status = 'ACTIVE'
+              AND l.next_date_of_payment <= :date
+              AND (l.last_collection_run IS NULL OR l.last_collection_run < :date)
+              AND l.id BETWEEN :fromId AND :toId
+            FOR UPDATE OF l
+        ),
+        ranked AS (
+            SELECT d.id, d.user_id, d.account_id, d.amount, a.balance,
+                   SUM(d.amount) OVER (PARTITION BY d.account_id ORDER BY d.id) AS running
+            FROM due d
+            JOIN accounts a ON a.id = d.account_id
+            WHERE d.amount > 0
+        ),
+        collectable AS (
+            SELECT id, user_id, account_id, amount FROM ranked WHERE running <= balance
+        ),
+        debited AS (
+            UPDATE accounts a
+            SET balance = a.balance - c.total,
+                version = a.version + 1
+            FROM (SELECT account_id, SUM(amount) AS total FROM collectable GROUP BY account_id) c
+            WHERE a.id = c.account_id
+              AND a.balance >= c.total
+            RETURNING a.id, a.currency_code
+        ),
+        paid AS (
+            SELECT c.id, c.amount, d.currency_code
+            FROM collectable c
+            JOIN debited d ON d.id = c.account_id
+            UNION ALL
+            SELECT d.id, 0, NULL FROM due d WHERE d.amount <= 0
+        ),
+        advanced AS (
+            UPDATE loans l
+            SET remaining_amount     = GREATEST(l.remaining_amount - p.amount, 0),
+                loan_status          = CASE WHEN l.remaining_amount - p.amount <= 0 THEN 'PAID_OFF' ELSE l.loan_status END,
+                next_date_of_payment = CASE WHEN l.remaining_amount - p.amount <= 0 THEN l.next_date_of_payment
+                                            ELSE CAST(l.next_date_of_payment + INTERVAL '1 month' AS date) END,
+                last_collection_run  = :date
+            FROM paid p
+            WHERE l.id = p.id
+            RETURNING l.id
+        ),
+        missed AS (
+            UPDATE loans l
+            SET missed_payments      = l.missed_payments + 1,
+                next_date_of_payment = CAST(l.next_date_of_payment + INTERVAL '1 month' AS date),
+                last_collection_run  = :date
+            FROM due d
+            WHERE l.id = d.id
+              AND NOT EXISTS (SELECT 1 FROM paid p WHERE p.id = d.id)
+            RETURNING l.id
+        )
+        SELECT d.id               AS loanId,
+               d.user_id          AS userId,
+               d.account_id       AS accountId,
+               COALESCE(p.amount, 0) AS amount,
+               p.currency_code    AS currencyCode,
+               (p.id IS NOT NULL) AS collected
+        FROM due d
+        LEFT JOIN paid p ON p.id = d.id
+        """, nativeQuery = true)
+    List<LoanCollectionView> collectDueInstallments(@Param("date") LocalDate date,
+                                                    @Param("fromId") UUID fromId,
+                                                    @Param("toId") UUID toId);
+
+    /*
+     * Входните данни за риск отчета на всички кредитополучатели с една заявка:
+     * приходи/разходи = целите месеци от cash_flow_monthly + непълните краища от transactions
+     * (виж CashFlowRollupService.split). Редовете се четат като stream.
+     */
+    @Query(value = """
+        WITH borrowers AS (
+            SELECT l.user_id,
+                   CASE WHEN SUM(CASE WHEN l.loan_status = 'OVERDUE' OR l.missed_payments > 0 THEN 1 ELSE 0 END) > 0
+                        THEN 'bad' ELSE 'good' END AS credit_status,
+                   COALESCE(SUM(CASE WHEN l.loan_status <> 'PAID_OFF' THEN l.monthly_payment END), 0) AS obligations
+            FROM loans l
+            GROUP BY l.user_id
+        ),
+        flows AS (
+            SELECT c.user_id, c.income_amount AS income, c.expense_amount AS expense
+            FROM cash_flow_monthly c
+            WHERE c.year_month BETWEEN :fromMonth AND :toMonth
+            UNION ALL
+            SELECT t.user_id,
+                   CASE WHEN t.is_income  IS TRUE THEN t.amount ELSE 0 END,
+                   CASE WHEN t.is_expense IS TRUE THEN t.amount ELSE 0 END
+            FROM transactions t
+            WHERE t.transaction_status = 'SUCCEEDED'
+              AND (t.created_on BETWEEN :headStart AND :headEnd
+                   OR t.created_on BETWEEN :tailStart AND :tailEnd)
+        ),
+        totals AS (
+            SELECT user_id, SUM(income) AS income, SUM(expense) AS expense
+            FROM flows
+            GROUP BY user_id
+        )
+        SELECT b.user_id               AS userId,
+               u.declared_income       AS declaredIncome,
+               COALESCE(t.income, 0)   AS income,
+               COALESCE(t.expense, 0)  AS expense,
+               b.obligations           AS obligations,
+               b.credit_status         AS creditStatus
+        FROM borrowers b
+        JOIN users u ON u.id = b.user_id
+        LEFT JOIN totals t ON t.user_id = b.user_id
+        ORDER BY b.user_id
+        """, nativeQuery = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<PortfolioRiskRowView> streamPortfolioRiskRows(@Param("fromMonth") int fromMonth,
+                                                         @Param("toMonth") int toMonth,
+                                                         @Param("headStart") LocalDate headStart,
+                                                         @Param("headEnd") LocalDate headEnd,
+                                                         @Param("tailStart") LocalDate tailStart,
+                                                         @Param("tailEnd") LocalDate tailEnd);
+
     List<Loan> getLoansByUserId(UUID userId);
 
     List<Loan> findAllByLoanStatus(LoanStatus status);
@@ -103,6 +311,20 @@ public interface LoanRepository extends JpaRepository<Loan, UUID> {
         """, nativeQuery = true)
     List<Loan> findAllByRepaymentIban(@Param("iban") String iban);
 
+    // Обобщение на неизплатените кредити на потребител (dashboard read model)
+    @Query(value = """
+        SELECT
+            COUNT(*) AS activeLoans,
+            COALESCE(SUM(CASE WHEN l.loan_status = 'OVERDUE' OR l.missed_payments > 0 THEN 1 ELSE 0 END), 0) AS overdueLoans,
+            COALESCE(SUM(l.remaining_amount), 0) AS outstanding,
+            COALESCE(SUM(l.monthly_payment), 0) AS monthlyObligation,
+            MIN(l.next_date_of_payment) AS nextPaymentDate
+        FROM loans l
+        WHERE l.user_id = :userId
+          AND l.loan_status <> 'PAID_OFF'
+        """, nativeQuery = true)
+    LoanSummaryView getLoanSummaryByUser(@Param("userId") UUID userId);
+
     @Query("SELECT COALESCE(SUM(l.remainingAmount), 0) FROM Loan l WHERE l.user.id = :userId")
     BigDecimal getTotalRemainingByUser(@Param("userId") UUID userId);
 
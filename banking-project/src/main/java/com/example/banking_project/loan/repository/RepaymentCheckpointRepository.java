@@ -0,0 +1,20 @@
+package com.example.banking_project.loan.repository;
+
+import com.example.banking_project.loan.model.RepaymentCheckpoint;
+import com.example.banking_project.loan.model.RepaymentChunkStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface RepaymentCheckpointRepository extends JpaRepository<RepaymentCheckpoint, UUID> {
+
+    List<RepaymentCheckpoint> findAllByRunDateOrderByChunkIndex(LocalDate runDate);
+
+    @Query("SELECT DISTINCT c.runDate FROM RepaymentCheckpoint c WHERE c.status <> :status ORDER BY c.runDate")
+    List<LocalDate> findRunDatesWithStatusNot(RepaymentChunkStatus status);
+}
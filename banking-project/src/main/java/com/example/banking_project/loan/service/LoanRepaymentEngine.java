@@ -0,0 +1,321 @@
+package com.example.banking_project.loan.service;
+
+import com.example.banking_project.account.repository.AccountRepository;
+import com.example.banking_project.loan.event.LoansChangedEvent;
+import com.example.banking_project.loan.model.RepaymentCheckpoint;
+import com.example.banking_project.loan.model.RepaymentChunkStatus;
+import com.example.banking_project.loan.repository.LoanRepository;
+import com.example.banking_project.loan.repository.RepaymentCheckpointRepository;
+import com.example.banking_project.loan.view.LoanCollectionView;
+import com.example.banking_project.loan.view.LoanView;
+import com.example.banking_project.transaction.model.Transaction;
+import com.example.banking_project.transaction.model.TransactionStatus;
+import com.example.banking_project.transaction.model.TransactionType;
+import com.example.banking_project.transaction.service.LedgerWriter;
+import com.example.banking_project.user.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Нощно събиране на вноски по кредити, разделено на диапазони от id-та.
+ *
+ * Падежиралите кредити се разделят на chunk-ове по chunkSize; всеки chunk се обработва
+ * на отделна нишка в собствена транзакция и се отбелязва като DONE в същата транзакция.
+ * Ако chunk-ът гръмне, кредитите му се повтарят един по един, за да не провали
+ * един лош кредит останалите. Прекъснато изпълнение продължава от checkpoint-ите;
+ * всеки кредит получава last_collection_run в транзакцията на дебита си, така че
+ * кредитите, обработени преди прекъсването, не се таксуват отново.
+ *
+ * В режим "bulk" (по подразбиране) chunk-ът се събира с една set-based заявка
+ * (LoanRepository.collectDueInstallments) и ledger редовете се записват с един JDBC batch;
+ * в режим "per-loan" всеки кредит минава през отделни заявки.
+ */
+@Slf4j
+@Component
+public class LoanRepaymentEngine {
+
+    private final LoanRepository loanRepository;
+    private final RepaymentCheckpointRepository checkpointRepository;
+    private final AccountRepository accountRepository;
+    private final UserRepository userRepository;
+    private final LedgerWriter ledgerWriter;
+    private final RiskFeatureService riskFeatureService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final int chunkSize;
+    private final boolean bulkMode;
+    private final ExecutorService workers;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public LoanRepaymentEngine(LoanRepository loanRepository,
+                               RepaymentCheckpointRepository checkpointRepository,
+                               AccountRepository accountRepository,
+                               UserRepository userRepository,
+                               LedgerWriter ledgerWriter,
+                               RiskFeatureService riskFeatureService,
+                               PlatformTransactionManager transactionManager,
+                               ApplicationEventPublisher eventPublisher,
+                               @Value("${loan.repayment.chunk-size:500}") int chunkSize,
+                               @Value("${loan.repayment.threads:4}") int threads,
+                               @Value("${loan.repayment.mode:bulk}") String mode) {
+        this.loanRepository = loanRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.accountRepository = accountRepository;
+        this.userRepository = userRepository;
+        this.ledgerWriter = ledgerWriter;
+        this.riskFeatureService = riskFeatureService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.chunkSize = chunkSize;
+        this.bulkMode = "bulk".equalsIgnoreCase(mode);
+        AtomicInteger n = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "loan-repayment-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    // недовършено изпълнение (напр. рестарт по време на нощния run) се довършва при старт
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeIncompleteRuns() {
+        List<LocalDate> runDates = checkpointRepository.findRunDatesWithStatusNot(RepaymentChunkStatus.DONE);
+        if (runDates.isEmpty()) return;
+
+        Thread resume = new Thread(() -> runDates.forEach(this::run), "loan-repayment-resume");
+        resume.setDaemon(true);
+        resume.start();
+    }
+
+    public RunResult run(LocalDate runDate) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Loan repayment run for {} skipped: another run is in progress", runDate);
+            return RunResult.empty(runDate);
+        }
+        try {
+            return doRun(runDate);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private RunResult doRun(LocalDate runDate) {
+        long start = System.nanoTime();
+
+        List<RepaymentCheckpoint> chunks = checkpointRepository.findAllByRunDateOrderByChunkIndex(runDate);
+        if (chunks.isEmpty()) {
+            chunks = plan(runDate);
+        }
+        List<RepaymentCheckpoint> pending = chunks.stream()
+                .filter(c -> c.getStatus() != RepaymentChunkStatus.DONE)
+                .toList();
+        if (pending.isEmpty()) {
+            return RunResult.empty(runDate);
+        }
+
+        List<CompletableFuture<ChunkResult>> futures = new ArrayList<>(pending.size());
+        for (RepaymentCheckpoint chunk : pending) {
+            futures.add(CompletableFuture.supplyAsync(() -> processChunk(runDate, chunk), workers));
+        }
+        List<ChunkResult> results = futures.stream().map(CompletableFuture::join).toList();
+
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        int processed = results.stream().mapToInt(ChunkResult::processed).sum();
+        int failed = results.stream().mapToInt(ChunkResult::failed).sum();
+        long[] latencies = results.stream().mapToLong(ChunkResult::durationMs).sorted().toArray();
+        double perSecond = elapsedMs > 0 ? processed * 1000.0 / elapsedMs : processed;
+
+        log.info("Loan repayment run {}: {} loans in {} chunks, {} failed, {} ms ({} loans/s), chunk latency p50={} ms max={} ms",
+                runDate, processed, results.size(), failed, elapsedMs, String.format("%.1f", perSecond),
+                latencies[latencies.length / 2], latencies[latencies.length - 1]);
+
+        return new RunResult(runDate, results.size(), processed, failed, elapsedMs);
+    }
+
+    // Разделя падежиралите кредити на диапазони [from, to] по id и записва checkpoint-ите
+    private List<RepaymentCheckpoint> plan(LocalDate runDate) {
+        List<UUID> ids = loanRepository.findDueLoanIds(runDate);
+        List<RepaymentCheckpoint> chunks = new ArrayList<>();
+        for (int from = 0, index = 0; from < ids.size(); from += chunkSize, index++) {
+            int to = Math.min(from + chunkSize, ids.size()) - 1;
+            chunks.add(RepaymentCheckpoint.builder()
+                    .runDate(runDate)
+                    .chunkIndex(index)
+                    .fromLoanId(ids.get(from))
+                    .toLoanId(ids.get(to))
+                    .status(RepaymentChunkStatus.PENDING)
+                    .updatedAt(LocalDateTime.now())
+                    .build());
+        }
+        return checkpointRepository.saveAll(chunks);
+    }
+
+    private ChunkResult processChunk(LocalDate runDate, RepaymentCheckpoint chunk) {
+        long start = System.nanoTime();
+        ChunkResult result;
+        try {
+            result = transactionTemplate.execute(status -> {
+                int processed = bulkMode ? collectChunk(runDate, chunk) : processChunkLoanByLoan(runDate, chunk);
+                ChunkResult done = new ChunkResult(processed, 0, elapsedMs(start));
+                markDone(chunk, done);
+                return done;
+            });
+        } catch (RuntimeException chunkError) {
+            log.warn("Repayment chunk {} of {} failed ({}), retrying loan by loan",
+                    chunk.getChunkIndex(), runDate, chunkError.getMessage());
+            result = processLoanByLoan(runDate, chunk, start);
+        }
+        log.debug("Repayment chunk {} of {}: {} loans, {} failed, {} ms",
+                chunk.getChunkIndex(), runDate, result.processed(), result.failed(), result.durationMs());
+        return result;
+    }
+
+    private int processChunkLoanByLoan(LocalDate runDate, RepaymentCheckpoint chunk) {
+        List<LoanView> loans = loanRepository.findDueLoanViewsInRange(
+                runDate, chunk.getFromLoanId(), chunk.getToLoanId());
+        loans.forEach(view -> processLoan(runDate, view));
+        return loans.size();
+    }
+
+    // една заявка за дебити + кредити, после един batch за transactions/expense
+    private int collectChunk(LocalDate runDate, RepaymentCheckpoint chunk) {
+        List<LoanCollectionView> rows = loanRepository.collectDueInstallments(
+                runDate, chunk.getFromLoanId(), chunk.getToLoanId());
+
+        List<Transaction> ledger = new ArrayList<>(rows.size());
+        Set<UUID> users = new HashSet<>();
+        Set<UUID> changed = new HashSet<>();
+        for (LoanCollectionView row : rows) {
+            // и пропуснатата вноска променя кредита
+            changed.add(row.getUserId());
+            if (!Boolean.TRUE.equals(row.getCollected()) || row.getAmount().signum() <= 0) continue;
+            ledger.add(installmentTransaction(runDate, row.getLoanId(), row.getAccountId(), row.getUserId(),
+                    row.getAmount(), row.getCurrencyCode()));
+            users.add(row.getUserId());
+        }
+        if (!ledger.isEmpty()) {
+            ledgerWriter.writeAll(ledger);
+        }
+        users.forEach(riskFeatureService::evict);
+        if (!changed.isEmpty()) {
+            eventPublisher.publishEvent(new LoansChangedEvent(changed));
+        }
+        return rows.size();
+    }
+
+    private ChunkResult processLoanByLoan(LocalDate runDate, RepaymentCheckpoint chunk, long start) {
+        List<LoanView> loans = loanRepository.findDueLoanViewsInRange(
+                runDate, chunk.getFromLoanId(), chunk.getToLoanId());
+        int failed = 0;
+        for (LoanView view : loans) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> processLoan(runDate, view));
+            } catch (RuntimeException e) {
+                failed++;
+                log.error("Repayment failed for loan {}: {}", view.getId(), e.getMessage(), e);
+            }
+        }
+        ChunkResult result = new ChunkResult(loans.size() - failed, failed, elapsedMs(start));
+        transactionTemplate.executeWithoutResult(status -> markDone(chunk, result));
+        return result;
+    }
+
+    private void processLoan(LocalDate runDate, LoanView view) {
+        UUID loanId = view.getId();
+        // вече обработен в този run (напр. преди рестарт по средата на chunk-а)
+        if (loanRepository.claimForCollectionRun(loanId, runDate) == 0) {
+            return;
+        }
+        // доставя се след commit на транзакцията, в която се обработва кредитът
+        eventPublisher.publishEvent(new LoansChangedEvent(List.of(view.getUserId())));
+        BigDecimal amountToDebit = view.getMonthlyPayment().min(view.getRemainingAmount());
+        if (amountToDebit.compareTo(BigDecimal.ZERO) <= 0) {
+            loanRepository.applyInstallment(loanId, BigDecimal.ZERO);
+            return;
+        }
+
+        String iban = view.getRepaymentIban();
+        if (iban == null) {
+            throw new ResourceNotFoundException("Repayment account not found for loan " + loanId);
+        }
+
+        // условен UPDATE: празен резултат = недостатъчна наличност, без изключение в транзакцията
+        if (accountRepository.debitIfSufficient(iban, amountToDebit).isEmpty()) {
+            loanRepository.recordMissedPayment(loanId);
+            log.warn("Insufficient funds for loan {} (acc {}): needed {}", loanId, iban, amountToDebit);
+            return;
+        }
+
+        ledgerWriter.write(installmentTransaction(runDate, loanId, view.getRepaymentAccountId(), view.getUserId(),
+                amountToDebit, view.getRepaymentCurrencyCode()));
+        loanRepository.applyInstallment(loanId, amountToDebit);
+        riskFeatureService.evict(view.getUserId());
+    }
+
+    // датата на run-а, не днешната - продължен или минал през полунощ run остава в своя ден и месец
+    private Transaction installmentTransaction(LocalDate runDate, UUID loanId, UUID accountId, UUID userId,
+                                               BigDecimal amount, String currencyCode) {
+        return Transaction.builder()
+                .amount(amount)
+                .createdOn(runDate)
+                .currency(Currency.getInstance(currencyCode != null ? currencyCode : "BGN"))
+                .description("Loan monthly installment for loan " + loanId)
+                .transactionStatus(TransactionStatus.SUCCEEDED)
+                .account(accountRepository.getReferenceById(accountId))
+                .user(userRepository.getReferenceById(userId))
+                .isExpense(true)
+                .isIncome(false)
+                .transactionType(TransactionType.WITHDRAWAL)
+                .build();
+    }
+
+    private void markDone(RepaymentCheckpoint chunk, ChunkResult result) {
+        chunk.setStatus(RepaymentChunkStatus.DONE);
+        chunk.setProcessed(result.processed());
+        chunk.setFailed(result.failed());
+        chunk.setDurationMs(result.durationMs());
+        chunk.setUpdatedAt(LocalDateTime.now());
+        checkpointRepository.save(chunk);
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private record ChunkResult(int processed, int failed, long durationMs) {}
+
+    public record RunResult(LocalDate runDate, int chunks, int processed, int failed, long elapsedMs) {
+        static RunResult empty(LocalDate runDate) {
+            return new RunResult(runDate, 0, 0, 0, 0);
+        }
+    }
+}
@@ -1,9 +1,5 @@
 package com.example.banking_project.loan.service;
 
-import com.example.banking_project.loan.repository.LoanRepository;
-import com.example.banking_project.loan.view.CreditHistoryView;
-import com.example.banking_project.transaction.service.ExpenseService;
-import com.example.banking_project.transaction.service.IncomeService;
 import com.example.banking_project.web.dto.LoanRequest;
 import com.example.banking_project.web.dto.LoanRiskResult;
 import lombok.RequiredArgsConstructor;
@@ -11,17 +7,19 @@ import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.UUID;
 
 @Component
 @RequiredArgsConstructor
 public class LoanRiskEngine {
 
-    private final LoanRepository loanRepository;
-    private final IncomeService incomeService;
-    private final ExpenseService expenseService;
+    private final RiskFeatureService riskFeatureService;
 
     public LoanRiskResult assess(LoanRequest request) {
+        return assess(request, riskFeatureService.snapshot(request.getUserId()));
+    }
+
+    // Чиста оценка върху вече заредения snapshot - без заявки към базата
+    public LoanRiskResult assess(LoanRequest request, RiskFeatureSnapshot features) {
         final BigDecimal INC_1500 = new BigDecimal("1500");
         final BigDecimal INC_3000 = new BigDecimal("3000");
         final BigDecimal INC_5000 = new BigDecimal("5000");
@@ -52,7 +50,7 @@ public class LoanRiskEngine {
 
         int score = 0;
 
-        String creditHistory = creditHistoryEvaluation(request.getUserId());
+        String creditHistory = features.creditHistory();
         if ("good".equalsIgnoreCase(creditHistory)) {
             score += PTS_CREDIT_GOOD;
         } else if ("neutral".equalsIgnoreCase(creditHistory)) {
@@ -70,8 +68,8 @@ public class LoanRiskEngine {
             score += PTS_DECL_LT_1_5K;
         }
 
-        BigDecimal realIncome    = nvl(incomeService.getIncomeForLastMonths(request.getUserId(), 6));
-        BigDecimal totalExpenses = nvl(expenseService.getExpensesForLastMonths(request.getUserId(), 6));
+        BigDecimal realIncome    = nvl(features.realIncome());
+        BigDecimal totalExpenses = nvl(features.totalExpenses());
         if (realIncome.compareTo(BigDecimal.ZERO) == 0) {
             score += PEN_NO_REAL_INCOME_6M;
         }
@@ -137,12 +135,6 @@ public class LoanRiskEngine {
                 .build();
     }
 
-    private String creditHistoryEvaluation(UUID userId) {
-        CreditHistoryView view = loanRepository.getCreditHistoryByUserId(userId);
-        if (view == null || view.getCreditStatus() == null) return "neutral";
-        return view.getCreditStatus();
-    }
-
     private static BigDecimal nvl(BigDecimal x) {
         return x == null ? BigDecimal.ZERO : x;
     }
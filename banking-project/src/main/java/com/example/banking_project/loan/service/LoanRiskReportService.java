@@ -1,44 +1,55 @@
 package com.example.banking_project.loan.service;
 
 import com.example.banking_project.loan.repository.LoanRepository;
-import com.example.banking_project.loan.view.CreditHistoryView;
-import com.example.banking_project.transaction.service.ExpenseService;
-import com.example.banking_project.transaction.service.IncomeService;
-import com.example.banking_project.user.service.UserService;
+import com.example.banking_project.loan.view.PortfolioRiskRowView;
+import com.example.banking_project.transaction.service.CashFlowRollupService;
 import com.example.banking_project.web.dto.LoanRequest;
 import com.example.banking_project.web.dto.LoanRiskReportData;
 import com.example.banking_project.web.dto.LoanRiskResult;
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Font;
+import com.itextpdf.text.PageSize;
 import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.Phrase;
 import com.itextpdf.text.pdf.PdfPTable;
 import com.itextpdf.text.pdf.PdfWriter;
 import lombok.RequiredArgsConstructor;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class LoanRiskReportService {
 
-    private final IncomeService incomeService;
-    private final ExpenseService expenseService;
-    private final UserService userService;
-    private final LoanRepository loanRepository;
+    private static final int EXCEL_ROW_WINDOW = 100;
+    private static final int PDF_FLUSH_ROWS = 500;
+    private static final String[] PORTFOLIO_COLUMNS = {
+            "User ID", "Declared Income", "Real Income (6 months)", "Total Expenses (6 months)",
+            "Average Net Income", "Obligations", "DTI", "Credit History", "Score", "Risk Class", "Recommendation"
+    };
+
+    private final RiskFeatureService riskFeatureService;
     private final LoanRiskEngine loanRiskEngine;
+    private final LoanRepository loanRepository;
 
     public byte[] generatePdf(LoanRiskReportData data) throws IOException, DocumentException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -107,10 +118,127 @@ public class LoanRiskReportService {
     }
 
     public LoanRiskReportData prepareData(UUID userId) {
-        BigDecimal declaredIncome = nvl(userService.findUserById(userId).getDeclaredIncome());
-        BigDecimal monthlyIncome = nvl(incomeService.getIncomeForLastMonths(userId, 6));
-        BigDecimal monthlyExpenses = nvl(expenseService.getExpensesForLastMonths(userId, 6));
-        BigDecimal obligations = nvl(loanRepository.getMonthlyObligations(userId));
+        // всички входни данни идват от един паралелно зареден snapshot
+        return toReportData(riskFeatureService.snapshot(userId));
+    }
+
+    // ===== Отчет за целия портфейл: редовете се стриймват от базата директно към изхода =====
+
+    @Transactional(readOnly = true)
+    public void writePortfolioExcel(OutputStream out) throws IOException {
+        // в паметта се държат само последните EXCEL_ROW_WINDOW реда, останалите са във временен файл
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXCEL_ROW_WINDOW);
+        try {
+            Sheet sheet = workbook.createSheet("Loan Risk Portfolio");
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < PORTFOLIO_COLUMNS.length; i++) {
+                header.createCell(i).setCellValue(PORTFOLIO_COLUMNS[i]);
+            }
+
+            int[] rowIdx = {1};
+            streamPortfolio(data -> {
+                Row row = sheet.createRow(rowIdx[0]++);
+                Object[] values = portfolioValues(data);
+                for (int i = 0; i < values.length; i++) {
+                    Object v = values[i];
+                    if (v instanceof BigDecimal n) {
+                        row.createCell(i).setCellValue(n.doubleValue());
+                    } else if (v instanceof Integer n) {
+                        row.createCell(i).setCellValue(n);
+                    } else {
+                        row.createCell(i).setCellValue(v != null ? v.toString() : "N/A");
+                    }
+                }
+            });
+
+            workbook.write(out);
+        } finally {
+            workbook.close();
+            workbook.dispose();
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void writePortfolioPdf(OutputStream out) throws IOException, DocumentException {
+        Document document = new Document(PageSize.A4.rotate());
+        PdfWriter.getInstance(document, out);
+        document.open();
+
+        Font titleFont = new Font(Font.FontFamily.HELVETICA, 16, Font.BOLD);
+        document.add(new Paragraph("Loan Risk Portfolio Report", titleFont));
+        document.add(new Paragraph("Generated on: " + LocalDate.now()));
+        document.add(new Paragraph(" "));
+
+        // непълна таблица: всеки document.add() записва готовите редове и ги освобождава
+        PdfPTable table = new PdfPTable(PORTFOLIO_COLUMNS.length);
+        table.setWidthPercentage(100);
+        table.setComplete(false);
+        table.setHeaderRows(1);
+        Font cellFont = new Font(Font.FontFamily.HELVETICA, 7);
+        for (String column : PORTFOLIO_COLUMNS) {
+            table.addCell(new Phrase(column, cellFont));
+        }
+
+        int[] rows = {0};
+        streamPortfolio(data -> {
+            for (Object v : portfolioValues(data)) {
+                table.addCell(new Phrase(v != null ? v.toString() : "N/A", cellFont));
+            }
+            if (++rows[0] % PDF_FLUSH_ROWS == 0) {
+                addToDocument(document, table);
+            }
+        });
+
+        table.setComplete(true);
+        document.add(table);
+        document.close();
+    }
+
+    private void streamPortfolio(Consumer<LoanRiskReportData> consumer) {
+        CashFlowRollupService.MonthSplit window = CashFlowRollupService.split(
+                LocalDate.now().minusMonths(RiskFeatureService.HISTORY_MONTHS), LocalDate.now());
+        try (Stream<PortfolioRiskRowView> rows = loanRepository.streamPortfolioRiskRows(
+                window.fromMonth(), window.toMonth(),
+                window.headStart(), window.headEnd(),
+                window.tailStart(), window.tailEnd())) {
+            rows.forEach(row -> consumer.accept(toReportData(new RiskFeatureSnapshot(
+                    row.getUserId(),
+                    nvl(row.getDeclaredIncome()),
+                    nvl(row.getIncome()),
+                    nvl(row.getExpense()),
+                    nvl(row.getObligations()),
+                    row.getCreditStatus(),
+                    Instant.now()))));
+        }
+    }
+
+    private static Object[] portfolioValues(LoanRiskReportData data) {
+        return new Object[]{
+                data.getUserId(), data.getDeclaredIncome(), data.getCalculatedMonthlyIncome(),
+                data.getCalculatedMonthlyExpenses(), data.getAvailableIncome(), data.getObligations(),
+                data.getDti(), data.getCreditHistory(), data.getScore(), data.getRiskClass(),
+                data.getRecommendation()
+        };
+    }
+
+    private static void addToDocument(Document document, PdfPTable table) {
+        try {
+            document.add(table);
+        } catch (DocumentException e) {
+            throw new IllegalStateException("PDF generation failed", e);
+        }
+    }
+
+    private static BigDecimal nvl(BigDecimal x) {
+        return x == null ? BigDecimal.ZERO : x;
+    }
+
+    private LoanRiskReportData toReportData(RiskFeatureSnapshot features) {
+        UUID userId = features.userId();
+        BigDecimal declaredIncome = features.declaredIncome();
+        BigDecimal monthlyIncome = features.realIncome();
+        BigDecimal monthlyExpenses = features.totalExpenses();
+        BigDecimal obligations = features.monthlyObligations();
 
         BigDecimal dti = BigDecimal.ZERO;
         if (declaredIncome.compareTo(BigDecimal.ZERO) > 0) {
@@ -118,7 +246,7 @@ public class LoanRiskReportService {
         }
 
         BigDecimal availableIncome = monthlyIncome.subtract(monthlyExpenses);
-        String creditHistory = creditHistoryEvaluation(userId);
+        String creditHistory = features.creditHistory();
 
         // Оценката минава през LoanRiskEngine – НЕ през LoanService
         LoanRequest request = LoanRequest.builder()
@@ -132,7 +260,7 @@ public class LoanRiskReportService {
                 .totalAmount(BigDecimal.ZERO)
                 .build();
 
-        LoanRiskResult result = loanRiskEngine.assess(request);
+        LoanRiskResult result = loanRiskEngine.assess(request, features);
 
         return LoanRiskReportData.builder()
                 .userId(userId)
@@ -149,13 +277,4 @@ public class LoanRiskReportService {
                 .generatedOn(LocalDate.now())
                 .build();
     }
-
-    private String creditHistoryEvaluation(UUID userId) {
-        CreditHistoryView view = loanRepository.getCreditHistoryByUserId(userId);
-        return (view == null || view.getCreditStatus() == null) ? "neutral" : view.getCreditStatus();
-    }
-
-    private static BigDecimal nvl(BigDecimal x) {
-        return x == null ? BigDecimal.ZERO : x;
-    }
 }
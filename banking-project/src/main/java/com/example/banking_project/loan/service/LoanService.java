@@ -8,6 +8,7 @@ import com.example.banking_project.web.dto.LoanRequest;
 import com.example.banking_project.web.dto.LoanRiskResult;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
@@ -23,6 +24,8 @@ public interface LoanService {
 
     byte[] generatePdfReport(UUID userId);
     byte[] generateExcelReport(UUID userId);
+    void writePortfolioPdfReport(OutputStream out);
+    void writePortfolioExcelReport(OutputStream out);
 
     BigDecimal getMonthlyObligation(UUID userId);
     BigDecimal getMonthlyObligationByLoanId(UUID loanId);
@@ -2,8 +2,10 @@ package com.example.banking_project.loan.service;
 
 import com.example.banking_project.account.model.Account;
 import com.example.banking_project.account.service.AccountService;
+import com.example.banking_project.loan.event.LoansChangedEvent;
 import com.example.banking_project.loan.model.Loan;
 import com.example.banking_project.loan.model.LoanStatus;
+import com.example.banking_project.loan.model.ReportFormat;
 import com.example.banking_project.loan.repository.LoanRepository;
 import com.example.banking_project.loan.validation.LoanValidationService;
 import com.example.banking_project.loan.view.CreditHistoryView;
@@ -12,13 +14,14 @@ import com.example.banking_project.user.model.User;
 import com.example.banking_project.user.service.UserService;
 import com.example.banking_project.web.dto.LoanApplicationResponse;
 import com.example.banking_project.web.dto.LoanRequest;
-import com.example.banking_project.web.dto.LoanRiskReportData;
 import com.example.banking_project.web.dto.LoanRiskResult;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
@@ -34,7 +37,10 @@ public class LoanServiceImpl implements LoanService {
     private final LoanRepository loanRepository;
     private final LoanRiskReportService riskReportService;
     private final LoanRiskEngine loanRiskEngine;
+    private final RiskFeatureService riskFeatureService;
+    private final ReportJobService reportJobService;
     private final AccountService accountService;
+    private final ApplicationEventPublisher eventPublisher;
     private final UserService userService;
     private final LoanValidationService loanValidationService;
 
@@ -73,6 +79,8 @@ public class LoanServiceImpl implements LoanService {
                 userId, monthlyPayment, months);
 
         accountService.createCreditAccount(request, userId);
+        riskFeatureService.evict(userId);
+        eventPublisher.publishEvent(new LoansChangedEvent(List.of(userId)));
         return saved;
     }
 
@@ -121,18 +129,27 @@ public class LoanServiceImpl implements LoanService {
         return view == null ? "neutral" : view.getCreditStatus();
     }
 
+    // минава през ReportJobService: кеш на диска + ограничен брой паралелни рендирания
     @Override
     public byte[] generatePdfReport(UUID userId) {
-        LoanRiskReportData data = riskReportService.prepareData(userId);
-        try { return riskReportService.generatePdf(data); }
-        catch (Exception e) { log.error("Failed to generate PDF loan report: {}", e.getMessage()); throw new RuntimeException("PDF generation failed", e); }
+        return reportJobService.render(userId, ReportFormat.PDF);
     }
 
     @Override
     public byte[] generateExcelReport(UUID userId) {
-        LoanRiskReportData data = riskReportService.prepareData(userId);
-        try { return riskReportService.generateExcel(data); }
-        catch (Exception e) { log.error("Failed to generate Excel loan report: {}", e.getMessage()); throw new RuntimeException("Excel generation failed", e); }
+        return reportJobService.render(userId, ReportFormat.EXCEL);
+    }
+
+    @Override
+    public void writePortfolioPdfReport(OutputStream out) {
+        try { riskReportService.writePortfolioPdf(out); }
+        catch (Exception e) { log.error("Failed to generate PDF portfolio report: {}", e.getMessage()); throw new RuntimeException("PDF generation failed", e); }
+    }
+
+    @Override
+    public void writePortfolioExcelReport(OutputStream out) {
+        try { riskReportService.writePortfolioExcel(out); }
+        catch (Exception e) { log.error("Failed to generate Excel portfolio report: {}", e.getMessage()); throw new RuntimeException("Excel generation failed", e); }
     }
 
     @Override public BigDecimal getMonthlyObligation(UUID userId) { return loanRepository.getMonthlyObligations(userId); }
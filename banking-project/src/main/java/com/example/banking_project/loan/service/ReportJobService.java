@@ -0,0 +1,283 @@
+package com.example.banking_project.loan.service;
+
+import com.example.banking_project.exception.BusinessRuleViolationException;
+import com.example.banking_project.loan.model.ReportFormat;
+import com.example.banking_project.loan.model.ReportJobStatus;
+import com.example.banking_project.web.dto.LoanRiskReportData;
+import com.example.banking_project.web.dto.ReportJobResponse;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Асинхронно генериране на риск отчетите (PDF/Excel).
+ *
+ * Готовите файлове се пазят на диска по (userId, SHA-256 на данните), така че еднакъв отчет
+ * се връща от кеша без ново рендиране. Еднакви заявки получават същия job - и докато отчетът
+ * още се генерира, и след това, докато job-ът не изтече - така повторните сваляния не трупат нови. Рендирането върви на ограничен executor (max-concurrent нишки,
+ * ограничена опашка) - при пълна опашка заявката се отказва вместо да натоварва CPU-то.
+ */
+@Slf4j
+@Service
+public class ReportJobService {
+
+    private final LoanRiskReportService reportService;
+    private final Path cacheDir;
+    private final long jobTtlMs;
+    private final long fileTtlMs;
+    private final long syncTimeoutMs;
+    private final ThreadPoolExecutor renderExecutor;
+
+    private final Map<UUID, ReportJob> jobs = new ConcurrentHashMap<>();
+    // по един job на (userId, fingerprint, format): текущ или вече готов
+    private final Map<String, ReportJob> jobsByKey = new ConcurrentHashMap<>();
+
+    public ReportJobService(LoanRiskReportService reportService,
+                            @Value("${loan.report.cache-dir:${java.io.tmpdir}/banking-reports}") String cacheDir,
+                            @Value("${loan.report.max-concurrent:2}") int maxConcurrent,
+                            @Value("${loan.report.queue-capacity:50}") int queueCapacity,
+                            @Value("${loan.report.job-ttl-ms:3600000}") long jobTtlMs,
+                            @Value("${loan.report.file-ttl-ms:86400000}") long fileTtlMs,
+                            @Value("${loan.report.sync-timeout-ms:60000}") long syncTimeoutMs) {
+        this.reportService = reportService;
+        this.cacheDir = Path.of(cacheDir);
+        this.jobTtlMs = jobTtlMs;
+        this.fileTtlMs = fileTtlMs;
+        this.syncTimeoutMs = syncTimeoutMs;
+        AtomicInteger n = new AtomicInteger();
+        this.renderExecutor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "report-render-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderExecutor.shutdownNow();
+    }
+
+    public ReportJobResponse submit(UUID userId, ReportFormat format) {
+        return toResponse(start(userId, format));
+    }
+
+    public ReportJobResponse status(UUID jobId) {
+        return toResponse(getJob(jobId));
+    }
+
+    public ReportArtifact download(UUID jobId) {
+        ReportJob job = getJob(jobId);
+        if (job.status == ReportJobStatus.FAILED) {
+            throw new BusinessRuleViolationException("Report generation failed: " + job.error);
+        }
+        if (job.status != ReportJobStatus.DONE || !Files.exists(job.path)) {
+            throw new BusinessRuleViolationException("Report is not ready yet.");
+        }
+        return new ReportArtifact(job.path, job.format, job.userId);
+    }
+
+    /** За синхронните endpoint-и: минава през същия кеш и същия лимит на рендиране. */
+    public byte[] render(UUID userId, ReportFormat format) {
+        ReportJob job = start(userId, format);
+        try {
+            return Files.readAllBytes(job.result.get(syncTimeoutMs, TimeUnit.MILLISECONDS));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Report generation timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Report generation interrupted", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ReportJob start(UUID userId, ReportFormat format) {
+        LoanRiskReportData data = reportService.prepareData(userId);
+        String fingerprint = fingerprint(format, data);
+        Path path = cacheDir.resolve(userId.toString()).resolve(fingerprint + "." + format.getExtension());
+        String key = userId + "/" + fingerprint + "/" + format;
+
+        ReportJob existing = jobsByKey.get(key);
+        if (existing != null) {
+            if (isReusable(existing)) return existing;
+            // провален job или изтрит файл - започваме наново
+            jobsByKey.remove(key, existing);
+        }
+
+        boolean cached = Files.exists(path);
+        ReportJob job = new ReportJob(key, userId, format, path, cached);
+        if (cached) {
+            job.complete();
+        }
+        existing = jobsByKey.putIfAbsent(key, job);
+        if (existing != null) {
+            return existing;
+        }
+
+        jobs.put(job.id, job);
+        if (cached) {
+            return job;
+        }
+        try {
+            renderExecutor.execute(() -> renderJob(job, data));
+        } catch (RejectedExecutionException e) {
+            jobsByKey.remove(key, job);
+            jobs.remove(job.id);
+            throw new BusinessRuleViolationException("Too many report jobs in progress, try again later.");
+        }
+        return job;
+    }
+
+    private static boolean isReusable(ReportJob job) {
+        return switch (job.status) {
+            case QUEUED, RUNNING -> true;
+            case DONE -> Files.exists(job.path);
+            case FAILED -> false;
+        };
+    }
+
+    private void renderJob(ReportJob job, LoanRiskReportData data) {
+        job.status = ReportJobStatus.RUNNING;
+        try {
+            byte[] bytes = job.format == ReportFormat.PDF
+                    ? reportService.generatePdf(data)
+                    : reportService.generateExcel(data);
+            write(job.path, bytes);
+            job.complete();
+        } catch (Exception e) {
+            log.error("Report job {} for user {} failed: {}", job.id, job.userId, e.getMessage(), e);
+            job.fail(e);
+            jobsByKey.remove(job.key, job);
+        }
+    }
+
+    // записва във временен файл и го преименува, за да не се чете наполовина записан отчет
+    private static void write(Path path, byte[] bytes) throws IOException {
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.createTempFile(path.getParent(), "report-", ".tmp");
+        Files.write(tmp, bytes);
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${loan.report.cleanup-ms:600000}")
+    public void cleanup() {
+        LocalDateTime jobCutoff = LocalDateTime.now().minus(Duration.ofMillis(jobTtlMs));
+        jobs.values().removeIf(j -> j.result.isDone() && j.createdAt.isBefore(jobCutoff));
+        jobsByKey.values().removeIf(j -> j.result.isDone() && j.createdAt.isBefore(jobCutoff));
+
+        if (!Files.isDirectory(cacheDir)) return;
+        Instant fileCutoff = Instant.now().minusMillis(fileTtlMs);
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            files.filter(Files::isRegularFile).forEach(f -> {
+                try {
+                    if (Files.getLastModifiedTime(f).toInstant().isBefore(fileCutoff)) {
+                        Files.deleteIfExists(f);
+                    }
+                } catch (IOException e) {
+                    log.warn("Cannot delete cached report {}: {}", f, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Report cache cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    private ReportJob getJob(UUID jobId) {
+        ReportJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new ResourceNotFoundException("Report job not found");
+        }
+        return job;
+    }
+
+    private static String fingerprint(ReportFormat format, LoanRiskReportData data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest((format + "|" + data).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ReportJobResponse toResponse(ReportJob job) {
+        return ReportJobResponse.builder()
+                .jobId(job.id)
+                .userId(job.userId)
+                .format(job.format)
+                .status(job.status)
+                .cached(job.cached)
+                .error(job.error)
+                .createdAt(job.createdAt)
+                .build();
+    }
+
+    public record ReportArtifact(Path path, ReportFormat format, UUID userId) {}
+
+    private static final class ReportJob {
+        final UUID id = UUID.randomUUID();
+        final String key;
+        final UUID userId;
+        final ReportFormat format;
+        final Path path;
+        final boolean cached;
+        final LocalDateTime createdAt = LocalDateTime.now();
+        final CompletableFuture<Path> result = new CompletableFuture<>();
+        volatile ReportJobStatus status = ReportJobStatus.QUEUED;
+        volatile String error;
+
+        ReportJob(String key, UUID userId, ReportFormat format, Path path, boolean cached) {
+            this.key = key;
+            this.userId = userId;
+            this.format = format;
+            this.path = path;
+            this.cached = cached;
+        }
+
+        void complete() {
+            status = ReportJobStatus.DONE;
+            result.complete(path);
+        }
+
+        void fail(Exception e) {
+            error = e.getMessage();
+            status = ReportJobStatus.FAILED;
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.banking_project.loan.service;
+
+import com.example.banking_project.loan.repository.LoanRepository;
+import com.example.banking_project.loan.view.CreditHistoryView;
+import com.example.banking_project.transaction.service.CashFlowRollupService;
+import com.example.banking_project.user.service.UserService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Зарежда RiskFeatureSnapshot: заявките към users, loans и cash-flow rollup-а вървят
+ * паралелно, а резултатът се кешира за кратко по потребител, така че отчет + оценка
+ * струват едно зареждане.
+ */
+@Component
+public class RiskFeatureService {
+
+    static final int HISTORY_MONTHS = 6;
+
+    private final UserService userService;
+    private final LoanRepository loanRepository;
+    private final CashFlowRollupService cashFlowRollupService;
+
+    private final Cache<UUID, RiskFeatureSnapshot> snapshots;
+    private final ExecutorService fetchExecutor;
+
+    public RiskFeatureService(UserService userService,
+                              LoanRepository loanRepository,
+                              CashFlowRollupService cashFlowRollupService,
+                              @Value("${loan.risk.snapshot-ttl-ms:30000}") long ttlMs,
+                              @Value("${loan.risk.fetch-threads:8}") int fetchThreads) {
+        this.userService = userService;
+        this.loanRepository = loanRepository;
+        this.cashFlowRollupService = cashFlowRollupService;
+        this.snapshots = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+        AtomicInteger n = new AtomicInteger();
+        this.fetchExecutor = Executors.newFixedThreadPool(fetchThreads, r -> {
+            Thread t = new Thread(r, "risk-features-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    public RiskFeatureSnapshot snapshot(UUID userId) {
+        return snapshots.get(userId, this::load);
+    }
+
+    /** Извиква се, когато задълженията на потребителя се променят (нов или изплатен кредит). */
+    public void evict(UUID userId) {
+        snapshots.invalidate(userId);
+    }
+
+    private RiskFeatureSnapshot load(UUID userId) {
+        LocalDate end = LocalDate.now();
+        LocalDate start = end.minusMonths(HISTORY_MONTHS);
+
+        CompletableFuture<BigDecimal> declaredIncome = CompletableFuture.supplyAsync(
+                () -> nvl(userService.findUserById(userId).getDeclaredIncome()), fetchExecutor);
+        CompletableFuture<CashFlowRollupService.Totals> cashFlow = CompletableFuture.supplyAsync(
+                () -> cashFlowRollupService.totalsByUser(userId, start, end), fetchExecutor);
+        CompletableFuture<BigDecimal> obligations = CompletableFuture.supplyAsync(
+                () -> nvl(loanRepository.getMonthlyObligations(userId)), fetchExecutor);
+        CompletableFuture<String> creditHistory = CompletableFuture.supplyAsync(
+                () -> creditHistoryEvaluation(userId), fetchExecutor);
+
+        try {
+            CompletableFuture.allOf(declaredIncome, cashFlow, obligations, creditHistory).join();
+        } catch (CompletionException e) {
+            // напр. ResourceNotFoundException за непознат потребител - пропагира се както е
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+
+        CashFlowRollupService.Totals totals = cashFlow.join();
+        return new RiskFeatureSnapshot(
+                userId,
+                declaredIncome.join(),
+                nvl(totals.income()),
+                nvl(totals.expense()),
+                obligations.join(),
+                creditHistory.join(),
+                Instant.now());
+    }
+
+    private String creditHistoryEvaluation(UUID userId) {
+        CreditHistoryView view = loanRepository.getCreditHistoryByUserId(userId);
+        return (view == null || view.getCreditStatus() == null) ? "neutral" : view.getCreditStatus();
+    }
+
+    private static BigDecimal nvl(BigDecimal x) {
+        return x == null ? BigDecimal.ZERO : x;
+    }
+}
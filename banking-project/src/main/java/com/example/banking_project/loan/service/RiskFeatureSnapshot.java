@@ -0,0 +1,19 @@
+package com.example.banking_project.loan.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Всички входни данни за оценката на риска за един потребител, заредени наведнъж.
+ * Сумите за приходи/разходи са за последните 6 месеца.
+ */
+public record RiskFeatureSnapshot(
+        UUID userId,
+        BigDecimal declaredIncome,
+        BigDecimal realIncome,
+        BigDecimal totalExpenses,
+        BigDecimal monthlyObligations,
+        String creditHistory,
+        Instant loadedAt
+) {}
@@ -0,0 +1,13 @@
+package com.example.banking_project.loan.view;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public interface LoanCollectionView {
+    UUID getLoanId();
+    UUID getUserId();
+    UUID getAccountId();
+    BigDecimal getAmount();
+    String getCurrencyCode();
+    Boolean getCollected();
+}
@@ -0,0 +1,12 @@
+package com.example.banking_project.loan.view;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public interface LoanSummaryView {
+    long getActiveLoans();
+    long getOverdueLoans();
+    BigDecimal getOutstanding();
+    BigDecimal getMonthlyObligation();
+    LocalDate getNextPaymentDate();
+}
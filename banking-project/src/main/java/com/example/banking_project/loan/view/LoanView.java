@@ -14,4 +14,5 @@ public interface LoanView {
     BigDecimal getRepaymentBalance();
     UUID getRepaymentAccountId();
     String getRepaymentIban();
+    String getRepaymentCurrencyCode();
 }
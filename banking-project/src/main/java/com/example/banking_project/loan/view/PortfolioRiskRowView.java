@@ -0,0 +1,13 @@
+package com.example.banking_project.loan.view;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public interface PortfolioRiskRowView {
+    UUID getUserId();
+    BigDecimal getDeclaredIncome();
+    BigDecimal getIncome();
+    BigDecimal getExpense();
+    BigDecimal getObligations();
+    String getCreditStatus();
+}
@@ -0,0 +1,124 @@
+package com.example.banking_project.schema;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * При старт прави EXPLAIN на горещите заявки и предупреждава, ако някоя от тях
+ * може да се изпълни само с пълно сканиране на таблицата.
+ *
+ * Проверката е с enable_seqscan=off: на малка таблица planner-ът и без това избира Seq Scan,
+ * така че Seq Scan в плана тук означава, че липсва подходящ индекс, а не че е по-евтин.
+ */
+@Slf4j
+@Component
+public class QueryPlanCheck {
+
+    private static final String ANY_ID = "'00000000-0000-0000-0000-000000000000'::uuid";
+
+    // предикатите са като в TransactionRepository, LoanRepository и crypto репозиторитата
+    static final Map<String, String> HOT_QUERIES = new LinkedHashMap<>();
+    static {
+        HOT_QUERIES.put("transactions by user and period", """
+            SELECT t.id FROM transactions t
+            WHERE t.user_id = %1$s AND t.created_on BETWEEN CURRENT_DATE - 30 AND CURRENT_DATE
+            ORDER BY t.created_on DESC, t.id DESC LIMIT 50
+            """.formatted(ANY_ID));
+        HOT_QUERIES.put("transactions by account and period", """
+            SELECT t.id FROM transactions t
+            WHERE t.account_id = %1$s AND t.created_on BETWEEN CURRENT_DATE - 30 AND CURRENT_DATE
+            ORDER BY t.created_on DESC, t.id DESC LIMIT 50
+            """.formatted(ANY_ID));
+        HOT_QUERIES.put("transactions by period", """
+            SELECT t.id FROM transactions t
+            WHERE t.created_on BETWEEN CURRENT_DATE - 30 AND CURRENT_DATE
+            ORDER BY t.created_on DESC, t.id DESC LIMIT 50
+            """);
+        HOT_QUERIES.put("cash flow by user", """
+            SELECT SUM(t.amount) FROM transactions t
+            WHERE t.user_id = %1$s AND t.created_on BETWEEN CURRENT_DATE - 30 AND CURRENT_DATE
+              AND t.transaction_status = 'SUCCEEDED' AND t.is_income IS TRUE
+            """.formatted(ANY_ID));
+        HOT_QUERIES.put("cash flow monthly by account", """
+            SELECT SUM(c.income_amount) FROM cash_flow_monthly c
+            WHERE c.account_id = %1$s AND c.year_month BETWEEN 202401 AND 202412
+            """.formatted(ANY_ID));
+        HOT_QUERIES.put("due loans", """
+            SELECT l.id FROM loans l
+            WHERE l.loan_status = 'ACTIVE' AND l.next_date_of_payment <= CURRENT_DATE
+            """);
+        HOT_QUERIES.put("loans by user", "SELECT l.id FROM loans l WHERE l.user_id = " + ANY_ID);
+        HOT_QUERIES.put("loans by repayment account",
+                "SELECT l.id FROM loans l WHERE l.repayment_account_id = " + ANY_ID);
+        HOT_QUERIES.put("accounts by user", "SELECT a.id FROM accounts a WHERE a.user_id = " + ANY_ID);
+        HOT_QUERIES.put("crypto holdings by user",
+                "SELECT h.id FROM crypto_holding h WHERE h.user_id = " + ANY_ID);
+        HOT_QUERIES.put("crypto orders by account", """
+            SELECT o.id FROM crypto_order o WHERE o.account_id = %1$s ORDER BY o.executed_at DESC
+            """.formatted(ANY_ID));
+        HOT_QUERIES.put("crypto orders by user", """
+            SELECT o.id FROM crypto_order o WHERE o.user_id = %1$s ORDER BY o.executed_at DESC
+            """.formatted(ANY_ID));
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+
+    public QueryPlanCheck(JdbcTemplate jdbcTemplate,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${schema.plan-check.enabled:true}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void check() {
+        if (!enabled) return;
+        try {
+            // прекъснат CREATE INDEX CONCURRENTLY оставя невалиден индекс, който IF NOT EXISTS не поправя
+            List<String> invalid = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_index i
+                JOIN pg_class c ON c.oid = i.indexrelid
+                JOIN pg_namespace n ON n.oid = c.relnamespace
+                WHERE NOT i.indisvalid AND n.nspname = current_schema()
+                """, String.class);
+            invalid.forEach(name ->
+                    log.warn("Index {} is invalid (interrupted concurrent build) - drop it and restart to rebuild", name));
+
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+                HOT_QUERIES.forEach(this::checkPlan);
+            });
+        } catch (DataAccessException e) {
+            log.warn("Query plan check skipped: {}", e.getMessage());
+        }
+    }
+
+    private void checkPlan(String name, String sql) {
+        List<String> plan = jdbcTemplate.queryForList("EXPLAIN " + sql, String.class);
+        String seqScans = plan.stream()
+                .filter(line -> line.contains("Seq Scan"))
+                .map(String::strip)
+                .reduce((a, b) -> a + "; " + b)
+                .orElse(null);
+        if (seqScans != null) {
+            log.warn("Query '{}' falls back to a sequential scan: {}", name, seqScans);
+        } else {
+            log.debug("Query '{}' plan: {}", name, String.join(" | ", plan));
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.banking_project.schema;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Версионирани миграции от db/migration (V{n}__{описание}.sql, именуване като при Flyway).
+ *
+ * Таблиците продължава да ги създава Hibernate (ddl-auto=update), затова миграциите вървят
+ * след entityManagerFactory. Приложените версии се пазят в schema_migrations заедно с
+ * checksum. Скрипт с CONCURRENTLY се изпълнява извън транзакция (PostgreSQL не позволява
+ * друго), останалите - в една транзакция. Advisory lock-ът пази от две инстанции,
+ * които мигрират едновременно.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class SchemaMigrator {
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final long LOCK_KEY = 4_815_162_342L;
+
+    private final DataSource dataSource;
+    private final boolean enabled;
+    private final String location;
+
+    public SchemaMigrator(DataSource dataSource,
+                          @Value("${schema.migrations.enabled:true}") boolean enabled,
+                          @Value("${schema.migrations.location:classpath*:db/migration/V*__*.sql}") String location) {
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.location = location;
+    }
+
+    @PostConstruct
+    public void migrate() throws SQLException, IOException {
+        if (!enabled) return;
+        List<Migration> migrations = load();
+        if (migrations.isEmpty()) return;
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            execute(connection, "SELECT pg_advisory_lock(" + LOCK_KEY + ")");
+            try {
+                execute(connection, """
+                    CREATE TABLE IF NOT EXISTS schema_migrations (
+                        version      integer PRIMARY KEY,
+                        description  varchar(200) NOT NULL,
+                        checksum     varchar(64) NOT NULL,
+                        installed_on timestamp NOT NULL DEFAULT now(),
+                        execution_ms bigint NOT NULL
+                    )
+                    """);
+                Map<Integer, String> applied = applied(connection);
+                int count = 0;
+                for (Migration m : migrations) {
+                    String checksum = applied.get(m.version());
+                    if (checksum == null) {
+                        apply(connection, m);
+                        count++;
+                    } else if (!checksum.equals(m.checksum())) {
+                        log.warn("Migration V{} ({}) was changed after it was applied", m.version(), m.description());
+                    }
+                }
+                if (count > 0) {
+                    log.info("Applied {} schema migration(s)", count);
+                }
+            } finally {
+                execute(connection, "SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+            }
+        }
+    }
+
+    private void apply(Connection connection, Migration m) throws SQLException {
+        long started = System.nanoTime();
+        log.info("Applying migration V{} ({}){}", m.version(), m.description(),
+                m.transactional() ? "" : " without transaction");
+        try {
+            if (m.transactional()) {
+                connection.setAutoCommit(false);
+                try {
+                    for (String sql : m.statements()) execute(connection, sql);
+                    record(connection, m, started);
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } else {
+                for (String sql : m.statements()) execute(connection, sql);
+                record(connection, m, started);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Migration V" + m.version() + " (" + m.description() + ") failed: "
+                    + e.getMessage(), e);
+        }
+    }
+
+    private static void record(Connection connection, Migration m, long started) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO schema_migrations (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)")) {
+            ps.setInt(1, m.version());
+            ps.setString(2, m.description());
+            ps.setString(3, m.checksum());
+            ps.setLong(4, (System.nanoTime() - started) / 1_000_000);
+            ps.executeUpdate();
+        }
+    }
+
+    private static Map<Integer, String> applied(Connection connection) throws SQLException {
+        Map<Integer, String> out = new HashMap<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM schema_migrations")) {
+            while (rs.next()) {
+                out.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+        return out;
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private List<Migration> load() throws IOException {
+        Map<Integer, Migration> byVersion = new HashMap<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(location)) {
+            Matcher matcher = FILE_NAME.matcher(resource.getFilename() == null ? "" : resource.getFilename());
+            if (!matcher.matches()) continue;
+
+            int version = Integer.parseInt(matcher.group(1));
+            String sql = resource.getContentAsString(StandardCharsets.UTF_8);
+            List<String> statements = split(sql);
+            boolean concurrently = statements.stream().anyMatch(st -> st.toUpperCase().contains("CONCURRENTLY"));
+            Migration m = new Migration(version, matcher.group(2).replace('_', ' '),
+                    statements, checksum(sql), !concurrently);
+            if (byVersion.putIfAbsent(version, m) != null) {
+                throw new IllegalStateException("Duplicate migration version V" + version);
+            }
+        }
+        List<Migration> out = new ArrayList<>(byVersion.values());
+        out.sort(Comparator.comparingInt(Migration::version));
+        return out;
+    }
+
+    // Разделя скрипта на команди по ';' на най-горно ниво. Не се разделя вътре в '...'
+    // (и E'...'), "..." и $tag$ ... $tag$ тела; редовите и блоковите коментари извън тях отпадат.
+    static List<String> split(String script) {
+        List<String> out = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int n = script.length();
+        int i = 0;
+        while (i < n) {
+            char c = script.charAt(i);
+            char next = i + 1 < n ? script.charAt(i + 1) : 0;
+            String tag = c == '$' ? dollarTag(script, i) : null;
+            if (c == '-' && next == '-') {
+                int eol = script.indexOf('\n', i);
+                i = eol < 0 ? n : eol;
+            } else if (c == '/' && next == '*') {
+                i = skipBlockComment(script, i);
+                current.append(' ');
+            } else if (c == '\'' || c == '"') {
+                int end = skipQuoted(script, i);
+                current.append(script, i, end);
+                i = end;
+            } else if (tag != null) {
+                int close = script.indexOf(tag, i + tag.length());
+                int end = close < 0 ? n : close + tag.length();
+                current.append(script, i, end);
+                i = end;
+            } else if (c == ';') {
+                addStatement(out, current);
+                i++;
+            } else {
+                current.append(c);
+                i++;
+            }
+        }
+        addStatement(out, current);
+        return out;
+    }
+
+    private static void addStatement(List<String> out, StringBuilder current) {
+        String sql = current.toString().strip();
+        if (!sql.isEmpty()) out.add(sql);
+        current.setLength(0);
+    }
+
+    // PostgreSQL позволява вложени блокови коментари
+    private static int skipBlockComment(String script, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < script.length()) {
+            if (script.startsWith("/*", i)) {
+                depth++;
+                i += 2;
+            } else if (script.startsWith("*/", i)) {
+                i += 2;
+                if (--depth == 0) return i;
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    // удвоената кавичка е escape; в E'...' и \ escape-ва следващия символ
+    private static int skipQuoted(String script, int start) {
+        char quote = script.charAt(start);
+        boolean backslashEscapes = quote == '\'' && start > 0
+                && Character.toUpperCase(script.charAt(start - 1)) == 'E'
+                && (start < 2 || !isIdentifierPart(script.charAt(start - 2)));
+        int i = start + 1;
+        while (i < script.length()) {
+            char c = script.charAt(i);
+            if (backslashEscapes && c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < script.length() && script.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /** "$$" или "$tag$", ако на start започва dollar-quote; null за $1 и за $ в идентификатор. */
+    private static String dollarTag(String script, int start) {
+        if (start > 0 && isIdentifierPart(script.charAt(start - 1))) return null;
+        int i = start + 1;
+        if (i < script.length() && Character.isDigit(script.charAt(i))) return null;
+        while (i < script.length() && script.charAt(i) != '$') {
+            if (!isIdentifierPart(script.charAt(i))) return null;
+            i++;
+        }
+        return i < script.length() ? script.substring(start, i + 1) : null;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static String checksum(String sql) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(sql.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Migration(int version, String description, List<String> statements,
+                             String checksum, boolean transactional) {}
+}
@@ -1,6 +1,6 @@
 package com.example.banking_project.security;
 
-import com.example.banking_project.user.service.UserService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -22,7 +22,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtService jwtService;
 
     @Autowired
-    private UserService userService;
+    private PrincipalCache principalCache;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -31,22 +31,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
 
         String jwt = parseJwt(request);
+        Claims claims = jwt != null ? jwtService.verifyClaims(jwt).orElse(null) : null;
 
-        if (jwt != null && jwtService.validateToken(jwt)) {
-            String email = jwtService.extractEmail(jwt);
+        if (claims != null) {
+            // един разбор на токена на заявка - всички claims се четат от него
+            String email = claims.getSubject();
 
-            UserDetails userDetails = userService.loadUserByUsername(email);
+            UserDetails userDetails = principalCache.get(email);
 
-            String userId = jwtService.extractClaim(jwt, "userId");
-            String role = jwtService.extractClaim(jwt, "role");
+            String userId = claims.get("userId", String.class);
+            String role = claims.get("role", String.class);
 
-            Boolean profileCompleted = jwtService.extractClaim(jwt, "profileCompleted", Boolean.class);
+            Object pc = claims.get("profileCompleted");
+            Boolean profileCompleted = pc instanceof Boolean b ? b
+                    : pc != null ? Boolean.valueOf(pc.toString()) : null;
             if (profileCompleted == null) {
-                String pcStr = jwtService.extractClaim(jwt, "profileCompleted");
-                profileCompleted = (pcStr != null) ? Boolean.valueOf(pcStr) : null;
-            }
-            if (profileCompleted == null) {
-                profileCompleted = userService.isProfileCompletedByEmail(email);
+                profileCompleted = principalCache.isProfileCompleted(userDetails);
             }
             request.setAttribute("profileCompleted", profileCompleted);
 
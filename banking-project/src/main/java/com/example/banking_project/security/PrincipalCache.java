@@ -0,0 +1,55 @@
+package com.example.banking_project.security;
+
+import com.example.banking_project.user.service.UserService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Кеш на principal-а по email, за да не се чете users таблицата при всяка заявка.
+ * При промяна на профила или ролята записът се изтрива чрез evict().
+ */
+@Component
+public class PrincipalCache {
+
+    private final UserService userService;
+    private final Cache<String, UserDetails> principals;
+
+    public PrincipalCache(UserService userService,
+                          @Value("${security.principal-cache.ttl-ms:300000}") long ttlMs,
+                          @Value("${security.principal-cache.max-size:10000}") long maxSize) {
+        this.userService = userService;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .build();
+    }
+
+    public UserDetails get(String email) {
+        return principals.get(email, userService::loadUserByUsername);
+    }
+
+    public boolean isProfileCompleted(UserDetails principal) {
+        return principal.getAuthorities().stream()
+                .anyMatch(a -> "PROFILE_COMPLETED".equals(a.getAuthority()));
+    }
+
+    public void evict(String email) {
+        principals.invalidate(email);
+        // паралелна заявка може да зареди старите данни преди commit - трием и след него
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    principals.invalidate(email);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.banking_project.transaction.event;
+
+import com.example.banking_project.transaction.model.Transaction;
+
+import java.util.List;
+
+/** Редове, записани в ledger-а от LedgerWriter; слушателите ги получават след commit. */
+public record LedgerRowsWrittenEvent(List<Transaction> rows) {}
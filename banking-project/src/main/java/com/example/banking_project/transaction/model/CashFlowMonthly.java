@@ -0,0 +1,46 @@
+package com.example.banking_project.transaction.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Месечни суми приходи/разходи по потребител и сметка.
+ * Поддържа се инкрементално от LedgerWriter при всеки запис в ledger-а.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Table(
+        name = "cash_flow_monthly",
+        uniqueConstraints = {
+                @UniqueConstraint(columnNames = {"user_id", "account_id", "year_month"})
+        }
+)
+public class CashFlowMonthly {
+
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Column(name = "user_id", nullable = false)
+    private UUID userId;
+
+    @Column(name = "account_id", nullable = false)
+    private UUID accountId;
+
+    // yyyyMM, напр. 202510
+    @Column(name = "year_month", nullable = false)
+    private int yearMonth;
+
+    @Column(name = "income_amount", nullable = false)
+    private BigDecimal incomeAmount;
+
+    @Column(name = "expense_amount", nullable = false)
+    private BigDecimal expenseAmount;
+}
@@ -22,7 +22,9 @@ public class Income {
     @Column(name = "amount", nullable = false)
     private BigDecimal amount;
 
+    // transactions е партиционирана по created_on и няма unique само по id, затова без FK
     @OneToOne
-    @JoinColumn(name = "transaction_id", nullable = false)
+    @JoinColumn(name = "transaction_id", nullable = false,
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Transaction transaction;
 }
@@ -0,0 +1,54 @@
+package com.example.banking_project.transaction.repository;
+
+import com.example.banking_project.transaction.model.CashFlowMonthly;
+import com.example.banking_project.transaction.view.CashFlowTotalsView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.UUID;
+
+@Repository
+public interface CashFlowMonthlyRepository extends JpaRepository<CashFlowMonthly, UUID> {
+
+    @Query(value = """
+        SELECT COALESCE(SUM(c.income_amount), 0)  AS income,
+               COALESCE(SUM(c.expense_amount), 0) AS expense
+        FROM cash_flow_monthly c
+        WHERE c.user_id = :userId
+          AND c.year_month BETWEEN :fromMonth AND :toMonth
+        """, nativeQuery = true)
+    CashFlowTotalsView sumByUserAndMonths(@Param("userId") UUID userId,
+                                          @Param("fromMonth") int fromMonth,
+                                          @Param("toMonth") int toMonth);
+
+    @Query(value = """
+        SELECT COALESCE(SUM(c.income_amount), 0)  AS income,
+               COALESCE(SUM(c.expense_amount), 0) AS expense
+        FROM cash_flow_monthly c
+        WHERE c.account_id = :accountId
+          AND c.year_month BETWEEN :fromMonth AND :toMonth
+        """, nativeQuery = true)
+    CashFlowTotalsView sumByAccountAndMonths(@Param("accountId") UUID accountId,
+                                             @Param("fromMonth") int fromMonth,
+                                             @Param("toMonth") int toMonth);
+
+    // Пълно преизчисляване от transactions (при празна таблица или ръчно)
+    @Modifying
+    @Query(value = """
+        INSERT INTO cash_flow_monthly (id, user_id, account_id, year_month, income_amount, expense_amount)
+        SELECT gen_random_uuid(),
+               t.user_id,
+               t.account_id,
+               CAST(EXTRACT(YEAR FROM t.created_on) * 100 + EXTRACT(MONTH FROM t.created_on) AS integer),
+               COALESCE(SUM(CASE WHEN t.is_income  IS TRUE THEN t.amount ELSE 0 END), 0),
+               COALESCE(SUM(CASE WHEN t.is_expense IS TRUE THEN t.amount ELSE 0 END), 0)
+        FROM transactions t
+        WHERE t.transaction_status = 'SUCCEEDED'
+        GROUP BY t.user_id, t.account_id,
+                 CAST(EXTRACT(YEAR FROM t.created_on) * 100 + EXTRACT(MONTH FROM t.created_on) AS integer)
+        """, nativeQuery = true)
+    int rebuildFromTransactions();
+}
@@ -1,18 +1,24 @@
 package com.example.banking_project.transaction.repository;
 
 import com.example.banking_project.transaction.model.Transaction;
+import com.example.banking_project.transaction.view.CashFlowTotalsView;
 import com.example.banking_project.transaction.view.TransactionTransferView;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, UUID> {
+
     @Query(value = """
         SELECT
             t.id,
@@ -301,71 +307,212 @@ public interface TransactionRepository extends JpaRepository<Transaction, UUID>
         t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
     FROM transactions t
     WHERE t.created_on BETWEEN :startDate AND :endDate
-      AND (:q IS NULL OR LOWER(t.description) LIKE LOWER(CONCAT('%', :q, '%')))
+      AND (:pattern IS NULL OR LOWER(t.description) LIKE :pattern ESCAPE '\\')
     ORDER BY t.created_on DESC
     """, nativeQuery = true)
     List<TransactionTransferView> searchAllByDescriptionInPeriod(@Param("startDate") LocalDate startDate,
                                                                  @Param("endDate") LocalDate endDate,
-                                                                 @Param("q") String query);
+                                                                 @Param("pattern") String pattern);
+
+    // :pattern е вече екраниран '%...%' (DescriptionSearchIndex.containsPattern) - използва trigram индекса
+    @Query(value = """
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
+    FROM transactions t
+    WHERE t.created_on BETWEEN :startDate AND :endDate
+      AND LOWER(t.description) LIKE :pattern ESCAPE '\\'
+    ORDER BY word_similarity(:q, LOWER(t.description)) DESC, t.created_on DESC, t.id DESC
+    LIMIT :limit OFFSET :offset
+    """, nativeQuery = true)
+    List<TransactionTransferView> searchRankedByDescriptionInPeriod(@Param("startDate") LocalDate startDate,
+                                                                    @Param("endDate") LocalDate endDate,
+                                                                    @Param("q") String query,
+                                                                    @Param("pattern") String pattern,
+                                                                    @Param("limit") int limit,
+                                                                    @Param("offset") int offset);
+
+    // без pg_trgm: същият филтър, подреден по дата
+    @Query(value = """
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
+    FROM transactions t
+    WHERE t.created_on BETWEEN :startDate AND :endDate
+      AND LOWER(t.description) LIKE :pattern ESCAPE '\\'
+    ORDER BY t.created_on DESC, t.id DESC
+    LIMIT :limit OFFSET :offset
+    """, nativeQuery = true)
+    List<TransactionTransferView> searchByDescriptionInPeriod(@Param("startDate") LocalDate startDate,
+                                                              @Param("endDate") LocalDate endDate,
+                                                              @Param("pattern") String pattern,
+                                                              @Param("limit") int limit,
+                                                              @Param("offset") int offset);
 
-// ===== ADMIN: агрегати =====
+// ===== Keyset пагинация по (created_on, id) =====
 
     @Query(value = """
-    SELECT COALESCE(SUM(t.amount), 0)
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
     FROM transactions t
     WHERE t.user_id = :userId
-      AND t.created_on BETWEEN :startDate AND :endDate
-      AND t.is_income IS TRUE
+    ORDER BY t.created_on DESC, t.id DESC
+    LIMIT :limit
     """, nativeQuery = true)
-    java.math.BigDecimal sumIncomeByUserAndPeriod(@Param("userId") UUID userId,
-                                                  @Param("startDate") LocalDate startDate,
-                                                  @Param("endDate") LocalDate endDate);
+    List<TransactionTransferView> getRecentTransactionsByUserId(@Param("userId") UUID userId,
+            @Param("limit") int limit);
 
     @Query(value = """
-    SELECT COALESCE(SUM(t.amount), 0)
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
     FROM transactions t
     WHERE t.user_id = :userId
-      AND t.created_on BETWEEN :startDate AND :endDate
-      AND t.is_expense IS TRUE
+      AND (t.created_on, t.id) < (:cursorDate, :cursorId)
+    ORDER BY t.created_on DESC, t.id DESC
+    LIMIT :limit
+    """, nativeQuery = true)
+    List<TransactionTransferView> getAllTransactionsByUserIdAfter(@Param("userId") UUID userId,
+            @Param("cursorDate") LocalDate cursorDate,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
+
+    @Query(value = """
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
+    FROM transactions t
+    WHERE t.account_id = :accountId
+      AND (t.created_on, t.id) < (:cursorDate, :cursorId)
+    ORDER BY t.created_on DESC, t.id DESC
+    LIMIT :limit
     """, nativeQuery = true)
-    java.math.BigDecimal sumExpenseByUserAndPeriod(@Param("userId") UUID userId,
-                                                   @Param("startDate") LocalDate startDate,
-                                                   @Param("endDate") LocalDate endDate);
+    List<TransactionTransferView> getTransactionsByAccountAfter(@Param("accountId") UUID accountId,
+            @Param("cursorDate") LocalDate cursorDate,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
 
     @Query(value = """
     SELECT
-      COALESCE(SUM(CASE WHEN t.is_income  IS TRUE THEN t.amount ELSE 0 END), 0)
-      -
-      COALESCE(SUM(CASE WHEN t.is_expense IS TRUE THEN t.amount ELSE 0 END), 0)
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
     FROM transactions t
     WHERE t.user_id = :userId
       AND t.created_on BETWEEN :startDate AND :endDate
+      AND (t.created_on, t.id) < (:cursorDate, :cursorId)
+    ORDER BY t.created_on DESC, t.id DESC
+    LIMIT :limit
     """, nativeQuery = true)
-    java.math.BigDecimal netCashFlowByUserAndPeriod(@Param("userId") UUID userId,
-                                                    @Param("startDate") LocalDate startDate,
-                                                    @Param("endDate") LocalDate endDate);
+    List<TransactionTransferView> getTransactionsByUserAndPeriodAfter(@Param("userId") UUID userId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            @Param("cursorDate") LocalDate cursorDate,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
 
     @Query(value = """
-    SELECT COALESCE(SUM(t.amount), 0)
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
     FROM transactions t
-    WHERE t.account_id = :accountId
-      AND t.created_on BETWEEN :startDate AND :endDate
-      AND t.is_income IS TRUE
+    WHERE t.created_on BETWEEN :startDate AND :endDate
+      AND (t.created_on, t.id) < (:cursorDate, :cursorId)
+    ORDER BY t.created_on DESC, t.id DESC
+    LIMIT :limit
+    """, nativeQuery = true)
+    List<TransactionTransferView> getAllByPeriodAfter(@Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate,
+            @Param("cursorDate") LocalDate cursorDate,
+            @Param("cursorId") UUID cursorId,
+            @Param("limit") int limit);
+
+// ===== Стрийминг (изисква активна транзакция) =====
+
+    @Query(value = """
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
+    FROM transactions t
+    WHERE t.user_id = :userId
+    ORDER BY t.created_on DESC, t.id DESC
     """, nativeQuery = true)
-    java.math.BigDecimal sumIncomeByAccountAndPeriod(@Param("accountId") UUID accountId,
-                                                     @Param("startDate") LocalDate startDate,
-                                                     @Param("endDate") LocalDate endDate);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<TransactionTransferView> streamAllTransactionsByUserId(@Param("userId") UUID userId);
 
     @Query(value = """
-    SELECT COALESCE(SUM(t.amount), 0)
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
     FROM transactions t
     WHERE t.account_id = :accountId
+    ORDER BY t.created_on DESC, t.id DESC
+    """, nativeQuery = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<TransactionTransferView> streamTransactionsByAccount(@Param("accountId") UUID accountId);
+
+    @Query(value = """
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
+    FROM transactions t
+    WHERE t.user_id = :userId
       AND t.created_on BETWEEN :startDate AND :endDate
-      AND t.is_expense IS TRUE
+    ORDER BY t.created_on DESC, t.id DESC
     """, nativeQuery = true)
-    java.math.BigDecimal sumExpenseByAccountAndPeriod(@Param("accountId") UUID accountId,
-                                                      @Param("startDate") LocalDate startDate,
-                                                      @Param("endDate") LocalDate endDate);
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<TransactionTransferView> streamTransactionsByUserAndPeriod(@Param("userId") UUID userId,
+            @Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate);
 
+    @Query(value = """
+    SELECT
+        t.id, t.amount, t.transaction_status AS transactionStatus, t.transaction_type AS transactionType,
+        t.description, t.failure_reason AS failureReason, t.created_on AS createdOn, t.currency,
+        t.is_income AS isIncome, t.is_expense AS isExpense, t.account_id AS accountId, t.user_id AS userId
+    FROM transactions t
+    WHERE t.created_on BETWEEN :startDate AND :endDate
+    ORDER BY t.created_on DESC, t.id DESC
+    """, nativeQuery = true)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<TransactionTransferView> streamAllByPeriod(@Param("startDate") LocalDate startDate,
+            @Param("endDate") LocalDate endDate);
+
+// ===== Суровите суми за непълните месеци в краищата на период (виж CashFlowRollupService) =====
+
+    @Query(value = """
+    SELECT
+      COALESCE(SUM(CASE WHEN t.is_income  IS TRUE THEN t.amount ELSE 0 END), 0) AS income,
+      COALESCE(SUM(CASE WHEN t.is_expense IS TRUE THEN t.amount ELSE 0 END), 0) AS expense
+    FROM transactions t
+    WHERE t.user_id = :userId
+      AND t.created_on BETWEEN :startDate AND :endDate
+      AND t.transaction_status = 'SUCCEEDED'
+    """, nativeQuery = true)
+    CashFlowTotalsView cashFlowByUserAndPeriod(@Param("userId") UUID userId,
+                                               @Param("startDate") LocalDate startDate,
+                                               @Param("endDate") LocalDate endDate);
 
+    @Query(value = """
+    SELECT
+      COALESCE(SUM(CASE WHEN t.is_income  IS TRUE THEN t.amount ELSE 0 END), 0) AS income,
+      COALESCE(SUM(CASE WHEN t.is_expense IS TRUE THEN t.amount ELSE 0 END), 0) AS expense
+    FROM transactions t
+    WHERE t.account_id = :accountId
+      AND t.created_on BETWEEN :startDate AND :endDate
+      AND t.transaction_status = 'SUCCEEDED'
+    """, nativeQuery = true)
+    CashFlowTotalsView cashFlowByAccountAndPeriod(@Param("accountId") UUID accountId,
+                                                  @Param("startDate") LocalDate startDate,
+                                                  @Param("endDate") LocalDate endDate);
 }
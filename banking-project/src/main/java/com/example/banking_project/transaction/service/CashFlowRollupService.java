@@ -0,0 +1,213 @@
+package com.example.banking_project.transaction.service;
+
+import com.example.banking_project.transaction.model.Transaction;
+import com.example.banking_project.transaction.model.TransactionStatus;
+import com.example.banking_project.transaction.repository.CashFlowMonthlyRepository;
+import com.example.banking_project.transaction.repository.TransactionRepository;
+import com.example.banking_project.transaction.view.CashFlowTotalsView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.BiFunction;
+
+/**
+ * Агрегати приходи/разходи върху cash_flow_monthly.
+ *
+ * Период [start, end] се разделя на пълни месеци (сумират се от rollup-а)
+ * и непълни месеци в двата края (сумират се директно от transactions).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CashFlowRollupService {
+
+    private static final String ADD_TO_MONTH = """
+        INSERT INTO cash_flow_monthly (id, user_id, account_id, year_month, income_amount, expense_amount)
+        VALUES (gen_random_uuid(), ?, ?, ?, ?, ?)
+        ON CONFLICT (user_id, account_id, year_month) DO UPDATE
+        SET income_amount  = cash_flow_monthly.income_amount  + EXCLUDED.income_amount,
+            expense_amount = cash_flow_monthly.expense_amount + EXCLUDED.expense_amount
+        """;
+
+    private final CashFlowMonthlyRepository rollupRepository;
+    private final TransactionRepository transactionRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    // ===== Поддръжка =====
+
+    /** Извиква се от LedgerWriter в транзакцията, в която се записват редовете. */
+    public void apply(Collection<Transaction> transactions) {
+        // ключовете се подреждат, за да заключват редовете винаги в един и същ ред
+        Map<String, Delta> deltas = new TreeMap<>();
+        for (Transaction tx : transactions) {
+            if (tx.getTransactionStatus() != TransactionStatus.SUCCEEDED) continue;
+            boolean income = Boolean.TRUE.equals(tx.getIsIncome());
+            boolean expense = Boolean.TRUE.equals(tx.getIsExpense());
+            if (!income && !expense) continue;
+
+            UUID userId = tx.getUser().getId();
+            UUID accountId = tx.getAccount().getId();
+            int yearMonth = toYearMonth(tx.getCreatedOn());
+            Delta d = deltas.computeIfAbsent(userId + "|" + accountId + "|" + yearMonth,
+                    k -> new Delta(userId, accountId, yearMonth));
+            if (income) d.income = d.income.add(tx.getAmount());
+            if (expense) d.expense = d.expense.add(tx.getAmount());
+        }
+        if (deltas.isEmpty()) return;
+        // един JDBC batch за всички месеци/сметки (масовите преводи засягат хиляди сметки)
+        List<Object[]> rows = new ArrayList<>(deltas.size());
+        deltas.values().forEach(d -> rows.add(new Object[]{d.userId, d.accountId, d.yearMonth, d.income, d.expense}));
+        jdbcTemplate.batchUpdate(ADD_TO_MONTH, rows);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void rebuildIfEmpty() {
+        if (rollupRepository.count() == 0) {
+            int rows = rollupRepository.rebuildFromTransactions();
+            if (rows > 0) {
+                log.info("Rebuilt cash_flow_monthly from transactions: {} rows", rows);
+            }
+        }
+    }
+
+    @Transactional
+    public int rebuild() {
+        rollupRepository.deleteAllInBatch();
+        return rollupRepository.rebuildFromTransactions();
+    }
+
+    // ===== Заявки =====
+
+    public BigDecimal sumIncomeByUser(UUID userId, LocalDate startDate, LocalDate endDate) {
+        return totalsByUser(userId, startDate, endDate).income();
+    }
+
+    public BigDecimal sumExpenseByUser(UUID userId, LocalDate startDate, LocalDate endDate) {
+        return totalsByUser(userId, startDate, endDate).expense();
+    }
+
+    public BigDecimal netCashFlowByUser(UUID userId, LocalDate startDate, LocalDate endDate) {
+        Totals t = totalsByUser(userId, startDate, endDate);
+        return t.income().subtract(t.expense());
+    }
+
+    public BigDecimal sumIncomeByAccount(UUID accountId, LocalDate startDate, LocalDate endDate) {
+        return totalsByAccount(accountId, startDate, endDate).income();
+    }
+
+    public BigDecimal sumExpenseByAccount(UUID accountId, LocalDate startDate, LocalDate endDate) {
+        return totalsByAccount(accountId, startDate, endDate).expense();
+    }
+
+    public Totals totalsByUser(UUID userId, LocalDate startDate, LocalDate endDate) {
+        return totals(startDate, endDate,
+                (from, to) -> rollupRepository.sumByUserAndMonths(userId, from, to),
+                (s, e) -> transactionRepository.cashFlowByUserAndPeriod(userId, s, e));
+    }
+
+    public Totals totalsByAccount(UUID accountId, LocalDate startDate, LocalDate endDate) {
+        return totals(startDate, endDate,
+                (from, to) -> rollupRepository.sumByAccountAndMonths(accountId, from, to),
+                (s, e) -> transactionRepository.cashFlowByAccountAndPeriod(accountId, s, e));
+    }
+
+    private Totals totals(LocalDate startDate, LocalDate endDate,
+                          BiFunction<Integer, Integer, CashFlowTotalsView> rollup,
+                          BiFunction<LocalDate, LocalDate, CashFlowTotalsView> raw) {
+        if (startDate == null || endDate == null || startDate.isAfter(endDate)) {
+            return Totals.ZERO;
+        }
+
+        MonthSplit split = split(startDate, endDate);
+        Totals result = split.hasFullMonths()
+                ? Totals.of(rollup.apply(split.fromMonth(), split.toMonth()))
+                : Totals.ZERO;
+        if (split.hasHead()) {
+            result = result.plus(Totals.of(raw.apply(split.headStart(), split.headEnd())));
+        }
+        if (split.hasTail()) {
+            result = result.plus(Totals.of(raw.apply(split.tailStart(), split.tailEnd())));
+        }
+        return result;
+    }
+
+    /** Разделя [start, end] на цели месеци (от rollup-а) и непълни краища (от transactions). */
+    public static MonthSplit split(LocalDate startDate, LocalDate endDate) {
+        YearMonth firstFull = startDate.getDayOfMonth() == 1
+                ? YearMonth.from(startDate)
+                : YearMonth.from(startDate).plusMonths(1);
+        YearMonth lastFull = endDate.equals(YearMonth.from(endDate).atEndOfMonth())
+                ? YearMonth.from(endDate)
+                : YearMonth.from(endDate).minusMonths(1);
+
+        if (firstFull.isAfter(lastFull)) {
+            // периодът не покрива нито един цял месец
+            return new MonthSplit(toYearMonth(firstFull), toYearMonth(lastFull),
+                    startDate, endDate, endDate.plusDays(1), endDate);
+        }
+        return new MonthSplit(toYearMonth(firstFull), toYearMonth(lastFull),
+                startDate, firstFull.atDay(1).minusDays(1),
+                lastFull.atEndOfMonth().plusDays(1), endDate);
+    }
+
+    static int toYearMonth(LocalDate date) {
+        return date.getYear() * 100 + date.getMonthValue();
+    }
+
+    private static int toYearMonth(YearMonth ym) {
+        return ym.getYear() * 100 + ym.getMonthValue();
+    }
+
+    /** Празен край има start след end. */
+    public record MonthSplit(int fromMonth, int toMonth,
+                             LocalDate headStart, LocalDate headEnd,
+                             LocalDate tailStart, LocalDate tailEnd) {
+        public boolean hasFullMonths() { return fromMonth <= toMonth; }
+        public boolean hasHead() { return !headStart.isAfter(headEnd); }
+        public boolean hasTail() { return !tailStart.isAfter(tailEnd); }
+    }
+
+    public record Totals(BigDecimal income, BigDecimal expense) {
+        static final Totals ZERO = new Totals(BigDecimal.ZERO, BigDecimal.ZERO);
+
+        static Totals of(CashFlowTotalsView v) {
+            if (v == null) return ZERO;
+            return new Totals(
+                    v.getIncome() != null ? v.getIncome() : BigDecimal.ZERO,
+                    v.getExpense() != null ? v.getExpense() : BigDecimal.ZERO);
+        }
+
+        Totals plus(Totals other) {
+            return new Totals(income.add(other.income), expense.add(other.expense));
+        }
+    }
+
+    private static final class Delta {
+        final UUID userId;
+        final UUID accountId;
+        final int yearMonth;
+        BigDecimal income = BigDecimal.ZERO;
+        BigDecimal expense = BigDecimal.ZERO;
+
+        Delta(UUID userId, UUID accountId, int yearMonth) {
+            this.userId = userId;
+            this.accountId = accountId;
+            this.yearMonth = yearMonth;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.banking_project.transaction.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Trigram (pg_trgm) GIN индекс върху LOWER(transactions.description) за търсене по подниз.
+ *
+ * Индексът се строи конкурентно (по партиции) на отделна нишка, за да не спира старта
+ * и записите в таблицата. Ако разширението не може да се инсталира (няма права),
+ * търсенето продължава да работи без ранкиране и без индекс.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DescriptionSearchIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionPartitionService partitionService;
+
+    private volatile boolean trigramAvailable;
+
+    public boolean isTrigramAvailable() {
+        return trigramAvailable;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        try {
+            jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        } catch (DataAccessException e) {
+            log.warn("pg_trgm is not available, description search falls back to plain LIKE: {}", e.getMessage());
+        }
+        trigramAvailable = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm')", Boolean.class));
+        if (!trigramAvailable) return;
+
+        Thread builder = new Thread(() -> {
+            try {
+                partitionService.createIndexConcurrently("idx_transactions_description_trgm",
+                        "USING gin (LOWER(description) gin_trgm_ops)");
+            } catch (DataAccessException e) {
+                log.warn("Cannot create trigram index on transactions.description: {}", e.getMessage());
+            }
+        }, "description-index");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /** Екранира % и _ от заявката, за да се търсят като обикновени символи. */
+    public static String containsPattern(String query) {
+        if (query == null || query.isBlank()) return null;
+        String escaped = query.trim().toLowerCase()
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+        return "%" + escaped + "%";
+    }
+}
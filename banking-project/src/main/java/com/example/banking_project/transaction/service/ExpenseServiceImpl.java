@@ -17,6 +17,7 @@ import java.util.UUID;
 public class ExpenseServiceImpl implements ExpenseService {
 
     private final ExpenseRepository expenseRepository;
+    private final CashFlowRollupService cashFlowRollupService;
 
     @Override
     public void createExpense(ExpenseRequest request) {
@@ -30,6 +31,6 @@ public class ExpenseServiceImpl implements ExpenseService {
     @Override
     public BigDecimal getExpensesForLastMonths(UUID userId, int monthsBack) {
         LocalDate startDate = LocalDate.now().minusMonths(monthsBack);
-        return expenseRepository.getExpensesForLastMonths(userId, startDate);
+        return cashFlowRollupService.sumExpenseByUser(userId, startDate, LocalDate.now());
     }
 }
@@ -18,6 +18,7 @@ import java.util.UUID;
 public class IncomeServiceImpl implements IncomeService {
 
     private final IncomeRepository incomeRepository;
+    private final CashFlowRollupService cashFlowRollupService;
 
     @Override
     public void createIncome(IncomeRequest request) {
@@ -31,6 +32,6 @@ public class IncomeServiceImpl implements IncomeService {
     @Override
     public BigDecimal getIncomeForLastMonths(UUID userId, int monthsBack) {
         LocalDate startDate = LocalDate.now().minusMonths(monthsBack);
-        return incomeRepository.getIncomeForLastMonths(userId, startDate);
+        return cashFlowRollupService.sumIncomeByUser(userId, startDate, LocalDate.now());
     }
 }
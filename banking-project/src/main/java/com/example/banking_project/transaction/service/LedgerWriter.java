@@ -0,0 +1,219 @@
+package com.example.banking_project.transaction.service;
+
+import com.example.banking_project.transaction.event.LedgerRowsWrittenEvent;
+import com.example.banking_project.transaction.model.Expense;
+import com.example.banking_project.transaction.model.Income;
+import com.example.banking_project.transaction.model.Transaction;
+import com.example.banking_project.transaction.repository.TransactionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Записва редовете в ledger-а (Transaction + Income/Expense).
+ *
+ * Ако извикващият е в активна транзакция, записът става веднага в нея, за да остане
+ * атомарен с промяната на баланса. Иначе заявките от паралелни нишки се събират в
+ * малки партиди (до maxBatchSize реда или maxWaitMs) и се записват с JDBC batch
+ * в една транзакция; future-ът на всеки извикващ се завършва след commit.
+ */
+@Slf4j
+@Component
+public class LedgerWriter {
+
+    private final TransactionRepository transactionRepository;
+    private final CashFlowRollupService cashFlowRollupService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${ledger.batch.max-size:200}")
+    private int maxBatchSize;
+
+    @Value("${ledger.batch.max-wait-ms:5}")
+    private long maxWaitMs;
+
+    @Value("${ledger.batch.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // горна граница за чакане на извикващия в write(); редът може все пак да се запише по-късно
+    @Value("${ledger.batch.write-timeout-ms:30000}")
+    private long writeTimeoutMs;
+
+    private BlockingQueue<PendingWrite> queue;
+    private Thread worker;
+    private volatile boolean running;
+
+    public LedgerWriter(TransactionRepository transactionRepository,
+                        CashFlowRollupService cashFlowRollupService,
+                        PlatformTransactionManager transactionManager,
+                        ApplicationEventPublisher eventPublisher) {
+        this.transactionRepository = transactionRepository;
+        this.cashFlowRollupService = cashFlowRollupService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        worker = new Thread(this::runLoop, "ledger-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(5_000);
+        // каквото е останало в опашката се записва директно
+        List<PendingWrite> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            flush(rest);
+        }
+    }
+
+    /** Записва реда и връща вече персистнатия Transaction. */
+    public Transaction write(Transaction transaction) {
+        attachLedgerEntry(transaction);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return persist(List.of(transaction)).get(0);
+        }
+        try {
+            return submit(transaction).get(writeTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("Ledger write failed", e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Ledger write timed out after " + writeTimeoutMs + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for ledger write", e);
+        }
+    }
+
+    /** Записва много редове наведнъж (JDBC batch), в текущата транзакция или в нова. */
+    public List<Transaction> writeAll(List<Transaction> transactions) {
+        transactions.forEach(this::attachLedgerEntry);
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return persist(transactions);
+        }
+        return transactionTemplate.execute(status -> persist(transactions));
+    }
+
+    public CompletableFuture<Transaction> submit(Transaction transaction) {
+        attachLedgerEntry(transaction);
+        PendingWrite pending = new PendingWrite(transaction, new CompletableFuture<>());
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future().completeExceptionally(e);
+        }
+        return pending.future();
+    }
+
+    private void runLoop() {
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                PendingWrite first = queue.take();
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                // вече взетите заявки не са в опашката и stop() не ги вижда - записват се тук
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+                if (!running) break;
+            } catch (RuntimeException e) {
+                log.error("Ledger writer loop error: {}", e.getMessage(), e);
+            } finally {
+                // никой извикващ не остава да чака незавършен future
+                batch.forEach(p -> p.future().completeExceptionally(
+                        new IllegalStateException("Ledger write was not flushed")));
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<Transaction> rows = batch.stream().map(PendingWrite::transaction).toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(rows));
+            batch.forEach(p -> p.future().complete(p.transaction()));
+        } catch (RuntimeException batchError) {
+            if (batch.size() == 1) {
+                batch.get(0).future().completeExceptionally(batchError);
+                return;
+            }
+            // един лош ред не трябва да проваля останалите от партидата
+            log.warn("Ledger batch of {} failed ({}), retrying row by row", batch.size(), batchError.getMessage());
+            for (PendingWrite p : batch) {
+                resetIds(p.transaction());
+                try {
+                    transactionTemplate.executeWithoutResult(status -> persist(List.of(p.transaction())));
+                    p.future().complete(p.transaction());
+                } catch (RuntimeException rowError) {
+                    p.future().completeExceptionally(rowError);
+                }
+            }
+        }
+    }
+
+    // редовете и месечният rollup се записват в една и съща транзакция; събитието стига до слушателите след commit
+    private List<Transaction> persist(List<Transaction> rows) {
+        List<Transaction> saved = transactionRepository.saveAll(rows);
+        cashFlowRollupService.apply(saved);
+        eventPublisher.publishEvent(new LedgerRowsWrittenEvent(saved));
+        return saved;
+    }
+
+    // Income/Expense се записват каскадно заедно с Transaction
+    private void attachLedgerEntry(Transaction tx) {
+        if (Boolean.TRUE.equals(tx.getIsIncome())) {
+            if (tx.getIncome() == null) {
+                tx.setIncome(Income.builder().amount(tx.getAmount()).transaction(tx).build());
+            }
+        } else if (tx.getExpense() == null) {
+            tx.setExpense(Expense.builder().amount(tx.getAmount()).transaction(tx).build());
+        }
+    }
+
+    // след rollback entity-тата имат вече генерирани id-та, които не съществуват в базата
+    private void resetIds(Transaction tx) {
+        tx.setId(null);
+        if (tx.getIncome() != null) tx.getIncome().setId(null);
+        if (tx.getExpense() != null) tx.getExpense().setId(null);
+    }
+
+    private record PendingWrite(Transaction transaction, CompletableFuture<Transaction> future) {}
+}
@@ -0,0 +1,157 @@
+package com.example.banking_project.transaction.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Поддръжка на месечните партиции на transactions (виж миграция V5).
+ *
+ * Всяка нощ създава партициите за следващите monthsAhead месеца, за да не попадат нови
+ * редове в transactions_default. Ако retentionMonths > 0, партициите по-стари от толкова
+ * месеца се откачат и се местят в archive схемата заедно с техните income/expense редове.
+ * Месечните суми в cash_flow_monthly остават, така че отчетите по стари периоди продължават да работят.
+ */
+@Slf4j
+@Component
+public class TransactionPartitionService {
+
+    private static final String PREFIX = "transactions_p";
+    private static final Pattern PARTITION_NAME = Pattern.compile(PREFIX + "(\\d{6})");
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final String archiveSchema;
+
+    public TransactionPartitionService(JdbcTemplate jdbcTemplate,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${transaction.partitions.months-ahead:3}") int monthsAhead,
+                                       @Value("${transaction.partitions.retention-months:0}") int retentionMonths,
+                                       @Value("${transaction.partitions.archive-schema:archive}") String archiveSchema) {
+        if (!IDENTIFIER.matcher(archiveSchema).matches()) {
+            throw new IllegalArgumentException("Invalid archive schema name: " + archiveSchema);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archiveSchema = archiveSchema;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${transaction.partitions.maintenance-cron:0 30 2 * * *}")
+    public void maintain() {
+        maintain(YearMonth.now());
+    }
+
+    void maintain(YearMonth now) {
+        if (!isPartitioned()) return;
+        for (int i = 0; i <= monthsAhead; i++) {
+            createPartition(now.plusMonths(i));
+        }
+        if (retentionMonths > 0) {
+            archiveOlderThan(now.minusMonths(retentionMonths));
+        }
+    }
+
+    public boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT COALESCE((SELECT relkind = 'p' FROM pg_class WHERE oid = to_regclass('transactions')), false)",
+                Boolean.class));
+    }
+
+    public List<String> partitions() {
+        return jdbcTemplate.queryForList("""
+            SELECT c.relname FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'transactions'::regclass
+            ORDER BY c.relname
+            """, String.class);
+    }
+
+    public void createPartition(YearMonth month) {
+        String name = PREFIX + month.format(SUFFIX);
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF transactions FOR VALUES FROM ('%s') TO ('%s')"
+                    .formatted(name, month.atDay(1), month.plusMonths(1).atDay(1)));
+        } catch (DataAccessException e) {
+            // най-често: transactions_default вече има редове за този месец
+            log.warn("Cannot create partition {}: {}", name, e.getMessage());
+        }
+    }
+
+    /** Откача партициите преди cutoff и ги мести в archive схемата заедно с income/expense. */
+    public int archiveOlderThan(YearMonth cutoff) {
+        int archived = 0;
+        for (String partition : partitions()) {
+            Matcher m = PARTITION_NAME.matcher(partition);
+            if (!m.matches() || !YearMonth.parse(m.group(1), SUFFIX).isBefore(cutoff)) continue;
+            try {
+                transactionTemplate.executeWithoutResult(status -> archive(partition));
+                archived++;
+                log.info("Archived transaction partition {} to schema {}", partition, archiveSchema);
+            } catch (DataAccessException e) {
+                log.warn("Cannot archive partition {}: {}", partition, e.getMessage());
+            }
+        }
+        return archived;
+    }
+
+    private void archive(String partition) {
+        jdbcTemplate.execute("CREATE SCHEMA IF NOT EXISTS " + archiveSchema);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s.income (LIKE income)".formatted(archiveSchema));
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s.expense (LIKE expense)".formatted(archiveSchema));
+
+        jdbcTemplate.execute("ALTER TABLE transactions DETACH PARTITION " + partition);
+        for (String child : List.of("income", "expense")) {
+            jdbcTemplate.update("""
+                INSERT INTO %1$s.%2$s
+                SELECT c.* FROM %2$s c JOIN %3$s t ON t.id = c.transaction_id
+                """.formatted(archiveSchema, child, partition));
+            jdbcTemplate.update("DELETE FROM %1$s c USING %2$s t WHERE t.id = c.transaction_id"
+                    .formatted(child, partition));
+        }
+        jdbcTemplate.execute("ALTER TABLE %s SET SCHEMA %s".formatted(partition, archiveSchema));
+    }
+
+    /**
+     * CREATE INDEX CONCURRENTLY не работи върху партиционирана таблица: индексът се създава
+     * празен върху родителя (ON ONLY), строи се конкурентно във всяка партиция и се закача.
+     */
+    public void createIndexConcurrently(String name, String definition) {
+        if (!isPartitioned()) {
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON transactions %s".formatted(name, definition));
+            return;
+        }
+        Boolean valid = jdbcTemplate.queryForObject("""
+            SELECT COALESCE((SELECT indisvalid FROM pg_index WHERE indexrelid = to_regclass(?)), false)
+            """, Boolean.class, name);
+        if (Boolean.TRUE.equals(valid)) return;
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s ON ONLY transactions %s".formatted(name, definition));
+        String suffix = name.replaceFirst("^idx_transactions_", "");
+        for (String partition : partitions()) {
+            String childIndex = partition + "_" + suffix;
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s %s"
+                    .formatted(childIndex, partition, definition));
+            jdbcTemplate.execute("ALTER INDEX %s ATTACH PARTITION %s".formatted(name, childIndex));
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.banking_project.transaction.service;
 
 import com.example.banking_project.transaction.model.TransactionType;
+import com.example.banking_project.web.dto.TransactionPageResponse;
 import com.example.banking_project.web.dto.TransactionRequest;
 import com.example.banking_project.web.dto.TransactionResponse;
 import com.example.banking_project.web.dto.TransactionTransferRequest;
@@ -10,6 +11,7 @@ import java.time.LocalDate;
 import java.util.List;
 import java.math.BigDecimal;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public interface TransactionService {
     TransactionTransferResponse createTransactionTransfer(TransactionTransferRequest request);
@@ -27,6 +29,18 @@ public interface TransactionService {
     List<TransactionTransferResponse> getTransactionsByType(UUID userId, TransactionType type);
     List<TransactionTransferResponse> getAllTransactionsByUserId(UUID userId);
 
+    // Keyset страници (cursor = null за първа страница)
+    TransactionPageResponse getTransactionsPageByUser(UUID userId, String cursor, int size);
+    TransactionPageResponse getTransactionsPageByAccount(UUID accountId, String cursor, int size);
+    TransactionPageResponse getTransactionsPageByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate, String cursor, int size);
+    TransactionPageResponse getAllByPeriodPage(LocalDate startDate, LocalDate endDate, String cursor, int size);
+
+    // Стрийминг ред по ред, без да се зарежда целият списък в паметта
+    void streamTransactionsByUser(UUID userId, Consumer<TransactionTransferResponse> consumer);
+    void streamTransactionsByAccount(UUID accountId, Consumer<TransactionTransferResponse> consumer);
+    void streamTransactionsByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate, Consumer<TransactionTransferResponse> consumer);
+    void streamAllByPeriod(LocalDate startDate, LocalDate endDate, Consumer<TransactionTransferResponse> consumer);
+
     void recordExpense(UUID userId, String iban, BigDecimal amount, String description);
     void recordIncome(UUID userId, String iban, BigDecimal amount, String description);
 
@@ -39,6 +53,8 @@ public interface TransactionService {
     List<TransactionTransferResponse> getAllByPeriodAndAmountBetween(LocalDate startDate, LocalDate endDate, BigDecimal minAmount, BigDecimal maxAmount);
     List<TransactionTransferResponse> searchAllByDescriptionInPeriod(LocalDate startDate, LocalDate endDate, String query);
 
+    TransactionPageResponse searchByDescriptionInPeriodPage(LocalDate startDate, LocalDate endDate, String query, int page, int size);
+
     BigDecimal sumIncomeByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate);
     BigDecimal sumExpenseByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate);
     BigDecimal netCashFlowByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate);
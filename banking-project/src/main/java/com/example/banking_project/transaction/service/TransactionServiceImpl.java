@@ -7,10 +7,11 @@ import com.example.banking_project.transaction.model.Transaction;
 import com.example.banking_project.transaction.model.TransactionStatus;
 import com.example.banking_project.transaction.model.TransactionType;
 import com.example.banking_project.transaction.repository.TransactionRepository;
+import com.example.banking_project.transaction.view.TransactionCursor;
+import com.example.banking_project.transaction.view.TransactionTransferView;
 import com.example.banking_project.user.model.User;
 import com.example.banking_project.user.service.UserService;
-import com.example.banking_project.web.dto.ExpenseRequest;
-import com.example.banking_project.web.dto.IncomeRequest;
+import com.example.banking_project.web.dto.TransactionPageResponse;
 import com.example.banking_project.web.dto.TransactionRequest;
 import com.example.banking_project.web.dto.TransactionResponse;
 import com.example.banking_project.web.dto.TransactionTransferRequest;
@@ -18,23 +19,30 @@ import com.example.banking_project.web.dto.TransactionTransferResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Currency;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 @RequiredArgsConstructor
 @Service
 public class TransactionServiceImpl implements TransactionService {
 
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final TransactionRepository transactionRepository;
     private final UserService userService;
-    private final IncomeService incomeService;
-    private final ExpenseService expenseService;
+    private final LedgerWriter ledgerWriter;
+    private final CashFlowRollupService cashFlowRollupService;
     private final AccountBalanceService accountBalanceService;
     private final TransactionMapper mapper;
+    private final DescriptionSearchIndex descriptionSearchIndex;
 
     @Override
     public TransactionTransferResponse createTransactionTransfer(TransactionTransferRequest request) {
@@ -52,19 +60,7 @@ public class TransactionServiceImpl implements TransactionService {
                 .transactionType(request.getTransactionType())
                 .user(user)
                 .build();
-        transactionRepository.save(transaction);
-
-        if (transaction.getIsIncome()) {
-            incomeService.createIncome(IncomeRequest.builder()
-                    .amount(transaction.getAmount())
-                    .transaction(transaction)
-                    .build());
-        } else {
-            expenseService.createExpense(ExpenseRequest.builder()
-                    .amount(transaction.getAmount())
-                    .transaction(transaction)
-                    .build());
-        }
+        ledgerWriter.write(transaction);
 
         return mapper.fromEntity(transaction);
     }
@@ -93,19 +89,7 @@ public class TransactionServiceImpl implements TransactionService {
                 .transactionType(request.getTransactionType())
                 .build();
 
-        transactionRepository.save(transaction);
-
-        if (transaction.getIsIncome()) {
-            incomeService.createIncome(IncomeRequest.builder()
-                    .amount(transaction.getAmount())
-                    .transaction(transaction)
-                    .build());
-        } else {
-            expenseService.createExpense(ExpenseRequest.builder()
-                    .amount(transaction.getAmount())
-                    .transaction(transaction)
-                    .build());
-        }
+        ledgerWriter.write(transaction);
 
         return TransactionResponse.builder()
                 .id(transaction.getId())
@@ -184,6 +168,83 @@ public class TransactionServiceImpl implements TransactionService {
                 .toList();
     }
 
+    // ===== Keyset страници =====
+
+    @Override
+    public TransactionPageResponse getTransactionsPageByUser(UUID userId, String cursor, int size) {
+        return page(cursor, size, (c, limit) ->
+                transactionRepository.getAllTransactionsByUserIdAfter(userId, c.createdOn(), c.id(), limit));
+    }
+
+    @Override
+    public TransactionPageResponse getTransactionsPageByAccount(UUID accountId, String cursor, int size) {
+        return page(cursor, size, (c, limit) ->
+                transactionRepository.getTransactionsByAccountAfter(accountId, c.createdOn(), c.id(), limit));
+    }
+
+    @Override
+    public TransactionPageResponse getTransactionsPageByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate,
+                                                                      String cursor, int size) {
+        return page(cursor, size, (c, limit) ->
+                transactionRepository.getTransactionsByUserAndPeriodAfter(userId, startDate, endDate, c.createdOn(), c.id(), limit));
+    }
+
+    @Override
+    public TransactionPageResponse getAllByPeriodPage(LocalDate startDate, LocalDate endDate, String cursor, int size) {
+        return page(cursor, size, (c, limit) ->
+                transactionRepository.getAllByPeriodAfter(startDate, endDate, c.createdOn(), c.id(), limit));
+    }
+
+    private TransactionPageResponse page(String cursor, int size,
+                                         BiFunction<TransactionCursor, Integer, List<TransactionTransferView>> query) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        // взимаме един ред в повече, за да знаем дали има следваща страница
+        List<TransactionTransferView> rows = query.apply(TransactionCursor.decode(cursor), size + 1);
+        boolean hasMore = rows.size() > size;
+        List<TransactionTransferView> pageRows = hasMore ? rows.subList(0, size) : rows;
+
+        return TransactionPageResponse.builder()
+                .items(pageRows.stream().map(mapper::fromView).toList())
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? TransactionCursor.of(pageRows.get(size - 1)).encode() : null)
+                .build();
+    }
+
+    // ===== Стрийминг =====
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamTransactionsByUser(UUID userId, Consumer<TransactionTransferResponse> consumer) {
+        drain(transactionRepository.streamAllTransactionsByUserId(userId), consumer);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamTransactionsByAccount(UUID accountId, Consumer<TransactionTransferResponse> consumer) {
+        drain(transactionRepository.streamTransactionsByAccount(accountId), consumer);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamTransactionsByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate,
+                                                  Consumer<TransactionTransferResponse> consumer) {
+        drain(transactionRepository.streamTransactionsByUserAndPeriod(userId, startDate, endDate), consumer);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllByPeriod(LocalDate startDate, LocalDate endDate, Consumer<TransactionTransferResponse> consumer) {
+        drain(transactionRepository.streamAllByPeriod(startDate, endDate), consumer);
+    }
+
+    private void drain(Stream<TransactionTransferView> rows, Consumer<TransactionTransferResponse> consumer) {
+        try (rows) {
+            rows.map(mapper::fromView).forEach(consumer);
+        }
+    }
+
     @Override
     public List<TransactionTransferResponse> getAllTransactions() {
         return transactionRepository.findAll().stream()
@@ -211,11 +272,7 @@ public class TransactionServiceImpl implements TransactionService {
                 .transactionType(TransactionType.WITHDRAWAL)
                 .build();
 
-        transactionRepository.save(tx);
-        expenseService.createExpense(ExpenseRequest.builder()
-                .amount(tx.getAmount())
-                .transaction(tx)
-                .build());
+        ledgerWriter.write(tx);
     }
 
     @Override
@@ -238,11 +295,7 @@ public class TransactionServiceImpl implements TransactionService {
                 .transactionType(TransactionType.DEPOSIT)
                 .build();
 
-        transactionRepository.save(tx);
-        incomeService.createIncome(IncomeRequest.builder()
-                .amount(tx.getAmount())
-                .transaction(tx)
-                .build());
+        ledgerWriter.write(tx);
     }
 
     // ===== ADMIN списъци по период / филтри =====
@@ -298,35 +351,65 @@ public class TransactionServiceImpl implements TransactionService {
 
     @Override
     public List<TransactionTransferResponse> searchAllByDescriptionInPeriod(LocalDate startDate, LocalDate endDate, String query) {
-        return transactionRepository.searchAllByDescriptionInPeriod(startDate, endDate, query).stream()
+        return transactionRepository.searchAllByDescriptionInPeriod(startDate, endDate,
+                        DescriptionSearchIndex.containsPattern(query)).stream()
                 .map(mapper::fromView)
                 .toList();
     }
 
+    // Ранкирано търсене по подниз/дума; nextCursor е номерът на следващата страница
+    @Override
+    public TransactionPageResponse searchByDescriptionInPeriodPage(LocalDate startDate, LocalDate endDate,
+                                                                   String query, int page, int size) {
+        String pattern = DescriptionSearchIndex.containsPattern(query);
+        if (pattern == null) {
+            throw new IllegalArgumentException("Search query must not be empty");
+        }
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        if (page < 0) {
+            throw new IllegalArgumentException("Page must not be negative");
+        }
+
+        String q = query.trim().toLowerCase();
+        int offset = Math.multiplyExact(page, size);
+        List<TransactionTransferView> rows = descriptionSearchIndex.isTrigramAvailable()
+                ? transactionRepository.searchRankedByDescriptionInPeriod(startDate, endDate, q, pattern, size + 1, offset)
+                : transactionRepository.searchByDescriptionInPeriod(startDate, endDate, pattern, size + 1, offset);
+        boolean hasMore = rows.size() > size;
+
+        return TransactionPageResponse.builder()
+                .items((hasMore ? rows.subList(0, size) : rows).stream().map(mapper::fromView).toList())
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? String.valueOf(page + 1) : null)
+                .build();
+    }
+
     // ===== ADMIN агрегати =====
 
     @Override
     public BigDecimal sumIncomeByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate) {
-        return transactionRepository.sumIncomeByUserAndPeriod(userId, startDate, endDate);
+        return cashFlowRollupService.sumIncomeByUser(userId, startDate, endDate);
     }
 
     @Override
     public BigDecimal sumExpenseByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate) {
-        return transactionRepository.sumExpenseByUserAndPeriod(userId, startDate, endDate);
+        return cashFlowRollupService.sumExpenseByUser(userId, startDate, endDate);
     }
 
     @Override
     public BigDecimal netCashFlowByUserAndPeriod(UUID userId, LocalDate startDate, LocalDate endDate) {
-        return transactionRepository.netCashFlowByUserAndPeriod(userId, startDate, endDate);
+        return cashFlowRollupService.netCashFlowByUser(userId, startDate, endDate);
     }
 
     @Override
     public BigDecimal sumIncomeByAccountAndPeriod(UUID accountId, LocalDate startDate, LocalDate endDate) {
-        return transactionRepository.sumIncomeByAccountAndPeriod(accountId, startDate, endDate);
+        return cashFlowRollupService.sumIncomeByAccount(accountId, startDate, endDate);
     }
 
     @Override
     public BigDecimal sumExpenseByAccountAndPeriod(UUID accountId, LocalDate startDate, LocalDate endDate) {
-        return transactionRepository.sumExpenseByAccountAndPeriod(accountId, startDate, endDate);
+        return cashFlowRollupService.sumExpenseByAccount(accountId, startDate, endDate);
     }
 }
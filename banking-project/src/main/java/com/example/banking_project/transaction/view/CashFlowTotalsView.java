@@ -0,0 +1,8 @@
+package com.example.banking_project.transaction.view;
+
+import java.math.BigDecimal;
+
+public interface CashFlowTotalsView {
+    BigDecimal getIncome();
+    BigDecimal getExpense();
+}
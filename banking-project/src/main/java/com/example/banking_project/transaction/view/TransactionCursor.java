@@ -0,0 +1,39 @@
+package com.example.banking_project.transaction.view;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Позиция в историята на транзакциите по ключа (created_on, id), подреден низходящо.
+ * Клиентът получава курсора като непрозрачен base64 низ.
+ */
+public record TransactionCursor(LocalDate createdOn, UUID id) {
+
+    // Първа страница: по-голям от всеки реален ред
+    public static final TransactionCursor FIRST =
+            new TransactionCursor(LocalDate.of(9999, 12, 31), new UUID(-1L, -1L));
+
+    public static TransactionCursor of(TransactionTransferView view) {
+        return new TransactionCursor(view.getCreatedOn(), view.getId());
+    }
+
+    public static TransactionCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return FIRST;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            return new TransactionCursor(LocalDate.parse(raw.substring(0, sep)), UUID.fromString(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        String raw = createdOn + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
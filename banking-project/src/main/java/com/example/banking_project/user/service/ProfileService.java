@@ -1,5 +1,6 @@
 package com.example.banking_project.user.service;
 
+import com.example.banking_project.security.PrincipalCache;
 import com.example.banking_project.user.model.User;
 import com.example.banking_project.user.repository.UserRepository;
 import com.example.banking_project.web.dto.CompleteProfileRequest;
@@ -12,6 +13,7 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class ProfileService {
     private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
     @Transactional
     public void completeProfileByEmail(String email, CompleteProfileRequest req) {
@@ -28,6 +30,7 @@ public class ProfileService {
         user.setProfileCompleted(true);
 
         userRepository.save(user);
+        principalCache.evict(email);
     }
 
     @Transactional
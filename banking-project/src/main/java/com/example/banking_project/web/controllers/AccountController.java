@@ -2,7 +2,10 @@ package com.example.banking_project.web.controllers;
 
 import com.example.banking_project.account.model.Account;
 import com.example.banking_project.account.service.AccountService;
+import com.example.banking_project.account.service.BulkTransferService;
 import com.example.banking_project.transaction.service.TransactionService;
+import com.example.banking_project.web.dto.BulkTransferRequest;
+import com.example.banking_project.web.dto.BulkTransferResponse;
 import com.example.banking_project.web.dto.CreateAccountRequest;
 import com.example.banking_project.web.dto.TransactionTransferResponse;
 import com.example.banking_project.web.dto.TransferRequest;
@@ -24,6 +27,7 @@ public class AccountController {
 
     private final AccountService accountService;
     private final TransactionService transactionService;
+    private final BulkTransferService bulkTransferService;
 
     @PreAuthorize("hasAuthority('PROFILE_COMPLETED') and hasAnyRole('USER','ADMIN')")
     @GetMapping("/{userId}/accounts")
@@ -51,6 +55,14 @@ public class AccountController {
         return ResponseEntity.ok(accountService.transfer(request));
     }
 
+    @PreAuthorize("hasAuthority('PROFILE_COMPLETED') and hasAnyRole('USER','ADMIN')")
+    @PostMapping("/transfer/bulk")
+    public ResponseEntity<BulkTransferResponse> bulkTransfer(@RequestBody BulkTransferRequest requestBody,
+                                                             HttpServletRequest request) {
+        UUID userId = UUID.fromString((String) request.getAttribute("userId"));
+        return ResponseEntity.ok(bulkTransferService.transfer(requestBody, userId));
+    }
+
     @PreAuthorize("hasAuthority('PROFILE_COMPLETED') and hasAnyRole('USER','ADMIN')")
     @GetMapping("/{iban}")
     public Account getAccountByIban(@PathVariable String iban) {
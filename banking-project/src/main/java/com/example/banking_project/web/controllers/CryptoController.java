@@ -1,5 +1,6 @@
 package com.example.banking_project.web.controllers;
 
+import com.example.banking_project.cryptocurrency.service.CandleHistoryService;
 import com.example.banking_project.cryptocurrency.service.CryptoService;
 import com.example.banking_project.web.dto.crypto.CryptoHistoryDto;
 import com.example.banking_project.web.dto.crypto.CryptoPriceDto;
@@ -17,7 +18,12 @@ import java.util.Locale;
 public class CryptoController {
 
     private final CryptoService service;
-    public CryptoController(CryptoService service) { this.service = service; }
+    private final CandleHistoryService historyService;
+
+    public CryptoController(CryptoService service, CandleHistoryService historyService) {
+        this.service = service;
+        this.historyService = historyService;
+    }
 
     @PreAuthorize("permitAll()")
     @GetMapping(value = "/simple-price", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -41,6 +47,6 @@ public class CryptoController {
         String normVs = (vsCurrency == null || vsCurrency.isBlank() ? "usd" : vsCurrency.toLowerCase(Locale.ROOT).trim());
         String normDays = (days == null || days.isBlank() ? "30" : days.trim());
 
-        return service.getHistory(normId, normVs, normDays);
+        return historyService.getHistory(normId, normVs, normDays);
     }
 }
@@ -0,0 +1,28 @@
+package com.example.banking_project.web.controllers;
+
+import com.example.banking_project.dashboard.service.DashboardReadModel;
+import com.example.banking_project.web.dto.dashboard.DashboardResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/dashboard")
+@RequiredArgsConstructor
+public class DashboardController {
+
+    private final DashboardReadModel dashboardReadModel;
+
+    @PreAuthorize("hasAuthority('PROFILE_COMPLETED') and hasAnyRole('USER','ADMIN')")
+    @GetMapping
+    public ResponseEntity<DashboardResponse> getDashboard(HttpServletRequest request) {
+        UUID userId = UUID.fromString((String) request.getAttribute("userId"));
+        return ResponseEntity.ok(dashboardReadModel.getDashboard(userId));
+    }
+}
@@ -1,33 +1,49 @@
 package com.example.banking_project.web.controllers;
 
 import com.example.banking_project.cryptocurrency.service.LivePriceService;
-import com.example.banking_project.web.dto.crypto.Ticker;
+import com.example.banking_project.cryptocurrency.service.PriceBus;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 
-import java.time.Duration;
+import java.util.Set;
 
 @RestController
 @RequiredArgsConstructor
 public class LiveCryptoController {
 
-    private final LivePriceService service;
+    private final PriceBus priceBus;
+    private final LivePriceService livePriceService;
 
+    // По едно събитие {id, price} на променен символ; symbols = coingecko id-та (по избор)
     @PreAuthorize("hasAuthority('PROFILE_COMPLETED') and hasAnyRole('USER','ADMIN')")
     @GetMapping(value = "/api/crypto/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public ResponseEntity<Flux<Ticker>> streamBtcLive() {
-        Flux<Ticker> stream = service.streamPrices()
-                .sample(Duration.ofSeconds(1))
-                .onBackpressureLatest();
+    public ResponseEntity<Flux<String>> streamLive(@RequestParam(required = false) Set<String> symbols) {
+        return ResponseEntity
+                .ok()
+                .header("Cache-Control", "no-store")
+                .body(priceBus.tickerEvents(symbols));
+    }
 
+    // По едно събитие на tick: масив с текущите цени на всички (или избраните) символи
+    @PreAuthorize("hasAuthority('PROFILE_COMPLETED') and hasAnyRole('USER','ADMIN')")
+    @GetMapping(value = "/api/crypto/live/snapshot", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<String>> streamSnapshots(@RequestParam(required = false) Set<String> symbols) {
         return ResponseEntity
                 .ok()
                 .header("Cache-Control", "no-store")
-                .body(stream);
+                .body(priceBus.snapshotEvents(symbols));
+    }
+
+    // Дълбочина на ingest опашката, изхвърлени съобщения и латентност борса -> кеш
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/api/crypto/live/stats")
+    public ResponseEntity<LivePriceService.IngestStats> ingestStats() {
+        return ResponseEntity.ok(livePriceService.ingestStats());
     }
 }
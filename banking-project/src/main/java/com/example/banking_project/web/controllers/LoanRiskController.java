@@ -2,19 +2,25 @@ package com.example.banking_project.web.controllers;
 
 import com.example.banking_project.loan.model.Loan;
 import com.example.banking_project.loan.model.LoanStatus;
+import com.example.banking_project.loan.model.ReportFormat;
 import com.example.banking_project.loan.service.LoanService;
+import com.example.banking_project.loan.service.ReportJobService;
 import com.example.banking_project.loan.view.LoanView;
 import com.example.banking_project.web.dto.LoanApplicationResponse;
 import com.example.banking_project.web.dto.LoanRequest;
 import com.example.banking_project.web.dto.LoanRiskResult;
+import com.example.banking_project.web.dto.ReportJobResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
 import java.net.URI;
@@ -29,6 +35,7 @@ import java.util.UUID;
 public class LoanRiskController {
 
     private final LoanService loanService;
+    private final ReportJobService reportJobService;
 
     @PostMapping(value = "/risk-assessment",
             consumes = MediaType.APPLICATION_JSON_VALUE,
@@ -79,6 +86,56 @@ public class LoanRiskController {
                 .body(excel);
     }
 
+    // Асинхронни риск отчети: 202 + jobId, после статус и сваляне
+    @PostMapping("/risk-report/jobs")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ReportJobResponse> submitReportJob(@RequestParam UUID userId,
+                                                             @RequestParam(defaultValue = "PDF") ReportFormat format) {
+        ReportJobResponse job = reportJobService.submit(userId, format);
+        return ResponseEntity
+                .accepted()
+                .location(URI.create("/api/loans/risk-report/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    @GetMapping("/risk-report/jobs/{jobId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ReportJobResponse> getReportJob(@PathVariable UUID jobId) {
+        return ResponseEntity.ok(reportJobService.status(jobId));
+    }
+
+    @GetMapping("/risk-report/jobs/{jobId}/download")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Resource> downloadReportJob(@PathVariable UUID jobId) {
+        ReportJobService.ReportArtifact artifact = reportJobService.download(jobId);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=loan_risk_report." + artifact.format().getExtension())
+                .contentType(MediaType.parseMediaType(artifact.format().getContentType()))
+                .body(new FileSystemResource(artifact.path()));
+    }
+
+    // Отчет за всички кредитополучатели - пише се директно в отговора, без byte[] в паметта
+    @GetMapping("/risk-report/portfolio/pdf")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> downloadPortfolioPdf() {
+        StreamingResponseBody body = loanService::writePortfolioPdfReport;
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=loan_risk_portfolio.pdf")
+                .contentType(MediaType.APPLICATION_PDF)
+                .body(body);
+    }
+
+    @GetMapping("/risk-report/portfolio/excel")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> downloadPortfolioExcel() {
+        StreamingResponseBody body = loanService::writePortfolioExcelReport;
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=loan_risk_portfolio.xlsx")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(body);
+    }
+
     @GetMapping("/obligations/user/{userId}")
     @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
     public ResponseEntity<BigDecimal> getUserMonthlyObligations(@PathVariable UUID userId) {
@@ -4,28 +4,39 @@ import com.example.banking_project.transaction.model.TransactionType;
 import com.example.banking_project.transaction.service.ExpenseService;
 import com.example.banking_project.transaction.service.IncomeService;
 import com.example.banking_project.transaction.service.TransactionService;
+import com.example.banking_project.web.dto.TransactionPageResponse;
 import com.example.banking_project.web.dto.TransactionRequest;
 import com.example.banking_project.web.dto.TransactionResponse;
 import com.example.banking_project.web.dto.TransactionTransferResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/transactions")
 @RequiredArgsConstructor
 public class TransactionController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final TransactionService transactionService;
     private final IncomeService incomeService;
     private final ExpenseService expenseService;
+    private final ObjectMapper objectMapper;
 
     @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
     @PostMapping("/new")
@@ -45,6 +56,34 @@ public class TransactionController {
         return ResponseEntity.ok(transactionService.getAllTransactionsByUserId(userId));
     }
 
+    @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
+    @GetMapping("/user/{userId}/page")
+    public ResponseEntity<TransactionPageResponse> getByUserPage(@PathVariable UUID userId,
+                                                                 @RequestParam(required = false) String cursor,
+                                                                 @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(transactionService.getTransactionsPageByUser(userId, cursor, size));
+    }
+
+    @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
+    @GetMapping(value = "/user/{userId}/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamByUser(@PathVariable UUID userId) {
+        return ndjson(consumer -> transactionService.streamTransactionsByUser(userId, consumer));
+    }
+
+    @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
+    @GetMapping("/account/{accountId}/page")
+    public ResponseEntity<TransactionPageResponse> getByAccountPage(@PathVariable UUID accountId,
+                                                                    @RequestParam(required = false) String cursor,
+                                                                    @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(transactionService.getTransactionsPageByAccount(accountId, cursor, size));
+    }
+
+    @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
+    @GetMapping(value = "/account/{accountId}/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamByAccount(@PathVariable UUID accountId) {
+        return ndjson(consumer -> transactionService.streamTransactionsByAccount(accountId, consumer));
+    }
+
     @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
     @GetMapping("/type")
     public ResponseEntity<List<TransactionTransferResponse>> getByType(@RequestParam UUID userId,
@@ -60,6 +99,24 @@ public class TransactionController {
         return ResponseEntity.ok(transactionService.getTransactionsByUserAndPeriod(userId, startDate, endDate));
     }
 
+    @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
+    @GetMapping("/period/page")
+    public ResponseEntity<TransactionPageResponse> getByUserAndPeriodPage(@RequestParam UUID userId,
+                                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+                                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+                                                                          @RequestParam(required = false) String cursor,
+                                                                          @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(transactionService.getTransactionsPageByUserAndPeriod(userId, startDate, endDate, cursor, size));
+    }
+
+    @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
+    @GetMapping(value = "/period/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamByUserAndPeriod(@RequestParam UUID userId,
+                                                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+                                                                       @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        return ndjson(consumer -> transactionService.streamTransactionsByUserAndPeriod(userId, startDate, endDate, consumer));
+    }
+
     @PreAuthorize("hasRole('ADMIN') or (hasRole('USER') and hasAuthority('PROFILE_COMPLETED'))")
     @GetMapping("/income/summary")
     public ResponseEntity<BigDecimal> getIncomeSummary(@RequestParam UUID userId,
@@ -89,6 +146,24 @@ public class TransactionController {
         return ResponseEntity.ok(transactionService.getAllByPeriod(startDate, endDate));
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/admin/period/page")
+    public ResponseEntity<TransactionPageResponse> getAllByPeriodPage(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(transactionService.getAllByPeriodPage(startDate, endDate, cursor, size));
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(value = "/admin/period/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAllByPeriod(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        return ndjson(consumer -> transactionService.streamAllByPeriod(startDate, endDate, consumer));
+    }
+
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/admin/period/type")
     public ResponseEntity<List<TransactionTransferResponse>> getAllByPeriodAndType(
@@ -158,6 +233,17 @@ public class TransactionController {
         return ResponseEntity.ok(transactionService.searchAllByDescriptionInPeriod(startDate, endDate, q));
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/admin/period/search/page")
+    public ResponseEntity<TransactionPageResponse> searchByDescriptionInPeriodPage(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(transactionService.searchByDescriptionInPeriodPage(startDate, endDate, q, page, size));
+    }
+
     // ===== ADMIN aggregates =====
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -204,4 +290,19 @@ public class TransactionController {
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
         return ResponseEntity.ok(transactionService.sumExpenseByAccountAndPeriod(accountId, startDate, endDate));
     }
+
+    // NDJSON: по един JSON обект на ред, записван директно в изходния поток
+    private ResponseEntity<StreamingResponseBody> ndjson(Consumer<Consumer<TransactionTransferResponse>> source) {
+        StreamingResponseBody body = out -> source.accept(row -> writeLine(out, row));
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    private void writeLine(OutputStream out, TransactionTransferResponse row) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(row));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package com.example.banking_project.web.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+public class BulkTransferItemResult {
+    private int index;
+    private String senderIban;
+    private String receiverIban;
+    private String status;
+    private String reason;
+    private BigDecimal debitAmount;
+    private String debitCurrency;
+    private BigDecimal creditAmount;
+    private String creditCurrency;
+}
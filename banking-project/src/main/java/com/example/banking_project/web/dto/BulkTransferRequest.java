@@ -0,0 +1,14 @@
+package com.example.banking_project.web.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class BulkTransferRequest {
+    // описание по подразбиране за редовете без собствено (например "Заплати 10/2026")
+    private String description;
+    private List<TransferRequest> transfers;
+}
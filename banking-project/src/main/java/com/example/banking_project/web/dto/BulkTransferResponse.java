@@ -0,0 +1,15 @@
+package com.example.banking_project.web.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class BulkTransferResponse {
+    private int total;
+    private int succeeded;
+    private int failed;
+    private List<BulkTransferItemResult> items;
+}
@@ -0,0 +1,21 @@
+package com.example.banking_project.web.dto;
+
+import com.example.banking_project.loan.model.ReportFormat;
+import com.example.banking_project.loan.model.ReportJobStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+public class ReportJobResponse {
+    private UUID jobId;
+    private UUID userId;
+    private ReportFormat format;
+    private ReportJobStatus status;
+    private boolean cached;
+    private String error;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,14 @@
+package com.example.banking_project.web.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class TransactionPageResponse {
+    private List<TransactionTransferResponse> items;
+    private String nextCursor;
+    private boolean hasMore;
+}
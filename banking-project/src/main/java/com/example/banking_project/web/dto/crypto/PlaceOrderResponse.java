@@ -10,5 +10,7 @@ public record PlaceOrderResponse(
         BigDecimal priceUsd,
         BigDecimal priceBgn,
         BigDecimal totalCostBgn,
-        String transactionId
+        String transactionId,
+        String currency,
+        BigDecimal totalCost
 ) {}
@@ -0,0 +1,11 @@
+package com.example.banking_project.web.dto.dashboard;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+public record DashboardAccountDto(
+        UUID accountId,
+        String iban,
+        String currency,
+        BigDecimal balance
+) {}
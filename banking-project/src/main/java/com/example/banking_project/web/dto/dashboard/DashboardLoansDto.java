@@ -0,0 +1,12 @@
+package com.example.banking_project.web.dto.dashboard;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public record DashboardLoansDto(
+        long activeLoans,
+        long overdueLoans,
+        BigDecimal outstanding,
+        BigDecimal monthlyObligation,
+        LocalDate nextPaymentDate
+) {}
@@ -0,0 +1,17 @@
+package com.example.banking_project.web.dto.dashboard;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public record DashboardResponse(
+        UUID userId,
+        List<DashboardAccountDto> accounts,
+        BigDecimal totalBalanceBgn,
+        BigDecimal holdingsValueUsd,
+        BigDecimal holdingsValueBgn,
+        List<DashboardTransactionDto> recentTransactions,
+        DashboardLoansDto loans,
+        Instant updatedAt
+) {}
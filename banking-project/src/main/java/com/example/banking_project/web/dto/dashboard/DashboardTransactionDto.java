@@ -0,0 +1,17 @@
+package com.example.banking_project.web.dto.dashboard;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+
+public record DashboardTransactionDto(
+        UUID id,
+        UUID accountId,
+        BigDecimal amount,
+        String currency,
+        String transactionType,
+        String transactionStatus,
+        String description,
+        LocalDate createdOn,
+        boolean income
+) {}
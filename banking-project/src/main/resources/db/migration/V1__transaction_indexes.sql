@@ -0,0 +1,12 @@
+-- Списъци по потребител/сметка/период (keyset: created_on DESC, id DESC).
+-- INCLUDE колоните покриват cash flow агрегатите без четене на таблицата.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_transactions_user_created
+    ON transactions (user_id, created_on DESC, id DESC)
+    INCLUDE (amount, transaction_status, is_income, is_expense);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_transactions_account_created
+    ON transactions (account_id, created_on DESC, id DESC)
+    INCLUDE (amount, transaction_status, is_income, is_expense);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_transactions_created
+    ON transactions (created_on DESC, id DESC);
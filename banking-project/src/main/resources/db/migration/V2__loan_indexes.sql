@@ -0,0 +1,9 @@
+-- Дължими вноски (ACTIVE + next_date_of_payment <= дата), chunk-овете вървят по id
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_loans_status_next_payment
+    ON loans (loan_status, next_date_of_payment, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_loans_user
+    ON loans (user_id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_loans_repayment_account
+    ON loans (repayment_account_id);
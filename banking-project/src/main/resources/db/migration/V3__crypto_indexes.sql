@@ -0,0 +1,11 @@
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_crypto_holding_user
+    ON crypto_holding (user_id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_crypto_holding_iban_asset
+    ON crypto_holding (iban, asset);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_crypto_order_account_executed
+    ON crypto_order (account_id, executed_at DESC);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_crypto_order_user_executed
+    ON crypto_order (user_id, executed_at DESC);
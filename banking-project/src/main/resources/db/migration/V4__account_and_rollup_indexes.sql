@@ -0,0 +1,7 @@
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_accounts_user
+    ON accounts (user_id);
+
+-- (user_id, account_id, year_month) вече е unique; сумите по сметка имат нужда от свой индекс
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_cash_flow_monthly_account_month
+    ON cash_flow_monthly (account_id, year_month)
+    INCLUDE (income_amount, expense_amount);
@@ -0,0 +1,74 @@
+-- transactions става таблица с месечни range партиции по created_on.
+-- Първичният ключ на партиционирана таблица трябва да съдържа ключа на партициониране,
+-- затова е (id, created_on), а income/expense вече нямат FK към transactions.
+-- Hibernate не вижда FK-овете на партиционирана таблица, затова тук ги създава миграцията,
+-- а в Transaction/Income/Expense са с ConstraintMode.NO_CONSTRAINT.
+DO $$
+DECLARE
+    r record;
+BEGIN
+    FOR r IN SELECT conname, conrelid::regclass AS tbl
+             FROM pg_constraint
+             WHERE contype = 'f' AND confrelid = 'transactions'::regclass LOOP
+        EXECUTE format('ALTER TABLE %s DROP CONSTRAINT %I', r.tbl, r.conname);
+    END LOOP;
+END $$;
+
+ALTER TABLE transactions RENAME TO transactions_unpartitioned;
+
+CREATE TABLE transactions (
+    LIKE transactions_unpartitioned INCLUDING DEFAULTS INCLUDING CONSTRAINTS,
+    CONSTRAINT transactions_pkey_by_month PRIMARY KEY (id, created_on),
+    CONSTRAINT fk_transactions_account FOREIGN KEY (account_id) REFERENCES accounts (id),
+    CONSTRAINT fk_transactions_user FOREIGN KEY (user_id) REFERENCES users (id)
+) PARTITION BY RANGE (created_on);
+
+-- редове извън създадените месеци, докато TransactionPartitionService не създаде партицията им
+CREATE TABLE transactions_default PARTITION OF transactions DEFAULT;
+
+-- по една партиция за всеки месец от съществуващите данни до 3 месеца напред
+DO $$
+DECLARE
+    month_start date;
+    until_month date;
+BEGIN
+    SELECT date_trunc('month', COALESCE(MIN(created_on), CURRENT_DATE))::date,
+           (date_trunc('month', GREATEST(COALESCE(MAX(created_on), CURRENT_DATE), CURRENT_DATE)) + INTERVAL '3 months')::date
+    INTO month_start, until_month
+    FROM transactions_unpartitioned;
+
+    WHILE month_start <= until_month LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF transactions FOR VALUES FROM (%L) TO (%L)',
+                       'transactions_p' || to_char(month_start, 'YYYYMM'),
+                       month_start, (month_start + INTERVAL '1 month')::date);
+        month_start := (month_start + INTERVAL '1 month')::date;
+    END LOOP;
+END $$;
+
+INSERT INTO transactions SELECT * FROM transactions_unpartitioned;
+
+DROP TABLE transactions_unpartitioned;
+
+ALTER TABLE transactions RENAME CONSTRAINT transactions_pkey_by_month TO transactions_pkey;
+
+-- индексите от V1, вече върху партиционираната таблица (създават се във всяка партиция)
+CREATE INDEX IF NOT EXISTS idx_transactions_user_created
+    ON transactions (user_id, created_on DESC, id DESC)
+    INCLUDE (amount, transaction_status, is_income, is_expense);
+
+CREATE INDEX IF NOT EXISTS idx_transactions_account_created
+    ON transactions (account_id, created_on DESC, id DESC)
+    INCLUDE (amount, transaction_status, is_income, is_expense);
+
+CREATE INDEX IF NOT EXISTS idx_transactions_created
+    ON transactions (created_on DESC, id DESC);
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'pg_trgm') THEN
+        CREATE INDEX IF NOT EXISTS idx_transactions_description_trgm
+            ON transactions USING gin (LOWER(description) gin_trgm_ops);
+    END IF;
+END $$;
+
+ANALYZE transactions;
@@ -0,0 +1,129 @@
+package com.example.banking_project.account.service;
+
+import com.example.banking_project.account.repository.AccountRepository;
+import com.example.banking_project.account.view.AccountLockView;
+import com.example.banking_project.cryptocurrency.service.FxRateProvider;
+import com.example.banking_project.cryptocurrency.service.FxService;
+import com.example.banking_project.transaction.service.LedgerWriter;
+import com.example.banking_project.user.repository.UserRepository;
+import com.example.banking_project.web.dto.BulkTransferItemResult;
+import com.example.banking_project.web.dto.BulkTransferRequest;
+import com.example.banking_project.web.dto.BulkTransferResponse;
+import com.example.banking_project.web.dto.TransferRequest;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BulkTransferServiceTest {
+
+    private static final String MINE = "BG00MINE0000000001";
+    private static final String OTHERS = "BG00OTHR0000000002";
+    private static final String PAYEE = "BG00PAYE0000000003";
+
+    private final UUID me = UUID.randomUUID();
+    private final UUID someoneElse = UUID.randomUUID();
+    private final AccountRepository accountRepository = mock(AccountRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private BulkTransferService service;
+
+    @BeforeEach
+    void setUp() {
+        FxRateProvider rates = mock(FxRateProvider.class);
+        when(rates.loadBgnRates()).thenReturn(Map.of());
+        when(accountRepository.lockAllByIbanIn(any())).thenReturn(List.of(
+                account(MINE, me, "500.00"),
+                account(OTHERS, someoneElse, "500.00"),
+                account(PAYEE, UUID.randomUUID(), "0.00")));
+        service = new BulkTransferService(accountRepository, mock(UserRepository.class), mock(LedgerWriter.class),
+                new FxService(rates), jdbcTemplate, mock(EntityManager.class),
+                mock(PlatformTransactionManager.class), 2000, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void userCannotDebitSomeoneElsesAccount() {
+        authenticate("ROLE_USER");
+
+        BulkTransferResponse response = service.transfer(batch(), me);
+
+        assertThat(response.getSucceeded()).isEqualTo(1);
+        assertThat(response.getItems()).extracting(BulkTransferItemResult::getStatus)
+                .containsExactly("SUCCEEDED", "FAILED");
+        assertThat(response.getItems().get(1).getReason())
+                .isEqualTo("Sender account does not belong to the current user.");
+    }
+
+    @Test
+    void unknownCallerCannotDebitAnything() {
+        authenticate("ROLE_USER");
+
+        BulkTransferResponse response = service.transfer(batch(), null);
+
+        assertThat(response.getSucceeded()).isZero();
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void adminCanDebitAnyAccount() {
+        authenticate("ROLE_ADMIN");
+
+        BulkTransferResponse response = service.transfer(batch(), me);
+
+        assertThat(response.getSucceeded()).isEqualTo(2);
+    }
+
+    private BulkTransferRequest batch() {
+        BulkTransferRequest request = new BulkTransferRequest();
+        request.setDescription("Salaries");
+        request.setTransfers(List.of(transfer(MINE), transfer(OTHERS)));
+        return request;
+    }
+
+    private static TransferRequest transfer(String senderIban) {
+        TransferRequest t = new TransferRequest();
+        t.setSenderIban(senderIban);
+        t.setReceiverIban(PAYEE);
+        t.setAmount(new BigDecimal("100.00"));
+        return t;
+    }
+
+    private static void authenticate(String role) {
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "caller", null, List.of(new SimpleGrantedAuthority(role))));
+    }
+
+    private static AccountLockView account(String iban, UUID userId, String balance) {
+        UUID id = UUID.randomUUID();
+        return new AccountLockView() {
+            @Override public UUID getId() { return id; }
+            @Override public String getIban() { return iban; }
+            @Override public UUID getUserId() { return userId; }
+            @Override public String getCurrencyCode() { return "BGN"; }
+            @Override public BigDecimal getBalance() { return new BigDecimal(balance); }
+        };
+    }
+}
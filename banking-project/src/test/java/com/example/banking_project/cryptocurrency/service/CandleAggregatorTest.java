@@ -0,0 +1,122 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.model.CandleInterval;
+import com.example.banking_project.cryptocurrency.service.CandleStore.Candle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class CandleAggregatorTest {
+
+    // 2024-06-10T10:00:00Z - начало на час, минута и секунда
+    private static final long HOUR = 1_718_013_600_000L;
+
+    private final CandleStore store = mock(CandleStore.class);
+    private CandleAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        aggregator = new CandleAggregator(store);
+        ReflectionTestUtils.setField(aggregator, "enabled", true);
+        ReflectionTestUtils.setField(aggregator, "closeGraceMs", 500L);
+    }
+
+    @Test
+    void tradesInOneBucketBuildOhlcv() {
+        aggregator.onTrade("bitcoin", 100, 1, HOUR + 10);
+        aggregator.onTrade("bitcoin", 105, 2, HOUR + 200);
+        aggregator.onTrade("bitcoin", 95, 0.5, HOUR + 400);
+        aggregator.onTrade("bitcoin", 101, 1.5, HOUR + 999);
+
+        assertThat(aggregator.current("bitcoin", CandleInterval.SECOND_1))
+                .contains(new Candle(HOUR, 100, 105, 95, 101, 5));
+        verifyNoInteractions(store);
+    }
+
+    @Test
+    void tradeInNextBucketClosesPreviousBar() {
+        aggregator.onTrade("bitcoin", 100, 1, HOUR + 10);
+        aggregator.onTrade("bitcoin", 110, 1, HOUR + 900);
+        // следващата секунда, същата минута и час
+        aggregator.onTrade("bitcoin", 108, 3, HOUR + 1_000);
+
+        verify(store).append("bitcoin", CandleInterval.SECOND_1, new Candle(HOUR, 100, 110, 100, 110, 2));
+        verify(store, never()).append(eq("bitcoin"), eq(CandleInterval.MINUTE_1), any());
+        verify(store, never()).append(eq("bitcoin"), eq(CandleInterval.HOUR_1), any());
+
+        assertThat(aggregator.current("bitcoin", CandleInterval.SECOND_1))
+                .contains(new Candle(HOUR + 1_000, 108, 108, 108, 108, 3));
+        assertThat(aggregator.current("bitcoin", CandleInterval.MINUTE_1))
+                .contains(new Candle(HOUR, 100, 110, 100, 108, 5));
+    }
+
+    @Test
+    void lateTradeForClosedBarIsDropped() {
+        aggregator.onTrade("bitcoin", 100, 1, HOUR + 1_500);
+        aggregator.onTrade("bitcoin", 50, 9, HOUR + 900);
+
+        assertThat(aggregator.current("bitcoin", CandleInterval.SECOND_1))
+                .contains(new Candle(HOUR + 1_000, 100, 100, 100, 100, 1));
+        // минутата и часът са същите - сделката влиза в тях
+        assertThat(aggregator.current("bitcoin", CandleInterval.MINUTE_1))
+                .contains(new Candle(HOUR, 100, 100, 50, 50, 10));
+    }
+
+    @Test
+    void closeElapsedWritesOnlyBarsPastTheGrace() {
+        long now = System.currentTimeMillis();
+        long currentHour = CandleInterval.HOUR_1.bucket(now);
+        long earlier = currentHour - 2 * CandleInterval.HOUR_1.getMillis();
+        aggregator.onTrade("bitcoin", 100, 1, earlier + 5);
+        aggregator.onTrade("ethereum", 3000, 2, now);
+
+        aggregator.closeElapsed();
+
+        ArgumentCaptor<Candle> closed = ArgumentCaptor.forClass(Candle.class);
+        verify(store).append(eq("bitcoin"), eq(CandleInterval.SECOND_1), closed.capture());
+        verify(store).append(eq("bitcoin"), eq(CandleInterval.MINUTE_1), closed.capture());
+        verify(store).append(eq("bitcoin"), eq(CandleInterval.HOUR_1), closed.capture());
+        assertThat(closed.getAllValues()).extracting(Candle::openTime).containsOnly(earlier);
+        assertThat(aggregator.current("bitcoin", CandleInterval.HOUR_1)).isEmpty();
+
+        // текущият час на ethereum не е изтекъл
+        verify(store, never()).append(eq("ethereum"), eq(CandleInterval.HOUR_1), any());
+        assertThat(aggregator.current("ethereum", CandleInterval.HOUR_1)).isPresent();
+    }
+
+    @Test
+    void flushWritesPartialBars() {
+        long now = System.currentTimeMillis();
+        aggregator.onTrade("bitcoin", 100, 1, now);
+
+        aggregator.flush();
+
+        for (CandleInterval interval : List.of(CandleInterval.values())) {
+            verify(store).append("bitcoin", interval, new Candle(interval.bucket(now), 100, 100, 100, 100, 1));
+            assertThat(aggregator.current("bitcoin", interval)).isEmpty();
+        }
+    }
+
+    @Test
+    void disabledOrInvalidTradesAreIgnored() {
+        aggregator.onTrade("bitcoin", 0, 1, HOUR);
+        aggregator.onTrade("bitcoin", Double.NaN, 1, HOUR);
+        aggregator.onTrade("bitcoin", 100, 1, 0);
+        assertThat(aggregator.current("bitcoin", CandleInterval.SECOND_1)).isEmpty();
+
+        ReflectionTestUtils.setField(aggregator, "enabled", false);
+        aggregator.onTrade("ethereum", 100, 1, HOUR);
+        assertThat(aggregator.current("ethereum", CandleInterval.SECOND_1)).isEmpty();
+    }
+}
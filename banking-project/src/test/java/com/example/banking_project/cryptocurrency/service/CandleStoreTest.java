@@ -0,0 +1,116 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.model.CandleInterval;
+import com.example.banking_project.cryptocurrency.service.CandleStore.Candle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandleStoreTest {
+
+    private static final long DAY = 86_400_000L;
+    // 2024-06-10T00:00:00Z - начало на секунден сегмент
+    private static final long T0 = 1_717_977_600_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendedBarsReadBackInRange() {
+        CandleStore store = store(8);
+        List<Candle> written = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Candle c = new Candle(T0 + i * 1_000L, 100 + i, 101 + i, 99 + i, 100.5 + i, 0.25 * i);
+            written.add(c);
+            store.append("bitcoin", CandleInterval.SECOND_1, c);
+        }
+
+        assertThat(store.read("bitcoin", CandleInterval.SECOND_1, T0, T0 + 9_000)).isEqualTo(written);
+        assertThat(store.read("bitcoin", CandleInterval.SECOND_1, T0 + 2_500, T0 + 5_000))
+                .isEqualTo(written.subList(3, 6));
+        assertThat(store.read("bitcoin", CandleInterval.SECOND_1, T0 + 20_000, T0 + 30_000)).isEmpty();
+        assertThat(store.read("bitcoin", CandleInterval.MINUTE_1, T0, T0 + 9_000)).isEmpty();
+        assertThat(store.read("ethereum", CandleInterval.SECOND_1, T0, T0 + 9_000)).isEmpty();
+    }
+
+    @Test
+    void barsSurviveReopenAndSameOpenTimeIsMerged() {
+        CandleStore first = store(8);
+        first.append("bitcoin", CandleInterval.MINUTE_1, new Candle(T0, 100, 110, 95, 105, 2));
+        first.shutdown();
+
+        // нов процес, частичният бар от преди спирането се допълва
+        CandleStore second = store(8);
+        second.append("bitcoin", CandleInterval.MINUTE_1, new Candle(T0, 104, 120, 101, 118, 3));
+        second.append("bitcoin", CandleInterval.MINUTE_1, new Candle(T0 - 60_000, 1, 1, 1, 1, 1));
+        second.append("bitcoin", CandleInterval.MINUTE_1, new Candle(T0 + 60_000, 118, 119, 117, 117, 1));
+
+        assertThat(second.read("bitcoin", CandleInterval.MINUTE_1, T0 - DAY, T0 + DAY)).containsExactly(
+                new Candle(T0, 100, 120, 95, 118, 5),
+                new Candle(T0 + 60_000, 118, 119, 117, 117, 1));
+    }
+
+    @Test
+    void readSpansSegmentBoundary() throws IOException {
+        CandleStore store = store(2);
+        Candle before = new Candle(T0 + DAY - 1_000, 1, 2, 0.5, 1.5, 1);
+        Candle after = new Candle(T0 + DAY, 1.5, 3, 1, 2, 2);
+        store.append("bitcoin", CandleInterval.SECOND_1, before);
+        store.append("bitcoin", CandleInterval.SECOND_1, after);
+
+        assertThat(store.read("bitcoin", CandleInterval.SECOND_1, T0, T0 + 2 * DAY)).containsExactly(before, after);
+        assertThat(secondSegments()).hasSize(2);
+    }
+
+    @Test
+    void purgeDeletesOnlyExpiredSecondSegments() throws IOException {
+        CandleStore store = store(8);
+        long today = CandleInterval.SECOND_1.bucket(System.currentTimeMillis());
+        long old = today - 10 * DAY;
+        store.append("bitcoin", CandleInterval.SECOND_1, new Candle(old, 1, 1, 1, 1, 1));
+        store.append("bitcoin", CandleInterval.SECOND_1, new Candle(today, 2, 2, 2, 2, 2));
+        store.append("bitcoin", CandleInterval.MINUTE_1, new Candle(CandleInterval.MINUTE_1.bucket(old), 1, 1, 1, 1, 1));
+        assertThat(secondSegments()).hasSize(2);
+
+        store.purgeExpiredSeconds();
+
+        assertThat(secondSegments()).hasSize(1);
+        assertThat(store.read("bitcoin", CandleInterval.SECOND_1, old - DAY, old + DAY)).isEmpty();
+        assertThat(store.read("bitcoin", CandleInterval.SECOND_1, today, today)).hasSize(1);
+        // минутните бари се пазят
+        assertThat(store.read("bitcoin", CandleInterval.MINUTE_1, old - DAY, old + DAY)).hasSize(1);
+
+        // изтритият сегмент се създава наново при нов запис
+        store.append("bitcoin", CandleInterval.SECOND_1, new Candle(old + 1_000, 3, 3, 3, 3, 3));
+        assertThat(store.read("bitcoin", CandleInterval.SECOND_1, old - DAY, old + DAY))
+                .containsExactly(new Candle(old + 1_000, 3, 3, 3, 3, 3));
+    }
+
+    @Test
+    void invalidSymbolIdIsIgnored() {
+        CandleStore store = store(8);
+        store.append("../escape", CandleInterval.SECOND_1, new Candle(T0, 1, 1, 1, 1, 1));
+
+        assertThat(store.read("../escape", CandleInterval.SECOND_1, T0 - DAY, T0 + DAY)).isEmpty();
+        assertThat(dir.toFile().list()).isEmpty();
+    }
+
+    private CandleStore store(int openSegments) {
+        return new CandleStore(dir.toString(), 3, openSegments);
+    }
+
+    private List<Path> secondSegments() throws IOException {
+        Path seconds = dir.resolve("bitcoin").resolve(CandleInterval.SECOND_1.getCode());
+        if (!Files.isDirectory(seconds)) return List.of();
+        try (var files = Files.list(seconds)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FxMatrixTest {
+
+    // колко BGN струва една единица; BGN не е в списъка - матрицата го добавя
+    private static final Map<String, BigDecimal> BGN_RATES = Map.of(
+            "EUR", new BigDecimal("1.95583"),
+            "usd", new BigDecimal("1.80"),
+            "GBP", new BigDecimal("2.30"),
+            "JPY", new BigDecimal("0.012"));
+
+    private final FxMatrix matrix = FxMatrix.build(BGN_RATES, Instant.parse("2024-06-10T10:00:00Z"));
+
+    @Test
+    void directInverseAndCrossRates() {
+        assertThat(matrix.size()).isEqualTo(5);
+        assertThat(rate("USD", "BGN")).isEqualByComparingTo("1.80");
+        assertThat(rate("BGN", "USD")).isEqualTo(new BigDecimal("0.555555555556"));
+        assertThat(rate("EUR", "USD")).isEqualTo(new BigDecimal("1.086572222222"));
+        assertThat(rate("USD", "EUR")).isEqualTo(new BigDecimal("0.920325386153"));
+        assertThat(rate("USD", "JPY")).isEqualByComparingTo("150");
+        assertThat(rate("GBP", "GBP")).isSameAs(BigDecimal.ONE);
+    }
+
+    @Test
+    void crossRateMatchesPathThroughUsd() {
+        for (String from : new String[]{"EUR", "GBP", "JPY", "BGN"}) {
+            for (String to : new String[]{"EUR", "GBP", "JPY", "BGN"}) {
+                BigDecimal viaUsd = rate(from, "USD").multiply(rate("USD", to));
+                assertThat(rate(from, to)).isCloseTo(viaUsd, within(new BigDecimal("1e-9")));
+            }
+        }
+    }
+
+    @Test
+    void lookupIsCaseInsensitiveAndUnknownCodesAreMissing() {
+        assertThat(matrix.indexOf("usd")).isEqualTo(matrix.indexOf("USD")).isNotNegative();
+        assertThat(matrix.codeAt(matrix.indexOf("usd"))).isEqualTo("USD");
+        assertThat(matrix.indexOf("CHF")).isEqualTo(-1);
+        assertThat(matrix.indexOf("US1")).isEqualTo(-1);
+        assertThat(matrix.indexOf("US")).isEqualTo(-1);
+        assertThat(matrix.indexOf(null)).isEqualTo(-1);
+        assertThat(FxMatrix.EMPTY.indexOf("BGN")).isEqualTo(-1);
+    }
+
+    @Test
+    void buildRejectsInvalidCodesAndRates() {
+        assertThatThrownBy(() -> FxMatrix.build(Map.of("EURO", BigDecimal.ONE), Instant.now()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> FxMatrix.build(Map.of("USD", BigDecimal.ZERO), Instant.now()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void convertRoundsToTargetCurrencyDigits() {
+        FxService fx = service();
+
+        assertThat(fx.convert(new BigDecimal("10"), "EUR", "USD")).isEqualTo(new BigDecimal("10.87"));
+        assertThat(fx.convert(BigDecimal.ONE, "BGN", "USD")).isEqualTo(new BigDecimal("0.56"));
+        assertThat(fx.convert(new BigDecimal("100.25"), "USD", "JPY")).isEqualTo(new BigDecimal("15038"));
+        assertThat(fx.convert(new BigDecimal("1000"), "JPY", "EUR")).isEqualTo(new BigDecimal("6.14"));
+    }
+
+    @Test
+    void scaledConvertKeepsUnitPricePrecision() {
+        FxService fx = service();
+
+        assertThat(fx.convert(new BigDecimal("67000.123456789"), "USD", "BGN", 6))
+                .isEqualTo(new BigDecimal("120600.222222"));
+        assertThat(fx.convert(new BigDecimal("67000.123456789"), "USD", "EUR", 6))
+                .isEqualTo(new BigDecimal("61661.914493"));
+        assertThat(fx.usdToBgn(new BigDecimal("12.345"))).isEqualTo(new BigDecimal("22.22"));
+        assertThat(fx.usdToBgn(null)).isEqualTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    void sameCurrencyIsNotConverted() {
+        FxService fx = service();
+        BigDecimal amount = new BigDecimal("100.005");
+
+        assertThat(fx.convert(amount, "usd", "USD")).isSameAs(amount);
+        assertThat(fx.convert(amount, "CHF", "chf")).isSameAs(amount);
+        assertThat(fx.convert(amount, "USD", "USD", 2)).isEqualTo(new BigDecimal("100.01"));
+        assertThat(fx.rate("EUR", "eur")).isSameAs(BigDecimal.ONE);
+        assertThat(fx.convert(null, "USD", "EUR")).isNull();
+    }
+
+    @Test
+    void missingPairIsRejected() {
+        FxService fx = service();
+
+        assertThatThrownBy(() -> fx.convert(BigDecimal.ONE, "USD", "CHF"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unsupported currency: CHF");
+        assertThatThrownBy(() -> fx.rate("XYZ", "BGN"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unsupported currency: XYZ");
+        assertThat(fx.isSupported("CHF")).isFalse();
+        assertThat(fx.isSupported("gbp")).isTrue();
+    }
+
+    @Test
+    void failedRefreshKeepsPreviousMatrix() {
+        FxRateProvider provider = mock(FxRateProvider.class);
+        when(provider.loadBgnRates())
+                .thenReturn(BGN_RATES)
+                .thenThrow(new IllegalStateException("provider down"));
+        FxService fx = new FxService(provider);
+        FxMatrix loaded = fx.snapshot();
+
+        fx.refresh();
+
+        assertThat(fx.snapshot()).isSameAs(loaded);
+        assertThat(fx.getUsdToBgnRate()).isEqualByComparingTo("1.80");
+    }
+
+    private BigDecimal rate(String from, String to) {
+        return matrix.rate(matrix.indexOf(from), matrix.indexOf(to));
+    }
+
+    private static FxService service() {
+        FxRateProvider provider = mock(FxRateProvider.class);
+        when(provider.loadBgnRates()).thenReturn(BGN_RATES);
+        return new FxService(provider);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.repository.CryptoHoldingRepository;
+import com.example.banking_project.cryptocurrency.view.HoldingPositionView;
+import com.example.banking_project.web.dto.crypto.HoldingView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PortfolioValuationServiceTest {
+
+    private final CryptoHoldingRepository holdingRepository = mock(CryptoHoldingRepository.class);
+    private final CryptoPriceService priceService = mock(CryptoPriceService.class);
+    private final FxService fxService = mock(FxService.class);
+    private final UUID userId = UUID.randomUUID();
+    private PortfolioValuationService service;
+
+    @BeforeEach
+    void setUp() {
+        when(fxService.getUsdToBgnRate()).thenReturn(new BigDecimal("1.80"));
+        when(holdingRepository.findPositionsByUserId(userId)).thenReturn(List.of(
+                position("BTC", "0.5", "90000"),
+                position("NEWCOIN", "10", "1.80")));
+        when(priceService.peek(anyString())).thenReturn(Optional.empty());
+        when(priceService.peek("BTC")).thenReturn(Optional.of(price("60000", Instant.now())));
+        service = new PortfolioValuationService(holdingRepository, priceService, fxService, 600_000, 100);
+    }
+
+    @Test
+    void missingPriceIsPrefetchedOnReadWithoutWaiting() {
+        List<HoldingView> views = service.getPortfolio(userId, "usd");
+
+        assertThat(views).extracting(HoldingView::marketValue)
+                .containsExactly(new BigDecimal("30000.00"), new BigDecimal("0.00"));
+        verify(priceService).prefetch("NEWCOIN");
+        verify(priceService, never()).prefetch("BTC");
+        verify(priceService, never()).getLiveUsdPrice(anyString());
+    }
+
+    @Test
+    void refreshUsesOnlyCachedPricesAndPicksUpLateArrivals() {
+        service.getPortfolio(userId, "usd");
+        clearInvocations(priceService);
+
+        // доставчикът не отговаря - refresh не прави REST заявки и не поръчва нищо
+        service.refresh();
+        service.refresh();
+        verify(priceService, never()).getLiveUsdPrice(anyString());
+        verify(priceService, never()).prefetch(anyString());
+
+        // цената пристига (WS или prefetch) - следващият tick я включва
+        when(priceService.peek("NEWCOIN")).thenReturn(Optional.of(price("2.5", Instant.now().plusSeconds(1))));
+        service.refresh();
+
+        assertThat(service.getPortfolio(userId, "usd")).extracting(HoldingView::marketValue)
+                .containsExactly(new BigDecimal("30000.00"), new BigDecimal("25.00"));
+        verify(priceService, never()).getLiveUsdPrice(anyString());
+    }
+
+    @Test
+    void revaluationDoesNotResurrectEvictedPortfolio() {
+        service.getPortfolio(userId, "usd");
+        when(priceService.peek("BTC")).thenReturn(Optional.of(price("61000", Instant.now().plusSeconds(1))));
+        // нова поръчка е commit-ната, докато четенето преоценява старите позиции
+        AtomicBoolean committed = new AtomicBoolean();
+        when(fxService.getUsdToBgnRate()).thenAnswer(inv -> {
+            if (committed.compareAndSet(false, true)) service.evict(userId);
+            return new BigDecimal("1.80");
+        });
+
+        service.getPortfolio(userId, "usd");
+        service.getPortfolio(userId, "usd");
+
+        // третото четене не намира нищо в кеша и зарежда позициите наново
+        verify(holdingRepository, times(2)).findPositionsByUserId(userId);
+    }
+
+    private static PriceEntry price(String usd, Instant ts) {
+        return new PriceEntry(new BigDecimal(usd), ts, "WS");
+    }
+
+    private static HoldingPositionView position(String asset, String quantity, String avgPriceBgn) {
+        UUID accountId = UUID.randomUUID();
+        return new HoldingPositionView() {
+            @Override public UUID getAccountId() { return accountId; }
+            @Override public String getIban() { return "BG00TEST" + asset; }
+            @Override public String getAsset() { return asset; }
+            @Override public BigDecimal getQuantity() { return new BigDecimal(quantity); }
+            @Override public BigDecimal getAvgPrice() { return new BigDecimal(avgPriceBgn); }
+        };
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.banking_project.cryptocurrency.service;
+
+import com.example.banking_project.cryptocurrency.configuration.BinanceWebSocketClient;
+import com.example.banking_project.cryptocurrency.model.CryptoSymbol;
+import com.example.banking_project.cryptocurrency.repository.CryptoSymbolRepository;
+import com.example.banking_project.web.dto.crypto.Ticker;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TradeMessageParserTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final List<String> TRADE_FRAMES = List.of(
+            // combined stream, както идва от Binance
+            """
+            {"stream":"btcusdt@trade","data":{"e":"trade","E":1718000000123,"s":"BTCUSDT","t":3601234567,\
+            "p":"67012.34000000","q":"0.00150000","b":1,"a":2,"T":1718000000120,"m":true,"M":true}}""",
+            // директно съобщение, полетата в друг ред, вложени обекти и масиви за прескачане
+            """
+            {"extra":{"p":"1","s":"NOPE"},"list":[{"e":"trade"},[1,2]],"T":1718000000500,"s":"ethusdt",\
+            "q":"12","e":"trade","p":"3500.5","E":1718000000501}""",
+            // цена с повече от 15 цифри и експонента - през Double.parseDouble
+            """
+            {"data":{"e":"trade","E":1,"s":"SHIBUSDT","p":"0.0000123456789012345","q":"1.5E+7","T":2}}""",
+            // без T - времето на сделката е E
+            """
+            {"data":{"e":"trade","E":1718000000999,"s":"SOLUSDT","p":"150","q":"3.25"}}""");
+
+    private static final List<String> IGNORED_FRAMES = List.of(
+            """
+            {"stream":"btcusdt@aggTrade","data":{"e":"aggTrade","E":1,"s":"BTCUSDT","p":"1","q":"1"}}""",
+            """
+            {"data":{"e":"trade","E":1,"s":"BTCUSDT","q":"1"}}""",
+            """
+            {"data":{"e":"trade","E":1,"p":"1","q":"1"}}""",
+            """
+            {"result":null,"id":1}""",
+            "[]");
+
+    @Test
+    void streamingParserMatchesTreeParser() throws Exception {
+        TradeMessageParser parser = new TradeMessageParser(MAPPER.getFactory());
+
+        for (String json : TRADE_FRAMES) {
+            JsonNode root = MAPPER.readTree(json);
+            JsonNode n = root.has("data") ? root.get("data") : root;
+
+            assertThat(parser.parse(json)).as(json).isTrue();
+            assertThat(new String(parser.pair, 0, parser.pairLength)).isEqualTo(n.get("s").asText());
+            assertThat(new BigDecimal(parser.price, 0, parser.priceLength)).isEqualTo(new BigDecimal(n.get("p").asText()));
+            assertThat(TradeMessageParser.toDouble(parser.price, parser.priceLength)).isEqualTo(n.get("p").asDouble());
+            assertThat(TradeMessageParser.toDouble(parser.quantity, parser.quantityLength)).isEqualTo(n.get("q").asDouble());
+            assertThat(parser.eventTime).isEqualTo(n.path("E").asLong(0L));
+            assertThat(parser.tradeTime).isEqualTo(n.path("T").asLong(0L));
+        }
+    }
+
+    @Test
+    void nonTradeOrIncompleteFramesAreIgnored() throws Exception {
+        TradeMessageParser parser = new TradeMessageParser(MAPPER.getFactory());
+        for (String json : IGNORED_FRAMES) {
+            assertThat(parser.parse(json)).as(json).isFalse();
+        }
+        // състоянието от предишно съобщение не изтича в следващото
+        assertThat(parser.parse(TRADE_FRAMES.get(0))).isTrue();
+        assertThat(parser.parse(IGNORED_FRAMES.get(2))).isFalse();
+        assertThat(parser.pairLength).isZero();
+    }
+
+    @Test
+    void toDoubleMatchesDoubleParse() {
+        for (String s : List.of("0", "1", "0.1", "67012.34000000", "0.00000001", "123456789012345",
+                "1234567890123456", "99999.999999999", "1e-3", "3.")) {
+            char[] buf = s.toCharArray();
+            assertThat(TradeMessageParser.toDouble(buf, buf.length)).as(s).isEqualTo(Double.parseDouble(s));
+        }
+    }
+
+    @Test
+    void symbolIndexLooksUpPairsCaseInsensitively() {
+        TradeSymbolIndex index = TradeSymbolIndex.build(List.of(symbol("BTC", "BTCUSDT", "bitcoin"),
+                symbol("ETH", "ETHUSDT", "ethereum")));
+
+        char[] buf = "xxethusdtxx".toCharArray();
+        int slot = index.slotOf(buf, 2, 7);
+        assertThat(slot).isNotNegative();
+        assertThat(index.symbolAt(slot).getSymbol()).isEqualTo("ETH");
+        assertThat(index.slotOf("BTCUSDT".toCharArray(), 0, 7)).isNotEqualTo(slot);
+        assertThat(index.slotOf("BTCUSD".toCharArray(), 0, 6)).isEqualTo(-1);
+        assertThat(TradeSymbolIndex.EMPTY.slotOf(buf, 2, 7)).isEqualTo(-1);
+    }
+
+    @Test
+    void unchangedPriceIsDroppedUntilRefreshInterval() {
+        TradeSymbolIndex index = TradeSymbolIndex.build(List.of(symbol("BTC", "BTCUSDT", "bitcoin")));
+        int slot = index.slotOf("BTCUSDT".toCharArray(), 0, 7);
+        long refresh = TimeUnit.SECONDS.toNanos(5);
+        char[] a = "100.10".toCharArray();
+        char[] b = "100.20".toCharArray();
+
+        assertThat(index.shouldPublish(slot, a, 0, a.length, 0L, refresh)).isTrue();
+        assertThat(index.shouldPublish(slot, a, 0, a.length, 1_000L, refresh)).isFalse();
+        assertThat(index.shouldPublish(slot, b, 0, b.length, 2_000L, refresh)).isTrue();
+        assertThat(index.shouldPublish(slot, b, 0, b.length, refresh, refresh)).isFalse();
+        assertThat(index.shouldPublish(slot, b, 0, b.length, 2_000L + refresh, refresh)).isTrue();
+    }
+
+    @Test
+    void fastAndTreeIngestPublishTheSameTicks() {
+        List<String> frames = List.of(
+                trade("BTCUSDT", "67000.10", "0.5", 10),
+                trade("ethusdt", "3500.00", "2", 11),
+                trade("BTCUSDT", "67000.20", "0.25", 12),
+                trade("DOGEUSDT", "0.1", "5", 13));
+
+        Ingest fast = new Ingest(true);
+        Ingest tree = new Ingest(false);
+        frames.forEach(f -> fast.handler.onMessage(f, System.nanoTime()));
+        frames.forEach(f -> tree.handler.onMessage(f, System.nanoTime()));
+
+        assertThat(fast.published()).isEqualTo(tree.published()).containsExactly(
+                new Ticker("bitcoin", new BigDecimal("67000.10")),
+                new Ticker("ethereum", new BigDecimal("3500.00")),
+                new Ticker("bitcoin", new BigDecimal("67000.20")));
+        verify(fast.candles).onTrade("bitcoin", 67000.10, 0.5, 10L);
+        verify(tree.candles).onTrade("bitcoin", 67000.10, 0.5, 10L);
+        verify(fast.priceService).updatePrice("ETH", new BigDecimal("3500.00"), "WS");
+        verify(tree.priceService).updatePrice("ETH", new BigDecimal("3500.00"), "WS");
+    }
+
+    @Test
+    void fastIngestDropsUnchangedTicksButStillFeedsCandles() {
+        Ingest fast = new Ingest(true);
+        fast.handler.onMessage(trade("BTCUSDT", "67000.10", "0.5", 10), System.nanoTime());
+        fast.handler.onMessage(trade("BTCUSDT", "67000.10", "0.7", 11), System.nanoTime());
+        fast.handler.onMessage(trade("BTCUSDT", "67000.10", "0.9", 12), System.nanoTime());
+
+        assertThat(fast.published()).hasSize(1);
+        verify(fast.priceService, times(1)).updatePrice(eq("BTC"), eq(new BigDecimal("67000.10")), anyString());
+        verify(fast.candles, times(3)).onTrade(eq("bitcoin"), eq(67000.10), anyDouble(), anyLong());
+        verify(fast.candles, never()).onTrade(eq("dogecoin"), anyDouble(), anyDouble(), anyLong());
+    }
+
+    private static String trade(String pair, String price, String qty, long time) {
+        return "{\"stream\":\"x@trade\",\"data\":{\"e\":\"trade\",\"E\":" + time + ",\"s\":\"" + pair
+                + "\",\"p\":\"" + price + "\",\"q\":\"" + qty + "\",\"T\":" + time + "}}";
+    }
+
+    private static CryptoSymbol symbol(String symbol, String pair, String coingeckoId) {
+        CryptoSymbol cs = new CryptoSymbol();
+        cs.setSymbol(symbol);
+        cs.setBinancePair(pair);
+        cs.setCoingeckoId(coingeckoId);
+        return cs;
+    }
+
+    /** LivePriceService с фалшиви зависимости; handler-ът е този, който би получил WebSocket клиентът. */
+    private static final class Ingest {
+        final BinanceWebSocketClient ws = mock(BinanceWebSocketClient.class);
+        final CryptoSymbolRepository symbols = mock(CryptoSymbolRepository.class);
+        final CryptoPriceService priceService = mock(CryptoPriceService.class);
+        final PriceBus priceBus = mock(PriceBus.class);
+        final CandleAggregator candles = mock(CandleAggregator.class);
+        final BinanceWebSocketClient.MessageHandler handler;
+
+        Ingest(boolean fastIngest) {
+            when(symbols.findAllByEnabledTrue()).thenReturn(List.of(
+                    symbol("BTC", "BTCUSDT", "bitcoin"), symbol("ETH", "ETHUSDT", "ethereum")));
+            LivePriceService service = new LivePriceService(ws, MAPPER, symbols, priceService, priceBus, candles);
+            ReflectionTestUtils.setField(service, "fastIngest", fastIngest);
+            service.init();
+
+            ArgumentCaptor<BinanceWebSocketClient.MessageHandler> captor =
+                    ArgumentCaptor.forClass(BinanceWebSocketClient.MessageHandler.class);
+            verify(ws).setHandler(captor.capture());
+            handler = captor.getValue();
+        }
+
+        List<Ticker> published() {
+            ArgumentCaptor<Ticker> captor = ArgumentCaptor.forClass(Ticker.class);
+            verify(priceBus, atLeast(0)).publish(captor.capture());
+            return captor.getAllValues();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.banking_project.loan.service;
+
+import com.example.banking_project.loan.model.ReportFormat;
+import com.example.banking_project.loan.model.ReportJobStatus;
+import com.example.banking_project.web.dto.LoanRiskReportData;
+import com.example.banking_project.web.dto.ReportJobResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReportJobServiceTest {
+
+    private final LoanRiskReportService reportService = mock(LoanRiskReportService.class);
+    private final UUID userId = UUID.randomUUID();
+
+    @TempDir
+    Path dir;
+
+    private ReportJobService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) service.shutdown();
+    }
+
+    @Test
+    void repeatedDownloadsReuseOneJob() throws Exception {
+        service = service();
+        when(reportService.prepareData(userId)).thenReturn(data(700));
+        when(reportService.generatePdf(any())).thenReturn("pdf".getBytes());
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(service.render(userId, ReportFormat.PDF)).isEqualTo("pdf".getBytes());
+        }
+        ReportJobResponse submitted = service.submit(userId, ReportFormat.PDF);
+
+        assertThat(jobs()).hasSize(1).containsKey(submitted.getJobId());
+        assertThat(submitted.getStatus()).isEqualTo(ReportJobStatus.DONE);
+        verify(reportService, times(1)).generatePdf(any());
+    }
+
+    @Test
+    void changedDataOrFormatGetsItsOwnJob() throws Exception {
+        service = service();
+        when(reportService.prepareData(userId)).thenReturn(data(700), data(700), data(650));
+        when(reportService.generatePdf(any())).thenReturn("pdf".getBytes());
+        when(reportService.generateExcel(any())).thenReturn("xlsx".getBytes());
+
+        service.render(userId, ReportFormat.PDF);
+        service.render(userId, ReportFormat.EXCEL);
+        service.render(userId, ReportFormat.PDF);
+
+        assertThat(jobs()).hasSize(3);
+    }
+
+    @Test
+    void failedJobIsNotReused() throws Exception {
+        service = service();
+        when(reportService.prepareData(userId)).thenReturn(data(700));
+        when(reportService.generatePdf(any()))
+                .thenThrow(new IllegalStateException("font missing"))
+                .thenReturn("pdf".getBytes());
+
+        assertThatThrownBy(() -> service.render(userId, ReportFormat.PDF))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("font missing");
+        assertThat(service.render(userId, ReportFormat.PDF)).isEqualTo("pdf".getBytes());
+    }
+
+    @Test
+    void deletedFileIsRenderedAgain() throws Exception {
+        service = service();
+        when(reportService.prepareData(userId)).thenReturn(data(700));
+        when(reportService.generatePdf(any())).thenReturn("pdf".getBytes());
+        service.render(userId, ReportFormat.PDF);
+
+        try (var files = Files.walk(dir)) {
+            for (Path f : files.filter(Files::isRegularFile).toList()) {
+                Files.delete(f);
+            }
+        }
+
+        assertThat(service.render(userId, ReportFormat.PDF)).isEqualTo("pdf".getBytes());
+        verify(reportService, times(2)).generatePdf(any());
+    }
+
+    @Test
+    void cleanupDropsExpiredJobs() throws Exception {
+        service = new ReportJobService(reportService, dir.toString(), 1, 10, 0, 86_400_000, 5_000);
+        when(reportService.prepareData(userId)).thenReturn(data(700));
+        when(reportService.generatePdf(any())).thenReturn("pdf".getBytes());
+        service.render(userId, ReportFormat.PDF);
+        Thread.sleep(5);
+
+        service.cleanup();
+
+        assertThat(jobs()).isEmpty();
+        assertThat((Map<?, ?>) ReflectionTestUtils.getField(service, "jobsByKey")).isEmpty();
+        // файлът още е в кеша - следващото сваляне не рендира наново
+        service.render(userId, ReportFormat.PDF);
+        verify(reportService, times(1)).generatePdf(any());
+    }
+
+    private ReportJobService service() {
+        return new ReportJobService(reportService, dir.toString(), 1, 10, 3_600_000, 86_400_000, 5_000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<UUID, ?> jobs() {
+        return (Map<UUID, ?>) ReflectionTestUtils.getField(service, "jobs");
+    }
+
+    private LoanRiskReportData data(int score) {
+        return LoanRiskReportData.builder().userId(userId).score(score).riskClass("B").build();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.banking_project.schema;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchemaMigratorTest {
+
+    @Test
+    void semicolonsInsideStringLiteralsDoNotSplit() {
+        List<String> statements = SchemaMigrator.split("""
+                INSERT INTO notes VALUES ('a;b', 'it''s; fine');
+                COMMENT ON TABLE notes IS 'first line;
+                second line;';
+                SELECT E'escaped \\'; quote', "odd;name" FROM notes;
+                """);
+
+        assertThat(statements).containsExactly(
+                "INSERT INTO notes VALUES ('a;b', 'it''s; fine')",
+                "COMMENT ON TABLE notes IS 'first line;\nsecond line;'",
+                "SELECT E'escaped \\'; quote', \"odd;name\" FROM notes");
+    }
+
+    @Test
+    void dollarQuotedBodiesAreKeptWhole() {
+        String doBlock = """
+                DO $$
+                BEGIN
+                    EXECUTE 'ANALYZE transactions';
+                END $$""";
+        String function = """
+                CREATE FUNCTION touch() RETURNS trigger AS $body$
+                BEGIN
+                    -- $$ и ; тук са част от тялото
+                    NEW.updated_at := now();
+                    RETURN NEW;
+                END
+                $body$ LANGUAGE plpgsql""";
+
+        List<String> statements = SchemaMigrator.split(doBlock + ";\n\n" + function + ";\nSELECT $1;\n");
+
+        assertThat(statements).containsExactly(doBlock, function, "SELECT $1");
+    }
+
+    @Test
+    void commentsAreDroppedAndDoNotSplit() {
+        List<String> statements = SchemaMigrator.split("""
+                -- header; with a semicolon
+                CREATE INDEX a ON t (x); -- trailing; comment
+                /* block; /* nested; */ still comment; */ CREATE INDEX b ON t (y);
+                SELECT '-- not a comment', '/* nor this */';
+                -- only a comment at the end;
+                """);
+
+        assertThat(statements).containsExactly(
+                "CREATE INDEX a ON t (x)",
+                "CREATE INDEX b ON t (y)",
+                "SELECT '-- not a comment', '/* nor this */'");
+    }
+
+    @Test
+    void lastStatementWithoutSemicolonIsKept() {
+        assertThat(SchemaMigrator.split("SELECT 1; SELECT 2;SELECT 3\n"))
+                .containsExactly("SELECT 1", "SELECT 2", "SELECT 3");
+        assertThat(SchemaMigrator.split("  -- nothing\n ; ;\n")).isEmpty();
+    }
+
+    @Test
+    void bundledMigrationsSplitIntoTheirStatements() throws IOException {
+        assertThat(split("V1__transaction_indexes.sql")).hasSize(3)
+                .allMatch(s -> s.startsWith("CREATE INDEX CONCURRENTLY"));
+        assertThat(split("V2__loan_indexes.sql")).hasSize(3);
+        assertThat(split("V3__crypto_indexes.sql")).hasSize(4);
+        assertThat(split("V4__account_and_rollup_indexes.sql")).hasSize(2);
+
+        List<String> v5 = split("V5__partition_transactions_by_month.sql");
+        assertThat(v5).hasSize(13);
+        assertThat(v5.get(0)).startsWith("DO $$").endsWith("END $$");
+        assertThat(v5).contains("CREATE TABLE transactions_default PARTITION OF transactions DEFAULT",
+                "DROP TABLE transactions_unpartitioned");
+        assertThat(v5.get(v5.size() - 1)).isEqualTo("ANALYZE transactions");
+        assertThat(v5).noneMatch(s -> s.toUpperCase().contains("CONCURRENTLY"));
+    }
+
+    private static List<String> split(String file) throws IOException {
+        return SchemaMigrator.split(new ClassPathResource("db/migration/" + file).getContentAsString(StandardCharsets.UTF_8));
+    }
+}
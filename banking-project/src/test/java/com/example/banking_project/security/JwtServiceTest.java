@@ -0,0 +1,121 @@
+package com.example.banking_project.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static io.jsonwebtoken.SignatureAlgorithm.HS256;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtServiceTest {
+
+    @Test
+    void verifiedTokenIsServedFromCache() {
+        JwtService jwtService = new JwtService(100);
+        String token = jwtService.generateToken(Map.of("userId", UUID.randomUUID().toString(), "role", "USER"),
+                user("ana@example.com"));
+
+        Claims first = jwtService.verifyClaims(token).orElseThrow();
+        Claims second = jwtService.verifyClaims(token).orElseThrow();
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getSubject()).isEqualTo("ana@example.com");
+        assertThat(cache(jwtService).asMap()).hasSize(1);
+    }
+
+    @Test
+    void cachedTokenExpiresAtItsExp() throws InterruptedException {
+        JwtService jwtService = new JwtService(100);
+        // exp е в секунди - изтича между 1 и 2 секунди от сега
+        long expMillis = (System.currentTimeMillis() / 1000 + 2) * 1000;
+        String token = signed("ana@example.com", new Date(expMillis));
+
+        assertThat(jwtService.validateToken(token)).isTrue();
+        assertThat(cache(jwtService).asMap()).hasSize(1);
+
+        Thread.sleep(Math.max(0, expMillis - System.currentTimeMillis()) + 50);
+
+        assertThat(jwtService.verifyClaims(token)).isEmpty();
+        cache(jwtService).cleanUp();
+        assertThat(cache(jwtService).asMap()).isEmpty();
+    }
+
+    @Test
+    void tamperedTokenIsRejectedEvenWhenOriginalIsCached() {
+        JwtService jwtService = new JwtService(100);
+        String token = jwtService.generateToken(Map.of("role", "USER"), user("ana@example.com"));
+        assertThat(jwtService.validateToken(token)).isTrue();
+
+        String[] parts = token.split("\\.");
+        String forgedPayload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)
+                        .replace("\"USER\"", "\"ADMIN\"")
+                        .getBytes(StandardCharsets.UTF_8));
+        String forged = parts[0] + "." + forgedPayload + "." + parts[2];
+        char last = parts[2].charAt(parts[2].length() - 2);
+        String badSignature = parts[0] + "." + parts[1] + "."
+                + parts[2].substring(0, parts[2].length() - 2) + (last == 'A' ? 'B' : 'A')
+                + parts[2].charAt(parts[2].length() - 1);
+
+        assertThat(forged).isNotEqualTo(token);
+        assertThat(jwtService.verifyClaims(forged)).isEmpty();
+        assertThat(jwtService.verifyClaims(badSignature)).isEmpty();
+        assertThat(jwtService.verifyClaims("not.a.jwt")).isEmpty();
+        assertThat(cache(jwtService).asMap()).hasSize(1);
+    }
+
+    @Test
+    void tokenWithoutExpirationIsNotCached() {
+        JwtService jwtService = new JwtService(100);
+        String token = signed("ana@example.com", null);
+
+        Optional<Claims> claims = jwtService.verifyClaims(token);
+
+        assertThat(claims).isPresent();
+        assertThat(cache(jwtService).asMap()).isEmpty();
+    }
+
+    @Test
+    void cacheStaysWithinItsSizeBound() {
+        JwtService jwtService = new JwtService(50);
+        for (int i = 0; i < 500; i++) {
+            assertThat(jwtService.validateToken(jwtService.generateToken(Map.of(), user("user" + i + "@example.com"))))
+                    .isTrue();
+        }
+
+        Cache<String, Claims> cache = cache(jwtService);
+        cache.cleanUp();
+        assertThat(cache.estimatedSize()).isLessThanOrEqualTo(50);
+    }
+
+    private static String signed(String subject, Date expiration) {
+        Key key = (Key) ReflectionTestUtils.getField(JwtService.class, "SIGNING_KEY");
+        return Jwts.builder()
+                .setSubject(subject)
+                .setIssuedAt(new Date())
+                .setExpiration(expiration)
+                .signWith(key, HS256)
+                .compact();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cache<String, Claims> cache(JwtService jwtService) {
+        return (Cache<String, Claims>) ReflectionTestUtils.getField(jwtService, "verifiedClaims");
+    }
+
+    private static UserDetailsImpl user(String email) {
+        return new UserDetailsImpl(UUID.randomUUID(), email, "secret", List.of(new SimpleGrantedAuthority("ROLE_USER")));
+    }
+}
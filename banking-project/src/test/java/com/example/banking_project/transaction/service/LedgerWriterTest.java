@@ -0,0 +1,65 @@
+package com.example.banking_project.transaction.service;
+
+import com.example.banking_project.transaction.model.Transaction;
+import com.example.banking_project.transaction.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LedgerWriterTest {
+
+    private final TransactionRepository repository = mock(TransactionRepository.class);
+
+    @Test
+    void stopFlushesBatchTheWorkerAlreadyTook() throws Exception {
+        when(repository.saveAll(anyList())).thenAnswer(inv -> inv.getArgument(0));
+        // дълго чакане за партидата - worker-ът държи първия ред, докато го прекъснем
+        LedgerWriter writer = writer(60_000, 30_000);
+        CompletableFuture<Transaction> first = writer.submit(row("10.00"));
+        Thread.sleep(200);
+
+        writer.stop();
+
+        assertThat(first.get(1, TimeUnit.SECONDS).getAmount()).isEqualByComparingTo("10.00");
+        verify(repository).saveAll(List.of(first.get()));
+    }
+
+    @Test
+    void writeGivesUpAfterTimeout() throws Exception {
+        LedgerWriter writer = writer(5, 200);
+        // worker-ът е спрян - заявката остава в опашката
+        writer.stop();
+
+        assertThatThrownBy(() -> writer.write(row("5.00")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("timed out");
+    }
+
+    private LedgerWriter writer(long maxWaitMs, long writeTimeoutMs) {
+        LedgerWriter writer = new LedgerWriter(repository, mock(CashFlowRollupService.class),
+                mock(PlatformTransactionManager.class), mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(writer, "maxBatchSize", 200);
+        ReflectionTestUtils.setField(writer, "maxWaitMs", maxWaitMs);
+        ReflectionTestUtils.setField(writer, "queueCapacity", 100);
+        ReflectionTestUtils.setField(writer, "writeTimeoutMs", writeTimeoutMs);
+        writer.start();
+        return writer;
+    }
+
+    private static Transaction row(String amount) {
+        return Transaction.builder().amount(new BigDecimal(amount)).isIncome(true).isExpense(false).build();
+    }
+}
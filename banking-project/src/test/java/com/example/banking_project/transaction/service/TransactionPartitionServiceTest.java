@@ -0,0 +1,93 @@
+package com.example.banking_project.transaction.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TransactionPartitionServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    @Test
+    void createsMonthlyPartitionsAcrossYearEnd() {
+        partitioned(List.of());
+
+        service(3, 0).maintain(YearMonth.of(2024, 11));
+
+        assertThat(executed()).containsExactly(
+                "CREATE TABLE IF NOT EXISTS transactions_p202411 PARTITION OF transactions FOR VALUES FROM ('2024-11-01') TO ('2024-12-01')",
+                "CREATE TABLE IF NOT EXISTS transactions_p202412 PARTITION OF transactions FOR VALUES FROM ('2024-12-01') TO ('2025-01-01')",
+                "CREATE TABLE IF NOT EXISTS transactions_p202501 PARTITION OF transactions FOR VALUES FROM ('2025-01-01') TO ('2025-02-01')",
+                "CREATE TABLE IF NOT EXISTS transactions_p202502 PARTITION OF transactions FOR VALUES FROM ('2025-02-01') TO ('2025-03-01')");
+    }
+
+    @Test
+    void leapFebruaryEndsOnFirstOfMarch() {
+        partitioned(List.of());
+
+        service(0, 0).createPartition(YearMonth.of(2024, 2));
+
+        assertThat(executed()).containsExactly(
+                "CREATE TABLE IF NOT EXISTS transactions_p202402 PARTITION OF transactions FOR VALUES FROM ('2024-02-01') TO ('2024-03-01')");
+    }
+
+    @Test
+    void archivesOnlyPartitionsBeforeCutoffAcrossYearEnd() {
+        partitioned(List.of("transactions_default", "transactions_p202310", "transactions_p202311",
+                "transactions_p202312", "transactions_p202401", "transactions_p202402"));
+
+        // retention 2 месеца от февруари 2024 -> cutoff декември 2023
+        service(0, 2).maintain(YearMonth.of(2024, 2));
+
+        List<String> detached = executed().stream().filter(sql -> sql.contains("DETACH PARTITION")).toList();
+        assertThat(detached).containsExactly(
+                "ALTER TABLE transactions DETACH PARTITION transactions_p202310",
+                "ALTER TABLE transactions DETACH PARTITION transactions_p202311");
+        assertThat(executed()).contains("ALTER TABLE transactions_p202310 SET SCHEMA archive");
+    }
+
+    @Test
+    void nothingHappensOnUnpartitionedTable() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class))).thenReturn(false);
+
+        service(3, 2).maintain(YearMonth.of(2024, 12));
+
+        assertThat(executed()).isEmpty();
+    }
+
+    @Test
+    void rejectsUnsafeArchiveSchemaName() {
+        assertThatThrownBy(() -> new TransactionPartitionService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                3, 0, "archive; DROP TABLE users"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private TransactionPartitionService service(int monthsAhead, int retentionMonths) {
+        return new TransactionPartitionService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                monthsAhead, retentionMonths, "archive");
+    }
+
+    private void partitioned(List<String> partitions) {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Boolean.class))).thenReturn(true);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(partitions);
+    }
+
+    private List<String> executed() {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, atLeast(0)).execute(sql.capture());
+        return sql.getAllValues();
+    }
+}
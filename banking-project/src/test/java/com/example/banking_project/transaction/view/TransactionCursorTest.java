@@ -0,0 +1,162 @@
+package com.example.banking_project.transaction.view;
+
+import com.example.banking_project.exception.GlobalExceptionHandler;
+import com.example.banking_project.transaction.mapper.TransactionMapper;
+import com.example.banking_project.transaction.repository.TransactionRepository;
+import com.example.banking_project.transaction.service.TransactionServiceImpl;
+import com.example.banking_project.web.controllers.TransactionController;
+import com.example.banking_project.web.dto.TransactionPageResponse;
+import com.example.banking_project.web.dto.TransactionTransferResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class TransactionCursorTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+
+    // същата подредба като (created_on, id) в PostgreSQL: uuid се сравнява байт по байт
+    private static final Comparator<TransactionTransferView> KEY_ORDER =
+            Comparator.comparing(TransactionTransferView::getCreatedOn)
+                    .thenComparing(TransactionTransferView::getId, TransactionCursorTest::compareUuid);
+
+    @Test
+    void encodeDecodeRoundTrip() {
+        TransactionCursor cursor = new TransactionCursor(LocalDate.of(2024, 2, 29),
+                UUID.fromString("f47ac10b-58cc-4372-a567-0e02b2c3d479"));
+
+        String encoded = cursor.encode();
+
+        assertThat(encoded).doesNotContain("+", "/", "=");
+        assertThat(TransactionCursor.decode(encoded)).isEqualTo(cursor);
+    }
+
+    @Test
+    void missingCursorStartsFromFirstPage() {
+        assertThat(TransactionCursor.decode(null)).isEqualTo(TransactionCursor.FIRST);
+        assertThat(TransactionCursor.decode("  ")).isEqualTo(TransactionCursor.FIRST);
+    }
+
+    @Test
+    void malformedOrTamperedCursorIsRejected() {
+        String valid = new TransactionCursor(LocalDate.of(2024, 5, 1), UUID.randomUUID()).encode();
+
+        List<String> bad = List.of(
+                "not base64 at all!",
+                encode("2024-05-01"),
+                encode("2024-13-01|" + UUID.randomUUID()),
+                encode("2024-05-01|not-a-uuid"),
+                valid.substring(0, valid.length() - 6));
+
+        for (String cursor : bad) {
+            assertThatThrownBy(() -> TransactionCursor.decode(cursor))
+                    .as(cursor)
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessage("Invalid cursor");
+        }
+    }
+
+    @Test
+    void malformedCursorIsBadRequest() throws Exception {
+        TransactionRepository repository = mock(TransactionRepository.class);
+        MockMvc mvc = MockMvcBuilders
+                .standaloneSetup(new TransactionController(service(repository), null, null, new ObjectMapper()))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+
+        mvc.perform(get("/api/transactions/user/{userId}/page", USER_ID).param("cursor", "%%%broken"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Invalid cursor"));
+    }
+
+    @Test
+    void pagesDoNotSkipOrRepeatRowsWithTheSameDate() {
+        LocalDate day = LocalDate.of(2024, 3, 15);
+        List<TransactionTransferView> rows = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            rows.add(new Row(UUID.randomUUID(), day));
+        }
+        // id-та с и без вдигнат старши бит - подредбата им не съвпада с UUID.compareTo
+        rows.add(new Row(UUID.fromString("ffffffff-0000-0000-0000-000000000000"), day));
+        rows.add(new Row(UUID.fromString("00000000-0000-0000-0000-000000000001"), day));
+        rows.add(new Row(UUID.randomUUID(), day.minusDays(1)));
+        rows.add(new Row(UUID.randomUUID(), day.plusDays(1)));
+
+        TransactionRepository repository = mock(TransactionRepository.class);
+        when(repository.getAllTransactionsByUserIdAfter(eq(USER_ID), any(), any(), anyInt()))
+                .thenAnswer(inv -> {
+                    Row after = new Row(inv.getArgument(2), inv.getArgument(1));
+                    int limit = inv.getArgument(3);
+                    return rows.stream()
+                            .filter(r -> KEY_ORDER.compare(r, after) < 0)
+                            .sorted(KEY_ORDER.reversed())
+                            .limit(limit)
+                            .toList();
+                });
+        TransactionServiceImpl service = service(repository);
+
+        List<UUID> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            TransactionPageResponse page = service.getTransactionsPageByUser(USER_ID, cursor, 3);
+            page.getItems().stream().map(TransactionTransferResponse::getId).forEach(seen::add);
+            cursor = page.getNextCursor();
+            assertThat(cursor == null).isEqualTo(!page.isHasMore());
+            pages++;
+        } while (cursor != null);
+
+        List<UUID> expected = rows.stream().sorted(KEY_ORDER.reversed()).map(TransactionTransferView::getId).toList();
+        assertThat(seen).containsExactlyElementsOf(expected);
+        assertThat(pages).isEqualTo(4);
+    }
+
+    private static TransactionServiceImpl service(TransactionRepository repository) {
+        return new TransactionServiceImpl(repository, null, null, null, null, new TransactionMapper(), null);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int compareUuid(UUID a, UUID b) {
+        int c = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    private record Row(UUID id, LocalDate createdOn) implements TransactionTransferView {
+        @Override public UUID getId() { return id; }
+        @Override public BigDecimal getAmount() { return BigDecimal.TEN; }
+        @Override public String getTransactionStatus() { return "SUCCEEDED"; }
+        @Override public String getTransactionType() { return "TRANSFER"; }
+        @Override public String getDescription() { return null; }
+        @Override public String getFailureReason() { return null; }
+        @Override public LocalDate getCreatedOn() { return createdOn; }
+        @Override public String getCurrency() { return "BGN"; }
+        @Override public boolean getIsIncome() { return false; }
+        @Override public boolean getIsExpense() { return true; }
+        @Override public UUID getAccountId() { return null; }
+        @Override public UUID getUserId() { return USER_ID; }
+    }
+}